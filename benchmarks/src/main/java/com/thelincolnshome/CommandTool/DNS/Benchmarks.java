@@ -0,0 +1,24 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks named on the command line, or all of them, with the
+ * GC profiler attached so allocation per operation is reported next to the
+ * time per operation.
+ */
+public class Benchmarks
+{
+	public static void main(String[] inArgs) throws Exception
+	{
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(new CommandLineOptions(inArgs));
+
+		options.addProfiler(GCProfiler.class);
+
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,80 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a {@link Domain}, which validates the hostname, and checking an
+ * address against the StoresOnline networks, hit and miss.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DomainBenchmark
+{
+	private static final int	SIZE	= 1024;
+
+	private String[]			hostnames;
+	private IPv4[]				hosted;
+	private IPv4[]				elsewhere;
+	private int					next;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		Domain.initialize();
+
+		Random random = new Random(42);
+
+		hostnames = new String[SIZE];
+		hosted = new IPv4[SIZE];
+		elsewhere = new IPv4[SIZE];
+
+		for(int i = 0; i < SIZE; i++)
+		{
+			hostnames[i] = "shop" + random.nextInt(1000000) + (i % 3 == 0 ? ".com" : i % 3 == 1 ? ".co.uk" : ".net");
+			hosted[i] = new IPv4("70.102.218." + random.nextInt(256));
+			elsewhere[i] = new IPv4(IPv4.longToQuad(random.nextInt() & 0xFFFFFFFFL));
+		}
+	}
+
+	private int next()
+	{
+		next = (next + 1) & (SIZE - 1);
+
+		return next;
+	}
+
+	@Benchmark
+	public Domain construct()
+	{
+		return new Domain(hostnames[next()]);
+	}
+
+	@Benchmark
+	public boolean inNetworkHit()
+	{
+		return Domain.inNetwork(hosted[next()]);
+	}
+
+	@Benchmark
+	public boolean inNetworkMiss()
+	{
+		return Domain.inNetwork(elsewhere[next()]);
+	}
+}
@@ -0,0 +1,161 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing, formatting and comparing {@link IPv4} addresses, over a fixed
+ * set of random addresses so the branch predictor can't learn one value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IPv4Benchmark
+{
+	private static final int	SIZE	= 1024;
+
+	private String[]			quads;
+	private byte[][]			bytes;
+	private StringBuilder		text;
+	private ByteBuffer			buffer;
+	private String[]			blocks;
+	private long[]				addresses;
+	private IPv4[]				parsed;
+	private IPv4[]				copies;
+	private IPv4				network;
+	private int					next;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		Random random = new Random(42);
+
+		quads = new String[SIZE];
+		bytes = new byte[SIZE][];
+		text = new StringBuilder(16);
+		buffer = ByteBuffer.allocate(16);
+		blocks = new String[SIZE];
+		addresses = new long[SIZE];
+		parsed = new IPv4[SIZE];
+		copies = new IPv4[SIZE];
+
+		for(int i = 0; i < SIZE; i++)
+		{
+			addresses[i] = random.nextInt() & 0xFFFFFFFFL;
+			quads[i] = IPv4.longToQuad(addresses[i]);
+			bytes[i] = quads[i].getBytes();
+			blocks[i] = quads[i] + "/" + (8 + random.nextInt(24));
+			parsed[i] = new IPv4(quads[i]);
+			copies[i] = new IPv4(quads[i]);
+		}
+
+		network = new IPv4("208.187.218.0/24");
+	}
+
+	private int next()
+	{
+		next = (next + 1) & (SIZE - 1);
+
+		return next;
+	}
+
+	@Benchmark
+	public IPv4 parseAddress()
+	{
+		return new IPv4(quads[next()]);
+	}
+
+	@Benchmark
+	public IPv4 parseBlock()
+	{
+		return new IPv4(blocks[next()]);
+	}
+
+	@Benchmark
+	public long quadToLong()
+	{
+		return IPv4.quadToLong(quads[next()]);
+	}
+
+	@Benchmark
+	public long parseQuadChars()
+	{
+		String quad = quads[next()];
+
+		return IPv4.parseQuad(quad, 0, quad.length());
+	}
+
+	@Benchmark
+	public long parseQuadBytes()
+	{
+		byte[] quad = bytes[next()];
+
+		return IPv4.parseQuad(quad, 0, quad.length);
+	}
+
+	@Benchmark
+	public int appendQuadChars()
+	{
+		text.setLength(0);
+
+		return IPv4.appendQuad(text, addresses[next()]).length();
+	}
+
+	@Benchmark
+	public int appendQuadBytes()
+	{
+		buffer.clear();
+
+		return IPv4.appendQuad(buffer, addresses[next()]).position();
+	}
+
+	@Benchmark
+	public String longToQuad()
+	{
+		return IPv4.longToQuad(addresses[next()]);
+	}
+
+	@Benchmark
+	public boolean includes()
+	{
+		return network.includes(parsed[next()]);
+	}
+
+	@Benchmark
+	public int hashCodes()
+	{
+		return parsed[next()].hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsCopy()
+	{
+		int i = next();
+
+		return parsed[i].equals(copies[i]);
+	}
+
+	@Benchmark
+	public boolean equalsOther()
+	{
+		int i = next();
+
+		return parsed[i].equals(parsed[(i + 1) & (SIZE - 1)]);
+	}
+}
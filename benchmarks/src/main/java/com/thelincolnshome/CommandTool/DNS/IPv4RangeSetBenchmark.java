@@ -0,0 +1,94 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Set algebra over two {@link IPv4RangeSet}s of random prefixes, /16 to /32.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IPv4RangeSetBenchmark
+{
+	@Param({ "100000", "1000000" })
+	private int				prefixes;
+
+	private IPv4RangeSet	left;
+	private IPv4RangeSet	right;
+	private long[]			addresses;
+	private int				next;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		Random random = new Random(42);
+
+		left = random(random);
+		right = random(random);
+		addresses = new long[4096];
+
+		for(int i = 0; i < addresses.length; i++)
+		{
+			addresses[i] = random.nextInt() & 0xFFFFFFFFL;
+		}
+	}
+
+	private IPv4RangeSet random(Random inRandom)
+	{
+		IPv4RangeSet.Builder builder = new IPv4RangeSet.Builder();
+
+		for(int i = 0; i < prefixes; i++)
+		{
+			int length = 16 + inRandom.nextInt(17);
+			long network = (inRandom.nextInt() & 0xFFFFFFFFL) & (0xFFFFFFFFL << (32 - length)) & 0xFFFFFFFFL;
+
+			builder.add(network, network + (1L << (32 - length)) - 1);
+		}
+
+		return builder.build();
+	}
+
+	@Benchmark
+	public IPv4RangeSet union()
+	{
+		return left.union(right);
+	}
+
+	@Benchmark
+	public IPv4RangeSet intersection()
+	{
+		return left.intersection(right);
+	}
+
+	@Benchmark
+	public IPv4RangeSet difference()
+	{
+		return left.difference(right);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public boolean contains()
+	{
+		next = (next + 1) & (addresses.length - 1);
+
+		return left.contains(addresses[next]);
+	}
+}
@@ -0,0 +1,263 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Type;
+
+/**
+ * Drives <code>DNSTool -run</code> against a {@link StubServer} for each of
+ * a list of configurations and prints, for each, the domains per second,
+ * the p50 and p99 query latency and the peak heap.
+ * <p>
+ * A configuration is a list of <code>key=value</code> pairs separated by
+ * semicolons, for example
+ * <code>latency=2-20;loss=0.01;tc=0.01;rcodes=NOERROR:97,SERVFAIL:3</code>.
+ * The keys are latency (milliseconds, a value or a range), loss, tc (the
+ * share of UDP answers truncated), hosted (the share of StoresOnline
+ * addresses), rcodes (see {@link StubServer#setRcodes}) and timeout (the
+ * resolver's, in milliseconds).
+ */
+public class LoadHarness
+{
+	private static final String[]	DEFAULT_CONFIGURATIONS	= { "latency=0", "latency=5-20", "latency=5-20;loss=0.01;tc=0.01;rcodes=NOERROR:97,SERVFAIL:2,NXDOMAIN:1" };
+
+	private static final String		DOMAINS					= "domains";
+	private static final String		THREADS					= "threads";
+
+	private final int				domains;
+	private final int				threads;
+	private final File				dnsfile;
+
+	public LoadHarness(int inDomains, int inThreads) throws IOException
+	{
+		if(inDomains < 1 || inThreads < 1)
+		{
+			throw new IllegalArgumentException("Domains and threads must be at least 1.");
+		}
+
+		domains = inDomains;
+		threads = inThreads;
+		dnsfile = File.createTempFile("harness", ".txt");
+		dnsfile.deleteOnExit();
+
+		Domain.initialize();
+		DNSCache.getDefault();
+
+		generate();
+	}
+
+	@SuppressWarnings("static-access")
+	public static void main(String[] inArgs) throws Exception
+	{
+		Options options = new Options();
+		options.addOption(OptionBuilder.withArgName("count").hasArg().withDescription("domains in the generated list, default 10000").create(DOMAINS));
+		options.addOption(OptionBuilder.withArgName("count").hasArg().withDescription("most domains in flight, default 500").create(THREADS));
+
+		CommandLine line;
+
+		try
+		{
+			line = new GnuParser().parse(options, inArgs);
+		}
+		catch(ParseException e)
+		{
+			new HelpFormatter().printHelp("LoadHarness [options] [configuration ...]", options);
+
+			return;
+		}
+
+		String[] configurations = line.getArgs().length > 0 ? line.getArgs() : DEFAULT_CONFIGURATIONS;
+
+		LoadHarness harness = new LoadHarness(NumberUtils.toInt(line.getOptionValue(DOMAINS), 10000), NumberUtils.toInt(line.getOptionValue(THREADS), 500));
+
+		for(String configuration : configurations)
+		{
+			System.out.println(harness.run(configuration));
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Write the domain list, a mix of top level domains so the validator
+	 * doesn't see the same suffix every time.
+	 */
+	private void generate() throws IOException
+	{
+		String[] suffixes = { ".com", ".net", ".org", ".co.uk", ".info" };
+
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(dnsfile), 64 * 1024));
+
+		try
+		{
+			for(int i = 0; i < domains; i++)
+			{
+				out.print("shop");
+				out.print(i);
+				out.println(suffixes[i % suffixes.length]);
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * One bulk run of the whole list with a fresh stub, resolver, caches and
+	 * metrics, giving one line of results.
+	 */
+	public String run(String inConfiguration) throws Exception
+	{
+		StubServer stub = new StubServer();
+		int timeout = NioResolver.DEFAULT_TIMEOUT;
+
+		for(String pair : StringUtils.split(inConfiguration, ";"))
+		{
+			String key = StringUtils.substringBefore(pair, "=").trim();
+			String value = StringUtils.substringAfter(pair, "=").trim();
+
+			if("latency".equals(key))
+			{
+				stub.setLatency(Integer.parseInt(StringUtils.substringBefore(value, "-")), Integer.parseInt(value.indexOf('-') < 0 ? value : StringUtils.substringAfter(value, "-")));
+			}
+			else if("loss".equals(key))
+			{
+				stub.setLoss(Double.parseDouble(value));
+			}
+			else if("tc".equals(key))
+			{
+				stub.setTruncation(Double.parseDouble(value));
+			}
+			else if("hosted".equals(key))
+			{
+				stub.setHosted(Double.parseDouble(value));
+			}
+			else if("rcodes".equals(key))
+			{
+				stub.setRcodes(value);
+			}
+			else if("timeout".equals(key))
+			{
+				timeout = Integer.parseInt(value);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown setting: " + pair);
+			}
+		}
+
+		stub.start(0);
+
+		DNSCache.getDefault().clearCache();
+		NameServerCache.getDefault().clear();
+		DNSMetrics.getDefault().reset();
+
+		Resolver resolver = DNSTool.createResolver(new String[] { "127.0.0.1" });
+		resolver.setPort(stub.getPort());
+		resolver.setTimeout(0, timeout);
+
+		DNSTool.setResolver(resolver);
+
+		List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP)
+			{
+				heap.add(pool);
+			}
+		}
+
+		System.gc();
+
+		for(MemoryPoolMXBean pool : heap)
+		{
+			pool.resetPeakUsage();
+		}
+
+		// BulkRunner echoes every domain, which would swamp the results
+
+		PrintStream console = System.out;
+
+		DNSTool tool = new DNSTool();
+		long started = System.nanoTime();
+
+		try
+		{
+			System.setOut(new PrintStream(new OutputStream()
+			{
+				public void write(int inByte)
+				{
+				}
+
+				public void write(byte[] inBytes, int inOffset, int inLength)
+				{
+				}
+			}));
+
+			tool.parseInput("-dnsfile " + dnsfile.getPath() + " -threads " + threads, new ArrayList<Object>());
+			tool.parseInput("-run", new ArrayList<Object>());
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+
+		long elapsed = Math.max(1, (System.nanoTime() - started) / 1000000L);
+
+		long peak = 0;
+
+		for(MemoryPoolMXBean pool : heap)
+		{
+			peak += pool.getPeakUsage().getUsed();
+		}
+
+		LatencyHistogram a = DNSMetrics.getDefault().getLatency(Type.A);
+		LatencyHistogram ns = DNSMetrics.getDefault().getLatency(Type.NS);
+
+		StringBuilder s = new StringBuilder(inConfiguration);
+		s.append("\n\t").append(domains).append(" domains in ").append(elapsed).append("ms, ");
+		s.append((domains * 1000L) / elapsed).append(" domains/s, peak heap ").append(peak / (1024 * 1024)).append("MB");
+		s.append("\n\tA  ").append(a.getSummary());
+		s.append("\n\tNS ").append(ns.getSummary());
+		s.append("\n\tstub ").append(stub.getStatistics());
+		s.append("\n\tclient ").append(NioDNSClient.getDefault().getStatistics());
+
+		stub.close();
+
+		if(Lookup.getDefaultResolver() instanceof BalancedResolver)
+		{
+			((BalancedResolver) Lookup.getDefaultResolver()).close();
+		}
+
+		new File(dnsfile.getPath() + ".out").delete();
+		new File(dnsfile.getPath() + ".err").delete();
+		new File(dnsfile.getPath() + BulkRunner.STATS).delete();
+
+		return s.toString();
+	}
+}
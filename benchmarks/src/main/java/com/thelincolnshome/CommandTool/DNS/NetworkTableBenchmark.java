@@ -0,0 +1,70 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Longest prefix match against a {@link NetworkTable} of random provider
+ * prefixes, /8 to /24 and nested at random.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkTableBenchmark
+{
+	private static final int	SIZE		= 4096;
+
+	@Param({ "1000", "300000" })
+	private int					prefixes;
+
+	private NetworkTable		table;
+	private long[]				addresses;
+	private int					next;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		Random random = new Random(42);
+		NetworkTable.Builder builder = new NetworkTable.Builder();
+
+		for(int i = 0; i < prefixes; i++)
+		{
+			int length = 8 + random.nextInt(17);
+			long network = (random.nextInt() & 0xFFFFFFFFL) & (0xFFFFFFFFL << (32 - length)) & 0xFFFFFFFFL;
+
+			builder.add(network, network + (1L << (32 - length)) - 1, "provider" + random.nextInt(500));
+		}
+
+		table = builder.build();
+		addresses = new long[SIZE];
+
+		for(int i = 0; i < SIZE; i++)
+		{
+			addresses[i] = random.nextInt() & 0xFFFFFFFFL;
+		}
+	}
+
+	@Benchmark
+	public int labelOf()
+	{
+		next = (next + 1) & (SIZE - 1);
+
+		return table.labelOf(addresses[next]);
+	}
+}
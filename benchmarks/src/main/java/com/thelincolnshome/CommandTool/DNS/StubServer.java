@@ -0,0 +1,573 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.NSRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.PTRRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+/**
+ * A stand-in nameserver on loopback UDP and TCP that answers every name from
+ * a synthetic zone, so bulk runs can be measured without the public
+ * resolvers.
+ * <p>
+ * The answers are worked out from a hash of the name, so the same name
+ * always gets the same answer: an A record, a pair of NS records from a
+ * small set of providers, addresses for those nameservers and a PTR name
+ * for reverse lookups. A share of the domains and of the providers is given
+ * an address in the StoresOnline networks. Latency, loss, truncation and
+ * the mix of RCODEs are all configurable; a truncated UDP answer carries no
+ * records, and the same query over TCP gets the full answer.
+ */
+public class StubServer
+{
+	private static Logger						log				= LoggerFactory.getLogger(StubServer.class);
+
+	private static final long					TTL				= 300;
+	private static final int					PROVIDERS		= 16;
+	private static final int					RECEIVE_BUFFER	= 4 * 1024 * 1024;
+
+	private static final String[]				HOSTED			= { "208.187.218.", "209.210.220.", "184.178.213.", "70.102.216.", "70.102.218." };
+
+	private final ScheduledThreadPoolExecutor	delayed;
+
+	private DatagramChannel						udp;
+	private ServerSocket						tcp;
+	private volatile boolean					running			= false;
+
+	private int									minLatency		= 0;
+	private int									maxLatency		= 0;
+	private double								loss			= 0;
+	private double								truncation		= 0;
+	private double								hosted			= 0.1;
+	private int[]								rcodes			= { Rcode.NOERROR };
+	private int[]								weights			= { 1 };
+	private int									totalWeight		= 1;
+
+	private final AtomicLong					received		= new AtomicLong();
+	private final AtomicLong					dropped			= new AtomicLong();
+	private final AtomicLong					truncated		= new AtomicLong();
+	private final AtomicLong					tcpQueries		= new AtomicLong();
+
+	public StubServer()
+	{
+		delayed = new ScheduledThreadPoolExecutor(2, new ThreadFactory()
+		{
+			public Thread newThread(Runnable inRunnable)
+			{
+				Thread thread = new Thread(inRunnable, "StubServer delay");
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Every answer waits between the two, in milliseconds, picked uniformly.
+	 */
+	public void setLatency(int inMinimum, int inMaximum)
+	{
+		if(inMinimum < 0 || inMaximum < inMinimum)
+		{
+			throw new IllegalArgumentException("Latency must satisfy 0 <= minimum <= maximum.");
+		}
+
+		minLatency = inMinimum;
+		maxLatency = inMaximum;
+	}
+
+	/**
+	 * Share of UDP queries that are never answered.
+	 */
+	public void setLoss(double inLoss)
+	{
+		loss = inLoss;
+	}
+
+	/**
+	 * Share of UDP answers sent empty with the TC flag.
+	 */
+	public void setTruncation(double inTruncation)
+	{
+		truncation = inTruncation;
+	}
+
+	/**
+	 * Share of domains and nameservers given a StoresOnline address.
+	 */
+	public void setHosted(double inHosted)
+	{
+		hosted = inHosted;
+	}
+
+	/**
+	 * The mix of RCODEs, as comma separated name:weight pairs, for example
+	 * <code>NOERROR:95,SERVFAIL:3,NXDOMAIN:2</code>.
+	 */
+	public void setRcodes(String inSpec)
+	{
+		String[] parts = StringUtils.split(inSpec, ",");
+
+		int[] codes = new int[parts.length];
+		int[] shares = new int[parts.length];
+		int total = 0;
+
+		for(int i = 0; i < parts.length; i++)
+		{
+			String[] pair = StringUtils.split(parts[i], ":");
+
+			codes[i] = Rcode.value(pair[0].trim());
+			shares[i] = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+
+			if(codes[i] < 0 || shares[i] < 0)
+			{
+				throw new IllegalArgumentException("Bad RCODE weight: " + parts[i]);
+			}
+
+			total += shares[i];
+		}
+
+		if(total < 1)
+		{
+			throw new IllegalArgumentException("RCODE weights cannot all be zero.");
+		}
+
+		rcodes = codes;
+		weights = shares;
+		totalWeight = total;
+	}
+
+	/**
+	 * Listen on the given loopback port, or any free one for 0.
+	 */
+	public void start(int inPort) throws IOException
+	{
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+
+		udp = DatagramChannel.open();
+		udp.setOption(StandardSocketOptions.SO_RCVBUF, Integer.valueOf(RECEIVE_BUFFER));
+		udp.setOption(StandardSocketOptions.SO_SNDBUF, Integer.valueOf(RECEIVE_BUFFER));
+		udp.bind(new InetSocketAddress(loopback, inPort));
+
+		tcp = new ServerSocket(getPort(), 50, loopback);
+
+		running = true;
+
+		daemon(new Runnable()
+		{
+			public void run()
+			{
+				serveUDP();
+			}
+		}, "StubServer UDP").start();
+
+		daemon(new Runnable()
+		{
+			public void run()
+			{
+				serveTCP();
+			}
+		}, "StubServer TCP").start();
+	}
+
+	public int getPort()
+	{
+		return ((InetSocketAddress) udp.socket().getLocalSocketAddress()).getPort();
+	}
+
+	public void close()
+	{
+		running = false;
+
+		delayed.shutdownNow();
+
+		try
+		{
+			udp.close();
+			tcp.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	public String getStatistics()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append("received=").append(received.get());
+		s.append(" dropped=").append(dropped.get());
+		s.append(" truncated=").append(truncated.get());
+		s.append(" tcp=").append(tcpQueries.get());
+
+		return s.toString();
+	}
+
+	private static Thread daemon(Runnable inRunnable, String inName)
+	{
+		Thread thread = new Thread(inRunnable, inName);
+		thread.setDaemon(true);
+
+		return thread;
+	}
+
+	private void serveUDP()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(Message.MAXLENGTH);
+
+		while(running)
+		{
+			try
+			{
+				buffer.clear();
+
+				final SocketAddress from = udp.receive(buffer);
+				buffer.flip();
+
+				byte[] data = new byte[buffer.remaining()];
+				buffer.get(data);
+
+				received.incrementAndGet();
+
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				if(random.nextDouble() < loss)
+				{
+					dropped.incrementAndGet();
+
+					continue;
+				}
+
+				boolean truncate = random.nextDouble() < truncation;
+
+				if(truncate)
+				{
+					truncated.incrementAndGet();
+				}
+
+				final byte[] response = answer(data, truncate);
+
+				if(response == null)
+				{
+					continue;
+				}
+
+				int latency = latency();
+
+				if(latency == 0)
+				{
+					udp.send(ByteBuffer.wrap(response), from);
+				}
+				else
+				{
+					delayed.schedule(new Runnable()
+					{
+						public void run()
+						{
+							try
+							{
+								udp.send(ByteBuffer.wrap(response), from);
+							}
+							catch(IOException e)
+							{
+							}
+						}
+					}, latency, TimeUnit.MILLISECONDS);
+				}
+			}
+			catch(IOException e)
+			{
+				if(running)
+				{
+					log.error("UDP stub", e);
+				}
+			}
+		}
+	}
+
+	private void serveTCP()
+	{
+		while(running)
+		{
+			try
+			{
+				final Socket socket = tcp.accept();
+
+				daemon(new Runnable()
+				{
+					public void run()
+					{
+						serveConnection(socket);
+					}
+				}, "StubServer TCP connection").start();
+			}
+			catch(IOException e)
+			{
+				if(running)
+				{
+					log.error("TCP stub", e);
+				}
+			}
+		}
+	}
+
+	private void serveConnection(Socket inSocket)
+	{
+		try
+		{
+			DataInputStream in = new DataInputStream(inSocket.getInputStream());
+			DataOutputStream out = new DataOutputStream(inSocket.getOutputStream());
+
+			while(running)
+			{
+				byte[] data = new byte[in.readUnsignedShort()];
+				in.readFully(data);
+
+				tcpQueries.incrementAndGet();
+
+				byte[] response = answer(data, false);
+
+				if(response == null)
+				{
+					break;
+				}
+
+				Thread.sleep(latency());
+
+				out.writeShort(response.length);
+				out.write(response);
+				out.flush();
+			}
+		}
+		catch(EOFException e)
+		{
+		}
+		catch(Exception e)
+		{
+			if(running)
+			{
+				log.debug("TCP connection", e);
+			}
+		}
+		finally
+		{
+			try
+			{
+				inSocket.close();
+			}
+			catch(IOException e)
+			{
+			}
+		}
+	}
+
+	private int latency()
+	{
+		return minLatency == maxLatency ? minLatency : minLatency + ThreadLocalRandom.current().nextInt(maxLatency - minLatency + 1);
+	}
+
+	private int rcode()
+	{
+		int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+
+		for(int i = 0; i < rcodes.length; i++)
+		{
+			pick -= weights[i];
+
+			if(pick < 0)
+			{
+				return rcodes[i];
+			}
+		}
+
+		return Rcode.NOERROR;
+	}
+
+	/**
+	 * The wire form of the answer to a query, or null if it can't be read.
+	 */
+	byte[] answer(byte[] inQuery, boolean inTruncate)
+	{
+		Message query;
+
+		try
+		{
+			query = new Message(inQuery);
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+
+		Record question = query.getQuestion();
+
+		if(question == null)
+		{
+			return null;
+		}
+
+		Message response = new Message(query.getHeader().getID());
+		response.getHeader().setFlag(Flags.QR);
+		response.getHeader().setFlag(Flags.AA);
+		response.getHeader().setFlag(Flags.RA);
+
+		if(query.getHeader().getFlag(Flags.RD))
+		{
+			response.getHeader().setFlag(Flags.RD);
+		}
+
+		response.addRecord(question, Section.QUESTION);
+
+		int rcode = rcode();
+		response.getHeader().setRcode(rcode);
+
+		if(inTruncate)
+		{
+			response.getHeader().setFlag(Flags.TC);
+		}
+		else if(rcode == Rcode.NOERROR)
+		{
+			try
+			{
+				addAnswers(response, question);
+			}
+			catch(TextParseException e)
+			{
+				response.getHeader().setRcode(Rcode.SERVFAIL);
+			}
+		}
+		else if(rcode == Rcode.NXDOMAIN)
+		{
+			addSOA(response, question.getName());
+		}
+
+		return response.toWire();
+	}
+
+	private void addAnswers(Message inResponse, Record inQuestion) throws TextParseException
+	{
+		Name name = inQuestion.getName();
+		int hash = hash(name);
+
+		switch(inQuestion.getType())
+		{
+			case Type.A:
+				inResponse.addRecord(new ARecord(name, DClass.IN, TTL, address(hash)), Section.ANSWER);
+				break;
+
+			case Type.NS:
+				int provider = (hash & 0x7FFFFFFF) % PROVIDERS;
+
+				for(int i = 1; i <= 2; i++)
+				{
+					Name server = Name.fromString("ns" + i + ".provider" + provider + ".test.");
+
+					inResponse.addRecord(new NSRecord(name, DClass.IN, TTL, server), Section.ANSWER);
+				}
+				break;
+
+			case Type.PTR:
+				inResponse.addRecord(new PTRRecord(name, DClass.IN, TTL, Name.fromString("host" + (hash & 0x7FFFFFFF) + ".provider" + ((hash & 0x7FFFFFFF) % PROVIDERS) + ".test.")), Section.ANSWER);
+				break;
+
+			default:
+
+				// no data for any other type
+
+				addSOA(inResponse, name);
+				break;
+		}
+	}
+
+	private static void addSOA(Message inResponse, Name inName)
+	{
+		try
+		{
+			Name zone = inName.labels() > 2 ? new Name(inName, inName.labels() - 3) : Name.root;
+			Name host = Name.fromString("ns1.stub.test.");
+
+			inResponse.addRecord(new SOARecord(zone, DClass.IN, TTL, host, host, 1, 3600, 600, 86400, TTL), Section.AUTHORITY);
+		}
+		catch(TextParseException e)
+		{
+		}
+	}
+
+	private InetAddress address(int inHash)
+	{
+		int unsigned = inHash & 0x7FFFFFFF;
+		byte[] bytes;
+
+		if((unsigned % 1000) < hosted * 1000)
+		{
+			InetAddress network = null;
+
+			try
+			{
+				network = InetAddress.getByName(HOSTED[unsigned % HOSTED.length] + "0");
+			}
+			catch(IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+
+			bytes = network.getAddress();
+			bytes[3] = (byte) (unsigned >>> 8);
+		}
+		else
+		{
+			bytes = new byte[] { 100, (byte) (64 + ((unsigned >>> 16) & 0x3F)), (byte) (unsigned >>> 8), (byte) unsigned };
+		}
+
+		try
+		{
+			return InetAddress.getByAddress(bytes);
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static int hash(Name inName)
+	{
+		int hash = inName.toString().toLowerCase().hashCode();
+
+		// spread the bits, String.hashCode of similar names differs mostly in the low ones
+
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+
+		return hash;
+	}
+}
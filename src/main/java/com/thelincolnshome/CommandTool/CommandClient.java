@@ -0,0 +1,161 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The thin side of the {@link CommandServer}: no jars are scanned and no
+ * parsers registered, it only hands command lines to a running server and
+ * prints what comes back as it arrives.
+ */
+public final class CommandClient
+{
+	private final Socket			socket;
+	private final BufferedReader	in;
+	private final Writer			out;
+
+	/**
+	 * Connect to the server on the given loopback port and open a session
+	 * with the named parser, printing its greeting.
+	 */
+	public CommandClient(int inPort, String inParser, PrintStream inDisplay) throws IOException
+	{
+		this(inPort, CommandServer.defaultTokenFile(), inParser, inDisplay);
+	}
+
+	/**
+	 * As above, proving who we are with the token in the given file rather
+	 * than the default one.
+	 */
+	public CommandClient(int inPort, File inTokenFile, String inParser, PrintStream inDisplay) throws IOException
+	{
+		if(inTokenFile == null || inParser == null)
+		{
+			throw new IllegalArgumentException("Token file and parser cannot be null.");
+		}
+
+		String token = CommandServer.readToken(inTokenFile);
+
+		socket = new Socket(InetAddress.getLoopbackAddress(), inPort);
+		in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+
+		send(token);
+		send(inParser);
+
+		if(!receive(inDisplay))
+		{
+			close();
+
+			throw new IOException("No session with " + inParser + ", the parser is unknown or the token was refused");
+		}
+	}
+
+	/**
+	 * Run one command, printing its result lines to the display.
+	 *
+	 * @return false once the server has closed the session
+	 */
+	public boolean execute(String inCommand, PrintStream inDisplay) throws IOException
+	{
+		send(inCommand);
+
+		return receive(inDisplay);
+	}
+
+	public void close()
+	{
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	private void send(String inLine) throws IOException
+	{
+		out.write(inLine);
+		out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * Print lines up to the terminator, unstuffing the ones that start with
+	 * it. False when the server closed the session instead.
+	 */
+	private boolean receive(PrintStream inDisplay) throws IOException
+	{
+		for(String line = in.readLine(); line != null; line = in.readLine())
+		{
+			if(line.equals(CommandServer.TERMINATOR))
+			{
+				inDisplay.flush();
+
+				return true;
+			}
+
+			inDisplay.println(line.startsWith(CommandServer.TERMINATOR) ? line.substring(1) : line);
+		}
+
+		inDisplay.flush();
+
+		return false;
+	}
+
+	/**
+	 * <code>-client parser [command ...]</code>: run the command given on the
+	 * command line, or every line of stdin when there is none.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.out.println("Usage: -client parser [command ...]");
+
+			return;
+		}
+
+		CommandClient client = new CommandClient(CommandServer.getConfiguredPort(), args[0], System.out);
+
+		try
+		{
+			if(args.length > 1)
+			{
+				StringBuilder command = new StringBuilder();
+
+				for(int i = 1; i < args.length; i++)
+				{
+					command.append(i > 1 ? " " : "").append(args[i]);
+				}
+
+				client.execute(command.toString(), System.out);
+
+				return;
+			}
+
+			BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+
+			for(String line = stdin.readLine(); line != null; line = stdin.readLine())
+			{
+				if(!client.execute(line, System.out))
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,771 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the registered {@link LineParser}s, their caches and a warm JIT in
+ * one long running process, taking commands from any number of clients on
+ * a loopback TCP port.
+ * <p>
+ * One selector thread does all of the socket work; the commands themselves
+ * run on a pool, since a <code>-run</code> can take hours. A client sends
+ * the token from {@link #defaultTokenFile()}, the name of a parser, then one
+ * command per line. The port only listens on loopback, and the token, in a
+ * file only its owner can read, keeps other users of the machine out. Every command, and the
+ * greeting after the parser name, is answered with its result lines and a
+ * line holding just {@link #TERMINATOR}; a result line that starts with one
+ * gets a second, as in SMTP. Each connection is a session with a parser of
+ * its own from {@link LineParsers#newParser(String)}, so settings such as
+ * the dnsfile, the nameservers and what they answered do not leak between
+ * clients, and a parser that is {@link Closeable} is closed when its session
+ * ends, once the command it was running has stopped; that command is
+ * interrupted. Whatever a parser keeps in static state, like the query
+ * metrics, is still shared.
+ * Commands of one session run in order, sessions run side by side.
+ * <p>
+ * Rows are sent while the command is still running, so a client sees a
+ * long result as it is produced. When a client reads slower than its
+ * command writes, the command is held up in {@link ResultSink#add(Object)}
+ * once {@link #MAX_QUEUED} bytes are waiting, rather than the server
+ * holding the whole result.
+ */
+public class CommandServer
+{
+	private static final Logger						log			= LoggerFactory.getLogger(CommandServer.class);
+
+	public static final int							DEFAULT_PORT = 9753;
+
+	/** System property overriding the port of both the server and the client. */
+	public static final String						PORT		= "CommandTool.port";
+
+	public static final String						TERMINATOR	= ".";
+
+	private static final int						BUFFER_SIZE	= 8 * 1024;
+
+	/** How much output may wait for a client before its command is held up. */
+	static final int								MAX_QUEUED	= 1024 * 1024;
+
+	/** The longest line a client may send before its session is dropped. */
+	static final int								MAX_LINE	= 64 * 1024;
+
+	/** How many commands may wait to run before the session is dropped. */
+	static final int								MAX_COMMANDS	= 1024;
+
+	private static final int						TOKEN_BYTES	= 32;
+
+	private final ServerSocketChannel				server;
+	private final Selector							selector;
+	private final ExecutorService					executor;
+	private final ConcurrentLinkedQueue<Session>	ready		= new ConcurrentLinkedQueue<Session>();
+	private final AtomicInteger						sessions	= new AtomicInteger();
+	private final byte[]							token;
+
+	public CommandServer(int inPort) throws IOException
+	{
+		this(inPort, defaultTokenFile());
+	}
+
+	/**
+	 * Serve on the given loopback port, 0 for any free one, to clients that
+	 * send the token in the file, creating it when there is none yet.
+	 */
+	public CommandServer(int inPort, File inTokenFile) throws IOException
+	{
+		if(inTokenFile == null)
+		{
+			throw new IllegalArgumentException("Token file cannot be null.");
+		}
+
+		token = createToken(inTokenFile).getBytes(StandardCharsets.UTF_8);
+
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), inPort));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+
+		executor = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			private final AtomicInteger	count	= new AtomicInteger();
+
+			public Thread newThread(Runnable inRunnable)
+			{
+				Thread thread = new Thread(inRunnable, "CommandServer " + count.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * The port set by {@link #PORT}, or {@link #DEFAULT_PORT}.
+	 */
+	public static int getConfiguredPort()
+	{
+		return Integer.getInteger(PORT, DEFAULT_PORT);
+	}
+
+	/**
+	 * <code>~/.CommandTool/token</code>, the token clients prove they may use
+	 * the server with.
+	 */
+	public static File defaultTokenFile()
+	{
+		return new File(new File(System.getProperty("user.home"), ".CommandTool"), "token");
+	}
+
+	/**
+	 * Write a new random token to the file, readable by its owner only,
+	 * unless there is one already, and return the token.
+	 */
+	static String createToken(File inFile) throws IOException
+	{
+		Path path = inFile.getAbsoluteFile().toPath();
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+		if(!Files.exists(path))
+		{
+			byte[] bytes = new byte[TOKEN_BYTES];
+			new SecureRandom().nextBytes(bytes);
+
+			StringBuilder token = new StringBuilder();
+
+			for(byte b : bytes)
+			{
+				token.append(String.format("%02x", Integer.valueOf(b & 0xFF)));
+			}
+
+			try
+			{
+				if(posix)
+				{
+					Files.createDirectories(path.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+					Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+				}
+				else
+				{
+					Files.createDirectories(path.getParent());
+					Files.createFile(path);
+
+					inFile.setReadable(false, false);
+					inFile.setReadable(true, true);
+				}
+
+				Files.write(path, token.toString().getBytes(StandardCharsets.UTF_8));
+
+				log.info("Created the client token in {}", inFile);
+			}
+			catch(FileAlreadyExistsException e)
+			{
+				// another server got there first, use its token
+			}
+		}
+
+		return readToken(inFile);
+	}
+
+	/**
+	 * The token in the file, which nobody but its owner may be able to read.
+	 */
+	static String readToken(File inFile) throws IOException
+	{
+		Path path = inFile.toPath();
+
+		if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+		{
+			Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+
+			if(permissions.contains(PosixFilePermission.GROUP_READ) || permissions.contains(PosixFilePermission.OTHERS_READ))
+			{
+				throw new IOException(inFile + " can be read by other users, it has to be 0600");
+			}
+		}
+
+		String token = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+
+		if(token.isEmpty())
+		{
+			throw new IOException(inFile + " holds no token");
+		}
+
+		return token;
+	}
+
+	public int getPort()
+	{
+		return server.socket().getLocalPort();
+	}
+
+	public int getSessions()
+	{
+		return sessions.get();
+	}
+
+	/**
+	 * Serve until {@link #close()}.
+	 */
+	public void run()
+	{
+		log.info("Serving {} on {}", LineParsers.getParsers(), server.socket().getLocalSocketAddress());
+
+		try
+		{
+			while(selector.isOpen())
+			{
+				selector.select();
+
+				// sessions with output waiting, from the command threads
+
+				for(Session session = ready.poll(); session != null; session = ready.poll())
+				{
+					session.interest();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while(keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if(!key.isValid())
+					{
+						continue;
+					}
+
+					if(key.isAcceptable())
+					{
+						accept();
+						continue;
+					}
+
+					Session session = (Session) key.attachment();
+
+					try
+					{
+						if(key.isReadable())
+						{
+							session.read();
+						}
+
+						if(key.isValid() && key.isWritable())
+						{
+							session.write();
+						}
+					}
+					catch(IOException e)
+					{
+						session.close();
+					}
+				}
+			}
+		}
+		catch(ClosedSelectorException e)
+		{
+		}
+		catch(IOException e)
+		{
+			log.error("Server stopped", e);
+		}
+	}
+
+	public void close()
+	{
+		try
+		{
+			server.close();
+			selector.close();
+		}
+		catch(IOException e)
+		{
+		}
+
+		executor.shutdownNow();
+	}
+
+	private void accept() throws IOException
+	{
+		SocketChannel channel = server.accept();
+
+		if(channel != null)
+		{
+			channel.configureBlocking(false);
+
+			Session session = new Session(channel);
+
+			session.key = channel.register(selector, SelectionKey.OP_READ, session);
+			sessions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Append the lines of a result, stuffing any that starts with the
+	 * terminator, and the terminator after them.
+	 */
+	static void appendResponse(StringBuilder inResponse, List<Object> inResult)
+	{
+		for(Object item : inResult)
+		{
+			appendRow(inResponse, item);
+		}
+
+		inResponse.append(TERMINATOR).append('\n');
+	}
+
+	static void appendRow(StringBuilder inResponse, Object inRow)
+	{
+		if(inRow == null)
+		{
+			return;
+		}
+
+		for(String line : StringUtils.splitPreserveAllTokens(inRow.toString(), '\n'))
+		{
+			if(line.startsWith(TERMINATOR))
+			{
+				inResponse.append(TERMINATOR);
+			}
+
+			inResponse.append(line).append('\n');
+		}
+	}
+
+	/**
+	 * One client connection: its parser, the commands it sent that have not
+	 * run yet and the output it has not been sent yet.
+	 */
+	private class Session implements Runnable, ResultSink
+	{
+		private final SocketChannel				channel;
+		private SelectionKey					key;
+
+		private final ByteBuffer				input		= ByteBuffer.allocate(BUFFER_SIZE);
+		private final ByteArrayOutputStream		line		= new ByteArrayOutputStream();
+
+		private final LinkedList<String>		commands	= new LinkedList<String>();
+		private final LinkedList<ByteBuffer>	output		= new LinkedList<ByteBuffer>();
+		private long							queued		= 0;
+		private final StringBuilder				rows		= new StringBuilder();
+		private boolean							authenticated	= false;
+		private LineParser						parser		= null;
+		private boolean							running		= false;
+		private Thread							worker		= null;
+		private boolean							finished	= false;
+		private volatile boolean				closed		= false;
+
+		Session(SocketChannel inChannel)
+		{
+			channel = inChannel;
+		}
+
+		void read() throws IOException
+		{
+			input.clear();
+
+			int read = channel.read(input);
+
+			if(read < 0)
+			{
+				close();
+
+				return;
+			}
+
+			for(int i = 0; i < read; i++)
+			{
+				byte b = input.get(i);
+
+				if(b == '\n')
+				{
+					received(StringUtils.removeEnd(new String(line.toByteArray(), StandardCharsets.UTF_8), "\r"));
+					line.reset();
+
+					if(closed)
+					{
+						return;
+					}
+				}
+				else if(line.size() >= MAX_LINE)
+				{
+					log.warn("Dropping a session that sent a line of over {} bytes", Integer.valueOf(MAX_LINE));
+
+					close();
+
+					return;
+				}
+				else
+				{
+					line.write(b);
+				}
+			}
+		}
+
+		private void received(String inLine)
+		{
+			if(!authenticated)
+			{
+				if(!MessageDigest.isEqual(token, inLine.trim().getBytes(StandardCharsets.UTF_8)))
+				{
+					log.warn("Refused a session without the token");
+
+					close();
+
+					return;
+				}
+
+				authenticated = true;
+
+				return;
+			}
+
+			if(parser == null)
+			{
+				start(inLine.trim());
+
+				return;
+			}
+
+			synchronized(this)
+			{
+				if(finished)
+				{
+					return;
+				}
+
+				if(commands.size() >= MAX_COMMANDS)
+				{
+					log.warn("Dropping a session with over {} commands waiting", Integer.valueOf(MAX_COMMANDS));
+
+					close();
+
+					return;
+				}
+
+				commands.add(inLine);
+
+				if(running)
+				{
+					return;
+				}
+
+				running = true;
+			}
+
+			executor.execute(this);
+		}
+
+		private void start(String inName)
+		{
+			parser = LineParsers.newParser(inName);
+
+			if(parser == null)
+			{
+				// no terminator, the client sees the session end instead
+
+				finished = true;
+				send("Unknown parser " + inName + ", available: " + LineParsers.getParsers() + "\n");
+
+				return;
+			}
+
+			StringBuilder response = new StringBuilder();
+			List<Object> result = new ArrayList<Object>();
+
+			if(StringUtils.isNotEmpty(parser.getHelloPrompt()))
+			{
+				result.add(parser.getHelloPrompt());
+			}
+
+			appendResponse(response, result);
+			send(response);
+		}
+
+		/**
+		 * Run the waiting commands in order, on a pool thread, and close the
+		 * parser once the session has ended.
+		 */
+		public void run()
+		{
+			boolean ended;
+
+			while(true)
+			{
+				String command;
+
+				synchronized(this)
+				{
+					if(commands.isEmpty() || closed)
+					{
+						running = false;
+						worker = null;
+						ended = closed;
+
+						break;
+					}
+
+					command = commands.removeFirst();
+					worker = Thread.currentThread();
+				}
+
+				boolean exit = false;
+
+				try
+				{
+					exit = LineParsers.parseInput(parser, command, this);
+				}
+				catch(ParseException e)
+				{
+					add(Console.NOT_UNDERSTOOD);
+				}
+				catch(RuntimeException e)
+				{
+					log.warn("Command failed: " + command, e);
+
+					add(e.toString());
+				}
+
+				rows.append(TERMINATOR).append('\n');
+				flush();
+
+				if(exit)
+				{
+					// only once the terminator is queued, or the selector could
+					// close the session before it is sent
+
+					synchronized(this)
+					{
+						finished = true;
+						commands.clear();
+						running = false;
+						worker = null;
+						ended = closed;
+					}
+
+					ready.add(this);
+					selector.wakeup();
+
+					break;
+				}
+			}
+
+			// an interrupt from close() must not reach the next task of this thread
+
+			Thread.interrupted();
+
+			if(ended)
+			{
+				closeParser();
+			}
+		}
+
+		/**
+		 * A row of the running command, sent at once when the client has read
+		 * everything before it, or else gathered with the next rows.
+		 */
+		public void add(Object inRow)
+		{
+			if(closed)
+			{
+				return;
+			}
+
+			appendRow(rows, inRow);
+
+			synchronized(this)
+			{
+				if(rows.length() < BUFFER_SIZE && !output.isEmpty())
+				{
+					return;
+				}
+			}
+
+			flush();
+
+			synchronized(this)
+			{
+				while(queued > MAX_QUEUED && !closed)
+				{
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+
+						return;
+					}
+				}
+			}
+		}
+
+		private void flush()
+		{
+			if(rows.length() > 0)
+			{
+				send(rows);
+				rows.setLength(0);
+			}
+		}
+
+		private void send(CharSequence inResponse)
+		{
+			synchronized(this)
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(inResponse.toString().getBytes(StandardCharsets.UTF_8));
+
+				output.add(buffer);
+				queued += buffer.remaining();
+			}
+
+			ready.add(this);
+			selector.wakeup();
+		}
+
+		/**
+		 * On the selector thread: ask to hear when the channel can take the
+		 * waiting output.
+		 */
+		void interest()
+		{
+			if(key.isValid())
+			{
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		void write() throws IOException
+		{
+			synchronized(this)
+			{
+				while(!output.isEmpty())
+				{
+					ByteBuffer buffer = output.getFirst();
+
+					channel.write(buffer);
+
+					if(buffer.hasRemaining())
+					{
+						return;
+					}
+
+					output.removeFirst();
+					queued -= buffer.capacity();
+
+					// room again for a command held up in add()
+
+					notifyAll();
+				}
+
+				key.interestOps(SelectionKey.OP_READ);
+
+				// nothing more will be sent once the session is finished
+
+				if(finished)
+				{
+					close();
+				}
+			}
+		}
+
+		/**
+		 * On the selector thread: drop the connection and stop the running
+		 * command, which closes the parser as it leaves {@link #run()}. With no
+		 * command running, a pool thread is started to do it instead, so the
+		 * parser is only ever used and closed from the pool.
+		 */
+		void close()
+		{
+			boolean idle;
+
+			synchronized(this)
+			{
+				if(closed)
+				{
+					return;
+				}
+
+				closed = true;
+				idle = !running;
+
+				if(idle)
+				{
+					running = true;
+				}
+				else if(worker != null)
+				{
+					worker.interrupt();
+				}
+
+				notifyAll();
+			}
+
+			sessions.decrementAndGet();
+			key.cancel();
+
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+			}
+
+			if(idle)
+			{
+				executor.execute(this);
+			}
+		}
+
+		private void closeParser()
+		{
+			if(parser instanceof Closeable)
+			{
+				try
+				{
+					((Closeable) parser).close();
+				}
+				catch(IOException e)
+				{
+					log.warn("Closing the parser of a session", e);
+				}
+			}
+		}
+	}
+}
@@ -3,9 +3,17 @@ package com.thelincolnshome.CommandTool;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.IOUtils;
@@ -15,7 +23,24 @@ import org.apache.commons.io.IOUtils;
  */
 public final class Console
 {
-	private LineParser	lineParser;
+	static final String			NOT_UNDERSTOOD	= "I don't understand you!";
+
+	/** How many commands may be running or waiting to be written per thread. */
+	private static final int	BACKLOG			= 4;
+
+	/**
+	 * Shows each row on stdout as it comes.
+	 */
+	public static final ResultSink	DISPLAY			= new ResultSink()
+	{
+		public void add(Object inRow)
+		{
+			display(inRow);
+			display("\n");
+		}
+	};
+
+	private LineParser			lineParser;
 
 	public Console(LineParser aPerser)
 	{
@@ -32,7 +57,6 @@ public final class Console
 		display(lineParser.getHelloPrompt());
 
 		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
-		List<Object> result = new ArrayList<Object>();
 		boolean notDone = false;
 		String line = null;
 
@@ -44,20 +68,16 @@ public final class Console
 
 				line = stdin.readLine();
 
-				//note that "result" is passed as an "out" parameter
+				// rows are shown as the parser produces them
 
 				try
 				{
-					notDone = lineParser.parseInput(line, result);
-
-					display(result);
+					notDone = LineParsers.parseInput(lineParser, line, DISPLAY);
 				}
 				catch(ParseException e)
 				{
-					display("I don't understand you!");
+					display(NOT_UNDERSTOOD);
 				}
-
-				result.clear();
 			}
 		}
 		catch(IOException ex)
@@ -70,6 +90,123 @@ public final class Console
 		}
 	}
 
+	/**
+	 * Run every line of a script with no prompts, writing the results to the
+	 * given writer as they are produced; the writer is only flushed when the
+	 * script is done. Blank lines and lines starting with <code>#</code> are
+	 * skipped, and a command asking to exit ends the script.
+	 * <p>
+	 * With more than one thread the commands run side by side on the one
+	 * parser, for scripts whose commands do not depend on each other, such
+	 * as thousands of <code>-test</code> lookups. Their results are held
+	 * until the commands before them are written, so they still come out in
+	 * script order.
+	 *
+	 * @return how many commands failed
+	 */
+	public int runBatch(BufferedReader inScript, Writer inOut, int inThreads) throws IOException
+	{
+		if(inThreads < 2)
+		{
+			ResultSink sink = new WriterSink(inOut);
+			int failures = 0;
+
+			for(String line = inScript.readLine(); line != null; line = inScript.readLine())
+			{
+				if(isCommand(line))
+				{
+					Command command;
+
+					try
+					{
+						command = new Command(line, sink).call();
+					}
+					catch(UncheckedIOException e)
+					{
+						throw e.getCause();
+					}
+
+					failures += command.write(inOut);
+
+					if(command.exit)
+					{
+						break;
+					}
+				}
+			}
+
+			inOut.flush();
+
+			return failures;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(inThreads);
+		LinkedList<Future<Command>> pending = new LinkedList<Future<Command>>();
+		int failures = 0;
+
+		try
+		{
+			String line = inScript.readLine();
+
+			while(line != null || !pending.isEmpty())
+			{
+				// keep the threads busy, but only so far ahead of the writing
+
+				for(; line != null && pending.size() < inThreads * BACKLOG; line = inScript.readLine())
+				{
+					if(isCommand(line))
+					{
+						pending.add(executor.submit(new Command(line, null)));
+					}
+				}
+
+				if(pending.isEmpty())
+				{
+					continue;
+				}
+
+				Command command;
+
+				try
+				{
+					command = pending.removeFirst().get();
+				}
+				catch(ExecutionException e)
+				{
+					throw new IOException(e.getCause());
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+
+					break;
+				}
+
+				failures += command.write(inOut);
+
+				if(command.exit)
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+
+			inOut.flush();
+		}
+
+		return failures;
+	}
+
+	private static boolean isCommand(String inLine)
+	{
+		String line = inLine.trim();
+
+		return !line.isEmpty() && !line.startsWith("#");
+	}
+
 	/**
 	* Display some text to stdout.
 	* The result of toString() is used.
@@ -96,4 +233,63 @@ public final class Console
 		}
 	}
 
+	/**
+	 * One line of a batch and what came of it, streamed to a sink or, with
+	 * none, held until it is written.
+	 */
+	private class Command implements Callable<Command>
+	{
+		private final String		line;
+		private final ResultSink	sink;
+		private final List<Object>	result	= new ArrayList<Object>();
+		private boolean				failed	= false;
+		private boolean				exit	= false;
+
+		Command(String inLine, ResultSink inSink)
+		{
+			line = inLine;
+			sink = inSink != null ? inSink : new ListSink(result);
+		}
+
+		public Command call()
+		{
+			try
+			{
+				exit = LineParsers.parseInput(lineParser, line, sink);
+			}
+			catch(ParseException e)
+			{
+				sink.add(NOT_UNDERSTOOD);
+				failed = true;
+			}
+			catch(UncheckedIOException e)
+			{
+				throw e;
+			}
+			catch(RuntimeException e)
+			{
+				sink.add(e.toString());
+				failed = true;
+			}
+
+			return this;
+		}
+
+		/**
+		 * Write the held result lines, giving 1 if the command failed.
+		 */
+		int write(Writer inOut) throws IOException
+		{
+			for(Object item : result)
+			{
+				if(item != null)
+				{
+					inOut.write(item.toString());
+					inOut.write('\n');
+				}
+			}
+
+			return failed ? 1 : 0;
+		}
+	}
 }
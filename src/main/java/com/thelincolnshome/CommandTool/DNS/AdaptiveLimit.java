@@ -0,0 +1,147 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+/**
+ * AIMD window for the number of domains a bulk run keeps in flight.
+ * <p>
+ * Every healthy completion opens the window by 1/window, so it grows by
+ * about one domain per round trip. A timeout, an answer so late that it must
+ * have been retried, or a run of SERVFAIL and REFUSED answers halves it, at
+ * most once per window's worth of completions so a single burst of failures
+ * is only paid for once. The window only grows while latency stays within
+ * twice the best latency seen, so a resolver that queues instead of
+ * refusing is backed off as well.
+ */
+public class AdaptiveLimit
+{
+	private static final double	INCREASE			= 1.0;
+	private static final double	DECREASE			= 0.5;
+	private static final double	SMOOTHING			= 0.1;
+	private static final double	ERROR_SMOOTHING		= 0.05;
+	private static final double	ERROR_THRESHOLD		= 0.1;
+	private static final double	LATENCY_TOLERANCE	= 2.0;
+	private static final double	BASE_DRIFT			= 1.001;
+	private static final double	LOSS_FACTOR			= 10.0;
+	private static final long	LOSS_FLOOR			= 250000000L;
+
+	private final int			minimum;
+	private final int			maximum;
+
+	private double				window;
+	private int					inFlight			= 0;
+	private double				latency				= 0;
+	private double				baseLatency			= 0;
+	private double				errorRate			= 0;
+	private long				sinceDecrease		= 0;
+
+	private long				completed			= 0;
+	private long				decreases			= 0;
+
+	public AdaptiveLimit(int inInitial, int inMinimum, int inMaximum)
+	{
+		if(inMinimum < 1 || inMaximum < inMinimum)
+		{
+			throw new IllegalArgumentException("Limits must satisfy 1 <= minimum <= maximum.");
+		}
+
+		minimum = inMinimum;
+		maximum = inMaximum;
+		window = Math.max(inMinimum, Math.min(inMaximum, inInitial));
+	}
+
+	/**
+	 * Wait until the window has room, then count one more in flight.
+	 */
+	public synchronized void acquire() throws InterruptedException
+	{
+		while(inFlight >= (int) window)
+		{
+			wait();
+		}
+
+		inFlight++;
+	}
+
+	/**
+	 * Count one completion and adjust the window.
+	 *
+	 * @param inLatency how long it was in flight, in nanoseconds
+	 * @param inTimedOut whether any of its queries timed out
+	 * @param inServerFailure whether any of its queries got SERVFAIL or REFUSED
+	 */
+	public synchronized void release(long inLatency, boolean inTimedOut, boolean inServerFailure)
+	{
+		inFlight--;
+		completed++;
+		sinceDecrease++;
+
+		// a resolver that retried after a lost packet still answers, just late
+
+		boolean lost = inTimedOut || (baseLatency > 0 && inLatency > Math.max(baseLatency * LOSS_FACTOR, LOSS_FLOOR));
+
+		latency = latency == 0 ? inLatency : latency + SMOOTHING * (inLatency - latency);
+		baseLatency = baseLatency == 0 ? latency : Math.min(baseLatency * BASE_DRIFT, latency);
+		errorRate += ERROR_SMOOTHING * ((inServerFailure ? 1 : 0) - errorRate);
+
+		if(lost || (inServerFailure && errorRate > ERROR_THRESHOLD))
+		{
+			if(sinceDecrease >= window)
+			{
+				window = Math.max(minimum, window * DECREASE);
+				sinceDecrease = 0;
+				decreases++;
+			}
+		}
+		else if(latency <= baseLatency * LATENCY_TOLERANCE)
+		{
+			window = Math.min(maximum, window + INCREASE / window);
+		}
+
+		notifyAll();
+	}
+
+	/**
+	 * Give back a slot that never got as far as sending anything, without
+	 * counting a completion or a latency for it.
+	 */
+	public synchronized void cancel()
+	{
+		inFlight--;
+
+		notifyAll();
+	}
+
+	public synchronized int getWindow()
+	{
+		return (int) window;
+	}
+
+	public synchronized int getInFlight()
+	{
+		return inFlight;
+	}
+
+	public synchronized long getCompleted()
+	{
+		return completed;
+	}
+
+	/**
+	 * Smoothed latency in milliseconds.
+	 */
+	public synchronized long getLatency()
+	{
+		return (long) (latency / 1000000);
+	}
+
+	public synchronized String getStatistics()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append("window=").append((int) window).append("/").append(maximum);
+		s.append(" inflight=").append(inFlight);
+		s.append(" latency=").append(getLatency()).append("ms");
+		s.append(" errors=").append(Math.round(errorRate * 100)).append("%");
+		s.append(" backoffs=").append(decreases);
+
+		return s.toString();
+	}
+}
@@ -0,0 +1,141 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Every address of a set of sorted, disjoint intervals, in order, as
+ * primitive longs. It splits by address count rather than by interval, so
+ * a fork/join pool gets equal halves of a /8 as readily as of a thousand
+ * scattered /24s, and hands out no object per address.
+ * <p>
+ * Addresses are numbered from 0 across the intervals; a split keeps the
+ * upper half of the numbers and gives away the lower one.
+ */
+class AddressSpliterator implements Spliterator.OfLong
+{
+	/** Fewer addresses than this are not worth a task of their own. */
+	private static final long	MIN_SPLIT	= 1024;
+
+	private final long[]		firsts;
+	private final long[]		offsets;
+	private long				index;
+	private final long			fence;
+	private int					interval;
+
+	/**
+	 * @param inFirsts the first address of each interval
+	 * @param inLasts the last address of each interval
+	 * @param inSize how many of the intervals to cover
+	 */
+	AddressSpliterator(long[] inFirsts, long[] inLasts, int inSize)
+	{
+		firsts = inFirsts;
+		offsets = new long[inSize + 1];
+
+		for(int i = 0; i < inSize; i++)
+		{
+			offsets[i + 1] = offsets[i] + inLasts[i] - inFirsts[i] + 1;
+		}
+
+		index = 0;
+		fence = offsets[inSize];
+		interval = 0;
+	}
+
+	private AddressSpliterator(long[] inFirsts, long[] inOffsets, long inIndex, long inFence, int inInterval)
+	{
+		firsts = inFirsts;
+		offsets = inOffsets;
+		index = inIndex;
+		fence = inFence;
+		interval = inInterval;
+	}
+
+	/**
+	 * The interval holding the numbered address.
+	 */
+	private int intervalOf(long inIndex)
+	{
+		int found = Arrays.binarySearch(offsets, inIndex);
+
+		// an exact hit is where an interval starts, otherwise the one before the insertion point
+
+		return found >= 0 ? found : -found - 2;
+	}
+
+	public boolean tryAdvance(LongConsumer inAction)
+	{
+		if(index >= fence)
+		{
+			return false;
+		}
+
+		while(offsets[interval + 1] <= index)
+		{
+			interval++;
+		}
+
+		inAction.accept(firsts[interval] + index - offsets[interval]);
+		index++;
+
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(LongConsumer inAction)
+	{
+		while(index < fence)
+		{
+			while(offsets[interval + 1] <= index)
+			{
+				interval++;
+			}
+
+			long address = firsts[interval] + index - offsets[interval];
+			long stop = Math.min(fence, offsets[interval + 1]);
+
+			for(; index < stop; index++, address++)
+			{
+				inAction.accept(address);
+			}
+		}
+	}
+
+	public Spliterator.OfLong trySplit()
+	{
+		if(fence - index < MIN_SPLIT * 2)
+		{
+			return null;
+		}
+
+		long middle = (index + fence) >>> 1;
+		AddressSpliterator lower = new AddressSpliterator(firsts, offsets, index, middle, interval);
+
+		index = middle;
+		interval = intervalOf(middle);
+
+		return lower;
+	}
+
+	public long estimateSize()
+	{
+		return fence - index;
+	}
+
+	public int characteristics()
+	{
+		return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * Null for the natural order of the addresses.
+	 */
+	@Override
+	public Comparator<? super Long> getComparator()
+	{
+		return null;
+	}
+}
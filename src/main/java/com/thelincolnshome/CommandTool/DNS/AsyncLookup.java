@@ -0,0 +1,265 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.xbill.DNS.Credibility;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNAMERecord;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.NameTooLongException;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.SetResponse;
+
+/**
+ * A {@link Lookup} that does not hold a thread while the query is in flight.
+ * <p>
+ * The answer is taken from the {@link DNSCache} when it can be, otherwise the
+ * query goes out through {@link Resolver#sendAsync} and the listener is called
+ * from whichever thread delivers the response. CNAME and DNAME answers are
+ * followed the same way <code>Lookup</code> follows them, and the results use
+ * the <code>Lookup</code> result codes.
+ */
+public class AsyncLookup implements ResolverListener
+{
+	/** Aliases followed before the lookup gives up, as <code>Lookup</code> does. */
+	private static final int	MAX_ITERATIONS	= 16;
+
+	public interface Listener
+	{
+		/**
+		 * Called once, when the lookup has a result. Keep it short: it may run
+		 * on the thread that reads responses for every other query too.
+		 */
+		void lookupComplete(AsyncLookup inLookup);
+	}
+
+	private final Name				name;
+	private final int				type;
+	private final Resolver			resolver;
+	private final DNSCache			cache;
+
+	private final CountDownLatch	done			= new CountDownLatch(1);
+
+	private Listener				listener		= null;
+	private Name					current;
+	private int						iterations		= 0;
+
+	private int						result			= -1;
+	private int						rcode			= -1;
+	private String					error			= null;
+	private Record[]				answers			= null;
+
+	public AsyncLookup(Name inName, int inType)
+	{
+		this(inName, inType, Lookup.getDefaultResolver(), DNSCache.getDefault());
+	}
+
+	public AsyncLookup(Name inName, int inType, Resolver inResolver, DNSCache inCache)
+	{
+		if(inName == null || inResolver == null || inCache == null)
+		{
+			throw new IllegalArgumentException("Cannot be null.");
+		}
+
+		name = inName;
+		type = inType;
+		resolver = inResolver;
+		cache = inCache;
+		current = inName;
+	}
+
+	/**
+	 * Start the lookup. The listener may be called before this returns, when
+	 * the answer is already cached.
+	 */
+	public void start(Listener inListener)
+	{
+		listener = inListener;
+
+		lookup();
+	}
+
+	/**
+	 * Run the lookup and wait for it, like {@link Lookup#run()}.
+	 */
+	public Record[] run() throws InterruptedException
+	{
+		start(null);
+
+		done.await();
+
+		return answers;
+	}
+
+	public Name getName()
+	{
+		return name;
+	}
+
+	public int getType()
+	{
+		return type;
+	}
+
+	/**
+	 * One of the {@link Lookup} result codes.
+	 */
+	public int getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * The rcode of the last response, or -1 when the answer came from the
+	 * cache or no response arrived.
+	 */
+	public int getRcode()
+	{
+		return rcode;
+	}
+
+	public String getErrorString()
+	{
+		return error;
+	}
+
+	/**
+	 * The answers of a successful lookup, otherwise null.
+	 */
+	public Record[] getAnswers()
+	{
+		return answers;
+	}
+
+	public boolean isDone()
+	{
+		return done.getCount() == 0;
+	}
+
+	private void lookup()
+	{
+		if(!process(cache.find(current, type)))
+		{
+			Message query = Message.newQuery(Record.newRecord(current, type, DClass.IN));
+
+			resolver.sendAsync(query, this);
+		}
+	}
+
+	/**
+	 * @return false when the response does not settle the lookup and the
+	 *         query has to be sent
+	 */
+	private boolean process(SetResponse inResponse)
+	{
+		if(inResponse.isSuccessful())
+		{
+			List<Record> records = DNSCache.getRecords(inResponse);
+
+			answers = records.toArray(new Record[records.size()]);
+			complete(Lookup.SUCCESSFUL, null);
+		}
+		else if(inResponse.isNXDOMAIN())
+		{
+			complete(Lookup.HOST_NOT_FOUND, "host not found");
+		}
+		else if(inResponse.isNXRRSET())
+		{
+			complete(Lookup.TYPE_NOT_FOUND, "type not found");
+		}
+		else if(inResponse.isCNAME())
+		{
+			follow(inResponse.getCNAME().getTarget());
+		}
+		else if(inResponse.isDNAME())
+		{
+			DNAMERecord dname = inResponse.getDNAME();
+
+			try
+			{
+				follow(current.fromDNAME(dname));
+			}
+			catch(NameTooLongException e)
+			{
+				complete(Lookup.UNRECOVERABLE, "Invalid DNAME target");
+			}
+		}
+		else
+		{
+			return false;
+		}
+
+		return true;
+	}
+
+	private void follow(Name inTarget)
+	{
+		if(++iterations > MAX_ITERATIONS)
+		{
+			complete(Lookup.UNRECOVERABLE, "CNAME loop");
+		}
+		else
+		{
+			current = inTarget;
+
+			lookup();
+		}
+	}
+
+	private void complete(int inResult, String inError)
+	{
+		synchronized(this)
+		{
+			if(result != -1)
+			{
+				return;
+			}
+
+			result = inResult;
+			error = inError;
+		}
+
+		done.countDown();
+
+		if(listener != null)
+		{
+			listener.lookupComplete(this);
+		}
+	}
+
+	public void receiveMessage(Object inId, Message inResponse)
+	{
+		rcode = inResponse.getHeader().getRcode();
+
+		if(rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN)
+		{
+			complete(Lookup.TRY_AGAIN, Rcode.string(rcode));
+
+			return;
+		}
+
+		SetResponse response = cache.addMessage(inResponse);
+
+		if(response == null)
+		{
+			response = cache.lookupRecords(current, type, Credibility.NORMAL);
+		}
+
+		if(!process(response))
+		{
+			complete(Lookup.UNRECOVERABLE, response.isDelegation() ? "referral" : "no answer");
+		}
+	}
+
+	public void handleException(Object inId, Exception inException)
+	{
+		complete(Lookup.TRY_AGAIN, inException instanceof InterruptedIOException ? "timed out" : "network error");
+	}
+}
@@ -0,0 +1,889 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.TSIG;
+import org.xbill.DNS.Type;
+
+/**
+ * Spreads queries over several upstream resolvers by how well each is doing,
+ * in place of the round robin of {@link org.xbill.DNS.ExtendedResolver}.
+ * <p>
+ * Every upstream keeps a smoothed latency and error rate. Each query goes to
+ * the better scoring of two healthy upstreams picked at random, which sends
+ * most traffic to the fastest servers without piling all of it onto one.
+ * An upstream that has not answered yet is taken to be as fast as the mean
+ * of the others, or as slow as the timeout when none has answered either.
+ * A timeout, a network error or REFUSED counts against the upstream and the
+ * query is retried on another one; a timeout also counts as an answer that
+ * took the whole timeout. An upstream that fails several times in a row is
+ * ejected and left alone until a background probe gets an answer from it,
+ * with the wait doubling each time the probe fails. It comes back scored no
+ * better than the mean of the others, with errors against it, and has to
+ * earn its share of the traffic again.
+ * <p>
+ * With hedging on, a query the first upstream has not answered within the
+ * 95th percentile of recent latencies is also sent to a second upstream, and
+ * whichever answers first wins. Hedges are paid for out of a budget that
+ * grows by a small fraction of a token per query, so they never add more
+ * than a few percent to the load on the upstreams.
+ */
+public class BalancedResolver implements Resolver
+{
+	private static Logger			log					= LoggerFactory.getLogger(BalancedResolver.class);
+
+	public static final int			DEFAULT_RETRIES		= 3;
+
+	private static final double		SMOOTHING			= 0.2;
+	private static final double		ERROR_PENALTY		= 10.0;
+	private static final int		EJECT_FAILURES		= 5;
+	private static final int		RECOVERED_SUCCESSES	= 100;
+	private static final long		MIN_EJECTION		= 5000;
+	private static final long		MAX_EJECTION		= 300000;
+	private static final long		PROBE_INTERVAL		= 1000;
+
+	private static final double		HEDGE_RATIO			= 0.05;
+	private static final double		HEDGE_BURST			= 10.0;
+	private static final double		HEDGE_PERCENTILE	= 0.95;
+	private static final long		MIN_HEDGE_DELAY		= 5;
+	private static final int		LATENCY_SAMPLES		= 512;
+	private static final int		MIN_SAMPLES			= 64;
+	private static final int		RECALCULATE_EVERY	= 64;
+
+	private final Upstream[]		upstreams;
+	private final ScheduledThreadPoolExecutor	timer;
+
+	private final long[]			samples				= new long[LATENCY_SAMPLES];
+	private final AtomicLong		hedged				= new AtomicLong();
+	private final AtomicLong		hedgeWins			= new AtomicLong();
+
+	private int						retries				= DEFAULT_RETRIES;
+	private volatile long			timeout				= NioResolver.DEFAULT_TIMEOUT;
+	private volatile boolean		hedging				= false;
+	private int						sampleCount			= 0;
+	private volatile long			hedgeDelay			= 0;
+	private double					hedgeTokens			= HEDGE_BURST;
+
+	public BalancedResolver(Resolver[] inResolvers)
+	{
+		if(inResolvers == null || inResolvers.length == 0)
+		{
+			throw new IllegalArgumentException("At least one resolver is needed.");
+		}
+
+		upstreams = new Upstream[inResolvers.length];
+
+		for(int i = 0; i < inResolvers.length; i++)
+		{
+			upstreams[i] = new Upstream(inResolvers[i]);
+		}
+
+		timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+		{
+			public Thread newThread(Runnable inRunnable)
+			{
+				Thread thread = new Thread(inRunnable, "BalancedResolver timer");
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		// hedges are mostly cancelled, don't leave them queued until they are due
+
+		timer.setRemoveOnCancelPolicy(true);
+
+		timer.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				probe();
+			}
+		}, PROBE_INTERVAL, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop probing and hedging. Queries already sent still complete.
+	 */
+	public void close()
+	{
+		timer.shutdownNow();
+	}
+
+	/**
+	 * How many upstreams a query is tried on before giving up.
+	 */
+	public void setRetries(int inRetries)
+	{
+		retries = Math.max(1, inRetries);
+	}
+
+	/**
+	 * Whether a slow query is also sent to a second upstream.
+	 */
+	public void setHedging(boolean inHedging)
+	{
+		hedging = inHedging;
+	}
+
+	public boolean isHedging()
+	{
+		return hedging;
+	}
+
+	/**
+	 * How long a query waits for its first upstream before being hedged, in
+	 * milliseconds, or 0 until enough answers have been seen to tell.
+	 */
+	public long getHedgeDelay()
+	{
+		return hedgeDelay;
+	}
+
+	public void setPort(int inPort)
+	{
+		for(Upstream upstream : upstreams)
+		{
+			upstream.resolver.setPort(inPort);
+		}
+	}
+
+	public void setTCP(boolean inFlag)
+	{
+		for(Upstream upstream : upstreams)
+		{
+			upstream.resolver.setTCP(inFlag);
+		}
+	}
+
+	public void setIgnoreTruncation(boolean inFlag)
+	{
+		for(Upstream upstream : upstreams)
+		{
+			upstream.resolver.setIgnoreTruncation(inFlag);
+		}
+	}
+
+	public void setEDNS(int inLevel)
+	{
+		for(Upstream upstream : upstreams)
+		{
+			upstream.resolver.setEDNS(inLevel);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void setEDNS(int inLevel, int inPayloadSize, int inFlags, List inOptions)
+	{
+		for(Upstream upstream : upstreams)
+		{
+			upstream.resolver.setEDNS(inLevel, inPayloadSize, inFlags, inOptions);
+		}
+	}
+
+	public void setTSIGKey(TSIG inKey)
+	{
+		for(Upstream upstream : upstreams)
+		{
+			upstream.resolver.setTSIGKey(inKey);
+		}
+	}
+
+	public void setTimeout(int inSeconds, int inMilliseconds)
+	{
+		timeout = inSeconds * 1000L + inMilliseconds;
+
+		for(Upstream upstream : upstreams)
+		{
+			upstream.resolver.setTimeout(inSeconds, inMilliseconds);
+		}
+	}
+
+	public void setTimeout(int inSeconds)
+	{
+		setTimeout(inSeconds, 0);
+	}
+
+	public Message send(Message inQuery) throws IOException
+	{
+		// each try may go over UDP then TCP, hedges run alongside the tries
+
+		return ResponseWaiter.send(this, inQuery, retries * 2L * timeout);
+	}
+
+	public Object sendAsync(Message inQuery, ResolverListener inListener)
+	{
+		Resolution resolution = new Resolution(inQuery, inListener);
+		resolution.next();
+
+		return resolution;
+	}
+
+	/**
+	 * One line per upstream with its score and state.
+	 */
+	public List<String> getStatistics()
+	{
+		List<String> lines = new ArrayList<String>();
+		long now = now();
+
+		for(Upstream upstream : upstreams)
+		{
+			lines.add(upstream.getStatistics(now));
+		}
+
+		StringBuilder s = new StringBuilder("hedging=").append(hedging ? "on" : "off");
+		s.append(" delay=").append(hedgeDelay).append("ms");
+		s.append(" hedged=").append(hedged.get());
+		s.append(" won=").append(hedgeWins.get());
+		lines.add(s.toString());
+
+		return lines;
+	}
+
+	/**
+	 * Remember how long an upstream took to answer, and every so often work
+	 * out the hedge delay again from the recent answers.
+	 */
+	private void sample(long inLatency)
+	{
+		long[] sorted = null;
+
+		synchronized(samples)
+		{
+			samples[sampleCount % LATENCY_SAMPLES] = inLatency;
+			sampleCount++;
+
+			if(sampleCount >= MIN_SAMPLES && sampleCount % RECALCULATE_EVERY == 0)
+			{
+				sorted = Arrays.copyOf(samples, Math.min(sampleCount, LATENCY_SAMPLES));
+			}
+		}
+
+		if(sorted != null)
+		{
+			Arrays.sort(sorted);
+
+			long percentile = sorted[(int) (HEDGE_PERCENTILE * (sorted.length - 1))] / 1000000L;
+
+			hedgeDelay = Math.max(MIN_HEDGE_DELAY, percentile);
+		}
+	}
+
+	/**
+	 * Every query earns a fraction of a hedge, and a hedge is only sent when
+	 * a whole one has been earned.
+	 */
+	private synchronized void earnHedge()
+	{
+		hedgeTokens = Math.min(HEDGE_BURST, hedgeTokens + HEDGE_RATIO);
+	}
+
+	private synchronized boolean spendHedge()
+	{
+		if(hedgeTokens < 1)
+		{
+			return false;
+		}
+
+		hedgeTokens -= 1;
+
+		return true;
+	}
+
+	/**
+	 * The better scoring of two healthy upstreams not yet tried for this query.
+	 * When every untried upstream is ejected, the one due to be probed first.
+	 */
+	private Upstream pick(boolean[] inTried)
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Upstream first = null;
+		Upstream second = null;
+		Upstream fallback = null;
+		int seen = 0;
+
+		// reservoir sample two of the healthy candidates in one pass
+
+		for(int i = 0; i < upstreams.length; i++)
+		{
+			if(inTried[i])
+			{
+				continue;
+			}
+
+			Upstream upstream = upstreams[i];
+
+			if(upstream.isEjected())
+			{
+				if(fallback == null || upstream.getEjectedUntil() < fallback.getEjectedUntil())
+				{
+					fallback = upstream;
+				}
+
+				continue;
+			}
+
+			seen++;
+
+			if(seen == 1)
+			{
+				first = upstream;
+			}
+			else if(seen == 2)
+			{
+				second = upstream;
+			}
+			else
+			{
+				int slot = random.nextInt(seen);
+
+				if(slot == 0)
+				{
+					first = upstream;
+				}
+				else if(slot == 1)
+				{
+					second = upstream;
+				}
+			}
+		}
+
+		if(first == null)
+		{
+			return fallback;
+		}
+
+		double prior = prior();
+
+		if(second == null || first.getScore(prior) <= second.getScore(prior))
+		{
+			return first;
+		}
+
+		return second;
+	}
+
+	/**
+	 * The latency taken for an upstream that has not answered yet: the mean
+	 * of those that have, or the timeout when none has.
+	 */
+	private double prior()
+	{
+		double total = 0;
+		int count = 0;
+
+		for(Upstream upstream : upstreams)
+		{
+			double latency = upstream.getLatency();
+
+			if(latency >= 0)
+			{
+				total += latency;
+				count++;
+			}
+		}
+
+		return count == 0 ? timeout : total / count;
+	}
+
+	/**
+	 * The clock ejections are timed by.
+	 */
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Run a task on the timer after a delay in milliseconds.
+	 */
+	ScheduledFuture<?> schedule(Runnable inTask, long inDelay)
+	{
+		return timer.schedule(inTask, inDelay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Ask every ejected upstream that is due whether it answers again.
+	 */
+	void probe()
+	{
+		long now = now();
+
+		for(final Upstream upstream : upstreams)
+		{
+			if(!upstream.startProbe(now))
+			{
+				continue;
+			}
+
+			final long sent = System.nanoTime();
+
+			try
+			{
+				Message query = Message.newQuery(Record.newRecord(Name.root, Type.NS, DClass.IN));
+
+				upstream.resolver.sendAsync(query, new ResolverListener()
+				{
+					public void receiveMessage(Object inId, Message inResponse)
+					{
+						boolean answered = inResponse.getRcode() != Rcode.REFUSED;
+
+						upstream.endProbe(answered, now(), Math.max((System.nanoTime() - sent) / 1000000.0, prior()));
+					}
+
+					public void handleException(Object inId, Exception inException)
+					{
+						upstream.endProbe(false, now(), 0);
+					}
+				});
+			}
+			catch(Exception e)
+			{
+				upstream.endProbe(false, now(), 0);
+			}
+		}
+	}
+
+	private int indexOf(Upstream inUpstream)
+	{
+		for(int i = 0; i < upstreams.length; i++)
+		{
+			if(upstreams[i] == inUpstream)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * One query, tried on one upstream after another until one answers, and
+	 * possibly on two at once when hedged.
+	 */
+	private class Resolution implements Runnable
+	{
+		private final Message			query;
+		private final ResolverListener	listener;
+		private final boolean[]			tried;
+		private final long				started		= System.nanoTime();
+
+		private int						attempts	= 0;
+		private int						outstanding	= 0;
+		private boolean					done		= false;
+		private Upstream				hedge		= null;
+		private ScheduledFuture<?>		hedgeTimer	= null;
+		private Message					refused		= null;
+		private Exception				error		= null;
+
+		Resolution(Message inQuery, ResolverListener inListener)
+		{
+			query = inQuery;
+			listener = inListener;
+			tried = new boolean[upstreams.length];
+
+			DNSMetrics.getDefault().started();
+		}
+
+		void next()
+		{
+			Upstream upstream = null;
+			boolean first = false;
+
+			synchronized(this)
+			{
+				if(done)
+				{
+					return;
+				}
+
+				if(attempts < retries)
+				{
+					upstream = pick(tried);
+				}
+
+				if(upstream == null)
+				{
+					done = true;
+				}
+				else
+				{
+					tried[indexOf(upstream)] = true;
+					first = attempts == 0;
+					attempts++;
+					outstanding++;
+				}
+			}
+
+			if(upstream == null)
+			{
+				fail();
+
+				return;
+			}
+
+			if(first)
+			{
+				earnHedge();
+				scheduleHedge();
+			}
+
+			send(upstream, false);
+		}
+
+		private void scheduleHedge()
+		{
+			long delay = hedgeDelay;
+
+			if(!hedging || delay == 0 || retries < 2 || upstreams.length < 2)
+			{
+				return;
+			}
+
+			try
+			{
+				ScheduledFuture<?> future = schedule(this, delay);
+
+				synchronized(this)
+				{
+					hedgeTimer = future;
+				}
+			}
+			catch(Exception e)
+			{
+				// closed, go without
+			}
+		}
+
+		/**
+		 * The hedge delay has passed without an answer, send to a second
+		 * healthy upstream if the budget allows.
+		 */
+		public void run()
+		{
+			Upstream upstream = null;
+
+			synchronized(this)
+			{
+				if(done || hedge != null || attempts >= retries)
+				{
+					return;
+				}
+
+				upstream = pick(tried);
+
+				if(upstream == null || upstream.isEjected() || !spendHedge())
+				{
+					return;
+				}
+
+				tried[indexOf(upstream)] = true;
+				attempts++;
+				outstanding++;
+				hedge = upstream;
+			}
+
+			hedged.incrementAndGet();
+
+			send(upstream, true);
+		}
+
+		private void send(final Upstream inUpstream, final boolean inHedge)
+		{
+			final long sent = System.nanoTime();
+
+			inUpstream.resolver.sendAsync(query, new ResolverListener()
+			{
+				public void receiveMessage(Object inId, Message inResponse)
+				{
+					long latency = System.nanoTime() - sent;
+
+					DNSMetrics.getDefault().upstream(inUpstream.resolver.toString(), latency);
+
+					if(inResponse.getRcode() == Rcode.REFUSED)
+					{
+						inUpstream.failure(now(), -1);
+
+						synchronized(Resolution.this)
+						{
+							refused = inResponse;
+						}
+
+						retry();
+					}
+					else
+					{
+						inUpstream.success(latency);
+						sample(latency);
+
+						complete(inResponse, inHedge);
+					}
+				}
+
+				public void handleException(Object inId, Exception inException)
+				{
+					inUpstream.failure(now(), inException instanceof InterruptedIOException ? timeout : -1);
+
+					synchronized(Resolution.this)
+					{
+						error = inException;
+					}
+
+					retry();
+				}
+			});
+		}
+
+		/**
+		 * An attempt failed. Move on to another upstream unless a hedge is
+		 * still waiting on one.
+		 */
+		private void retry()
+		{
+			synchronized(this)
+			{
+				if(--outstanding > 0)
+				{
+					return;
+				}
+			}
+
+			next();
+		}
+
+		private void complete(Message inResponse, boolean inHedge)
+		{
+			ScheduledFuture<?> future = null;
+
+			synchronized(this)
+			{
+				if(done)
+				{
+					return;
+				}
+
+				done = true;
+				future = hedgeTimer;
+			}
+
+			if(future != null)
+			{
+				future.cancel(false);
+			}
+
+			if(inHedge)
+			{
+				hedgeWins.incrementAndGet();
+			}
+
+			answered(inResponse);
+
+			listener.receiveMessage(this, inResponse);
+		}
+
+		private void answered(Message inResponse)
+		{
+			int type = query.getQuestion() == null ? 0 : query.getQuestion().getType();
+
+			DNSMetrics.getDefault().answered(type, inResponse.getRcode(), System.nanoTime() - started);
+		}
+
+		private void fail()
+		{
+			ScheduledFuture<?> future = null;
+
+			synchronized(this)
+			{
+				future = hedgeTimer;
+			}
+
+			if(future != null)
+			{
+				future.cancel(false);
+			}
+
+			if(refused != null)
+			{
+				answered(refused);
+
+				listener.receiveMessage(this, refused);
+			}
+			else
+			{
+				DNSMetrics.getDefault().failed();
+
+				listener.handleException(this, error != null ? error : new IOException("No resolver available"));
+			}
+		}
+	}
+
+	/**
+	 * Score and state of one upstream.
+	 */
+	private static class Upstream
+	{
+		private final Resolver	resolver;
+
+		private double			latency		= -1;
+		private double			errorRate	= 0;
+		private int				failures	= 0;
+		private int				successes	= 0;
+		private long			sent		= 0;
+		private long			failed		= 0;
+
+		private boolean			ejected		= false;
+		private boolean			probing		= false;
+		private long			ejectedUntil	= 0;
+		private long			ejection	= MIN_EJECTION;
+
+		Upstream(Resolver inResolver)
+		{
+			resolver = inResolver;
+		}
+
+		synchronized boolean isEjected()
+		{
+			return ejected;
+		}
+
+		synchronized long getEjectedUntil()
+		{
+			return ejectedUntil;
+		}
+
+		/**
+		 * The smoothed latency in milliseconds, or -1 before the first answer.
+		 */
+		synchronized double getLatency()
+		{
+			return latency;
+		}
+
+		/**
+		 * Expected cost of a query: the smoothed latency, or the prior before
+		 * there is one, made worse by the error rate.
+		 */
+		synchronized double getScore(double inPrior)
+		{
+			return (latency < 0 ? inPrior : latency) * (1 + ERROR_PENALTY * errorRate);
+		}
+
+		private void sample(double inMillis)
+		{
+			latency = latency < 0 ? inMillis : latency + SMOOTHING * (inMillis - latency);
+		}
+
+		synchronized void success(long inLatency)
+		{
+			sample(inLatency / 1000000.0);
+			errorRate -= SMOOTHING * errorRate;
+			failures = 0;
+			sent++;
+
+			if(++successes >= RECOVERED_SUCCESSES)
+			{
+				ejection = MIN_EJECTION;
+			}
+		}
+
+		/**
+		 * @param inTimeout the timeout the query waited out, or -1 when it
+		 *            failed some other way
+		 */
+		synchronized void failure(long inNow, long inTimeout)
+		{
+			if(inTimeout >= 0)
+			{
+				sample(inTimeout);
+			}
+
+			errorRate += SMOOTHING * (1 - errorRate);
+			successes = 0;
+			sent++;
+			failed++;
+
+			if(++failures >= EJECT_FAILURES && !ejected)
+			{
+				ejected = true;
+				ejectedUntil = inNow + ejection;
+
+				log.warn("Ejecting " + resolver + " for " + (ejection / 1000) + "s after " + failures + " failures");
+			}
+		}
+
+		synchronized boolean startProbe(long inNow)
+		{
+			if(!ejected || probing || inNow < ejectedUntil)
+			{
+				return false;
+			}
+
+			probing = true;
+
+			return true;
+		}
+
+		/**
+		 * @param inLatency what to score the upstream at when it answered
+		 */
+		synchronized void endProbe(boolean inAnswered, long inNow, double inLatency)
+		{
+			probing = false;
+
+			if(inAnswered)
+			{
+				ejected = false;
+				failures = 0;
+				latency = inLatency;
+				errorRate = SMOOTHING;
+
+				log.info("Restoring " + resolver);
+			}
+			else
+			{
+				ejection = Math.min(MAX_EJECTION, ejection * 2);
+				ejectedUntil = inNow + ejection;
+			}
+		}
+
+		synchronized String getStatistics(long inNow)
+		{
+			StringBuilder s = new StringBuilder(resolver.toString());
+			s.append("\tlatency=").append(Math.round(Math.max(0, latency))).append("ms");
+			s.append(" errors=").append(Math.round(errorRate * 100)).append("%");
+			s.append(" sent=").append(sent);
+			s.append(" failed=").append(failed);
+
+			if(ejected)
+			{
+				s.append(" EJECTED, probe in ").append(Math.max(0, (ejectedUntil - inNow) / 1000)).append("s");
+			}
+			else
+			{
+				s.append(" healthy");
+			}
+
+			return s.toString();
+		}
+	}
+}
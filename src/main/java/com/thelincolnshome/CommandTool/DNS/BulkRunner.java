@@ -0,0 +1,452 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Resolver;
+
+import com.thelincolnshome.CommandTool.Console;
+import com.thelincolnshome.CommandTool.ResultSink;
+
+/**
+ * Resolves every domain of a dnsfile, writing the results to
+ * <code>dnsfile.out</code> and the failures to <code>dnsfile.err</code>.
+ * The dnsfile is streamed rather than read up front, and may be gzipped.
+ * <p>
+ * Up to <code>parallelism</code> domains are resolved at the same time, but
+ * the results are always written in input order so the output files of two
+ * runs can be compared line by line. Within that ceiling an
+ * {@link AdaptiveLimit} finds how many the resolvers will take without
+ * timing out or refusing, and the current window and throughput are logged
+ * as the run goes. Each time, a fuller snapshot with the {@link DNSMetrics},
+ * the nameservers and the caches replaces <code>dnsfile.stats</code>.
+ */
+public class BulkRunner
+{
+	private static Logger		log				= LoggerFactory.getLogger(BulkRunner.class);
+
+	/** How many results may be waiting to be written per slot of the window. */
+	private static final int	BACKLOG			= 4;
+
+	private static final int	INITIAL_WINDOW	= 8;
+
+	private static final long	STATUS_INTERVAL	= 10000;
+
+	private static final int	BUFFER_SIZE		= 64 * 1024;
+
+	static final String			GZIP			= ".gz";
+
+	static final String			STATS			= ".stats";
+
+	private String				dnsfile;
+	private int					parallelism		= 1;
+	private ResultSink			progress;
+	private Resolver			resolver;
+	private DNSCache			cache;
+	private NameServerCache		nameServerCache;
+	private int					errors			= 0;
+	private long				written			= 0;
+	private long				started;
+	private long				reported;
+	private AdaptiveLimit		limit;
+
+	public BulkRunner(String inDnsfile, int inParallelism)
+	{
+		this(inDnsfile, inParallelism, Console.DISPLAY);
+	}
+
+	/**
+	 * @param inProgress gets each domain as its result is written
+	 */
+	public BulkRunner(String inDnsfile, int inParallelism, ResultSink inProgress)
+	{
+		this(inDnsfile, inParallelism, inProgress, Lookup.getDefaultResolver(), DNSCache.getDefault(), NameServerCache.getDefault());
+	}
+
+	/**
+	 * @param inResolver asked for every domain instead of the default
+	 * @param inCache the answers of that resolver
+	 * @param inNameServerCache the nameserver addresses that resolver gave
+	 */
+	public BulkRunner(String inDnsfile, int inParallelism, ResultSink inProgress, Resolver inResolver, DNSCache inCache, NameServerCache inNameServerCache)
+	{
+		if(StringUtils.isEmpty(inDnsfile))
+		{
+			throw new IllegalArgumentException("DNS File cannot be empty.");
+		}
+
+		if(inParallelism < 1)
+		{
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+
+		if(inProgress == null)
+		{
+			throw new IllegalArgumentException("Progress cannot be null.");
+		}
+
+		if(inResolver == null || inCache == null || inNameServerCache == null)
+		{
+			throw new IllegalArgumentException("Resolver and caches cannot be null.");
+		}
+
+		dnsfile = inDnsfile;
+		parallelism = inParallelism;
+		progress = inProgress;
+		resolver = inResolver;
+		cache = inCache;
+		nameServerCache = inNameServerCache;
+	}
+
+	public void run()
+	{
+		File errorFile = outputFile(".err");
+
+		BufferedReader in = null;
+		PrintWriter print = null;
+		PrintWriter printErr = null;
+
+		LinkedList<Task> pending = new LinkedList<Task>();
+
+		limit = new AdaptiveLimit(INITIAL_WINDOW, 1, parallelism);
+		started = System.currentTimeMillis();
+		reported = started;
+		errors = 0;
+
+		try
+		{
+			in = new BufferedReader(new InputStreamReader(open(new File(dnsfile))));
+			print = new PrintWriter(new BufferedWriter(new OutputStreamWriter(create(outputFile(".out")))));
+			printErr = new PrintWriter(new BufferedWriter(new OutputStreamWriter(create(errorFile))));
+
+			print.println(compose("DOMAIN", "A", "HOSTED", "DNS", "PROVIDER"));
+
+			// lines are read only as fast as results are written, so memory stays flat whatever the file size
+
+			for(String line = in.readLine(); line != null; line = in.readLine())
+			{
+				if(StringUtils.isEmpty(line))
+				{
+					continue;
+				}
+
+				Task task = new Task(line);
+				pending.add(task);
+				task.start();
+
+				// oldest result first so the output stays in input order, and a slow
+				// domain at the head holds back at most BACKLOG windows of results
+
+				while(pending.size() >= parallelism * BACKLOG)
+				{
+					pending.getFirst().done.await();
+
+					write(pending, print, printErr);
+				}
+
+				write(pending, print, printErr);
+			}
+
+			while(!pending.isEmpty())
+			{
+				pending.getFirst().done.await();
+
+				write(pending, print, printErr);
+			}
+
+			log.info(getStatus());
+			snapshot();
+		}
+		catch(IOException e)
+		{
+			log.error("File exception", e);
+		}
+		catch(InterruptedException e)
+		{
+			log.error("Run interrupted", e);
+
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+			IOUtils.closeQuietly(print);
+			IOUtils.closeQuietly(printErr);
+		}
+
+		if(errors < 1)
+		{
+			errorFile.delete();
+		}
+	}
+
+	/**
+	 * Progress of the run: domains written, throughput and the state of the
+	 * in-flight window.
+	 */
+	public String getStatus()
+	{
+		long elapsed = Math.max(1, System.currentTimeMillis() - started);
+
+		StringBuilder s = new StringBuilder();
+		s.append(written).append(" domains");
+		s.append(" ").append((written * 1000) / elapsed).append("/s");
+		s.append(" ").append(limit.getStatistics());
+
+		return s.toString();
+	}
+
+	/**
+	 * The .out and .err files sit beside the dnsfile, and are compressed when
+	 * the dnsfile is: <code>domains.gz</code> gives <code>domains.out.gz</code>.
+	 */
+	File outputFile(String inExtension)
+	{
+		if(isCompressed(dnsfile))
+		{
+			return new File(StringUtils.removeEnd(dnsfile, GZIP) + inExtension + GZIP);
+		}
+
+		return new File(dnsfile + inExtension);
+	}
+
+	static boolean isCompressed(String inFilename)
+	{
+		return inFilename.endsWith(GZIP);
+	}
+
+	static InputStream open(File inFile) throws IOException
+	{
+		InputStream in = new FileInputStream(inFile);
+
+		if(isCompressed(inFile.getName()))
+		{
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+
+		return new BufferedInputStream(in, BUFFER_SIZE);
+	}
+
+	static OutputStream create(File inFile) throws IOException
+	{
+		OutputStream out = new FileOutputStream(inFile);
+
+		if(isCompressed(inFile.getName()))
+		{
+			return new GZIPOutputStream(out, BUFFER_SIZE);
+		}
+
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * Write every finished task at the head of the queue.
+	 */
+	private void write(LinkedList<Task> inPending, PrintWriter inPrint, PrintWriter inPrintErr)
+	{
+		while(!inPending.isEmpty() && inPending.getFirst().isDone())
+		{
+			Task task = inPending.removeFirst();
+
+			progress.add(task.line);
+
+			try
+			{
+				inPrint.println(task.compose());
+			}
+			catch(Exception e)
+			{
+				inPrintErr.println(task.line);
+				errors++;
+
+				log.error("Problem with " + task.line, e);
+			}
+
+			written++;
+		}
+
+		if(System.currentTimeMillis() - reported >= STATUS_INTERVAL)
+		{
+			reported = System.currentTimeMillis();
+
+			log.info(getStatus());
+			snapshot();
+		}
+	}
+
+	/**
+	 * Replace the .stats file with the current state of the run. It is
+	 * written aside and renamed so a reader never sees half of it.
+	 */
+	private void snapshot()
+	{
+		File stats = new File(StringUtils.removeEnd(dnsfile, GZIP) + STATS);
+		File partial = new File(stats.getPath() + ".tmp");
+
+		PrintWriter out = null;
+
+		try
+		{
+			out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partial))));
+
+			out.println(new Date());
+			out.println(getStatus());
+
+			for(String line : DNSMetrics.getDefault().getStatistics())
+			{
+				out.println(line);
+			}
+
+			if(resolver instanceof BalancedResolver)
+			{
+				for(String line : ((BalancedResolver) resolver).getStatistics())
+				{
+					out.println(line);
+				}
+			}
+
+			out.println(cache.getStatistics());
+			out.println(nameServerCache.getStatistics());
+		}
+		catch(IOException e)
+		{
+			log.warn("Cannot write " + partial, e);
+
+			return;
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+		}
+
+		try
+		{
+			Files.move(partial.toPath(), stats.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			log.warn("Cannot replace " + stats, e);
+		}
+	}
+
+	static String compose(String ... inString)
+	{
+		return StringUtils.join(inString, "\t");
+	}
+
+	/**
+	 * One line of the dnsfile. It holds a slot of the window from the moment
+	 * its queries are sent until the last of them has answered.
+	 */
+	private class Task implements Domain.Listener
+	{
+		private final String			line;
+		private final CountDownLatch	done	= new CountDownLatch(1);
+
+		private Domain					domain	= null;
+		private Exception				error	= null;
+		private long					sent;
+		private final AtomicBoolean		held	= new AtomicBoolean();
+
+		Task(String inLine)
+		{
+			line = inLine;
+		}
+
+		void start() throws InterruptedException
+		{
+			try
+			{
+				domain = new Domain(line, resolver, cache, nameServerCache);
+
+				limit.acquire();
+				sent = System.nanoTime();
+				held.set(true);
+
+				domain.resolve(this);
+			}
+			catch(Exception e)
+			{
+				if(e instanceof InterruptedException)
+				{
+					throw (InterruptedException) e;
+				}
+
+				// a line that failed to start must not keep its slot, nor count
+				// as a completion that says nothing about the resolvers
+
+				if(held.compareAndSet(true, false))
+				{
+					limit.cancel();
+				}
+
+				error = e;
+				done.countDown();
+			}
+		}
+
+		public void domainResolved(Domain inDomain)
+		{
+			release(inDomain.getTimeouts() > 0, inDomain.getServerFailures() > 0);
+
+			done.countDown();
+		}
+
+		/**
+		 * Give the slot back, once, if this task holds one.
+		 */
+		private void release(boolean inTimedOut, boolean inServerFailure)
+		{
+			if(held.compareAndSet(true, false))
+			{
+				limit.release(System.nanoTime() - sent, inTimedOut, inServerFailure);
+			}
+		}
+
+		boolean isDone()
+		{
+			return done.getCount() == 0;
+		}
+
+		/**
+		 * Only called from the writing thread, since the nameserver check may
+		 * have to wait on a lookup that failed the first time.
+		 */
+		String compose() throws Exception
+		{
+			if(error != null)
+			{
+				throw error;
+			}
+
+			String aRecord = domain.getARecords().isEmpty() ? "UNKNOWN" : domain.getARecords().get(0).toString();
+			String provider = domain.getHostingProvider();
+
+			return BulkRunner.compose(domain.getHostname(), aRecord, Boolean.toString(domain.isStoresOnlineHosted()), Boolean.toString(domain.isStoresOnlineNameServers()), provider == null ? "UNKNOWN" : provider);
+		}
+	}
+}
@@ -0,0 +1,438 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tags every address of a large file, one per line, with the label of the
+ * most specific network holding it, writing <code>address TAB label</code>
+ * lines to <code>file.classified</code> in input order.
+ * <p>
+ * The file is memory mapped and cut on line boundaries into one chunk per
+ * core, or more for files too big to map in one piece. Each chunk is parsed
+ * straight from its bytes with {@link IPv4#parseQuad(byte[], int, int)},
+ * matched against a {@link NetworkTable} and written through a buffered
+ * channel to a part file of its own; the parts are then joined in order.
+ * No object is made per line. Addresses no network holds are tagged
+ * <code>UNKNOWN</code>, lines that are not addresses <code>INVALID</code>.
+ */
+public class Classifier
+{
+	private static Logger		log				= LoggerFactory.getLogger(Classifier.class);
+
+	static final String			OUTPUT			= ".classified";
+
+	static final String			UNKNOWN			= "UNKNOWN";
+	static final String			INVALID			= "INVALID";
+
+	/** Largest chunk mapped at once, well under the 2GB a mapping can hold. */
+	private static final long	MAX_CHUNK		= 256L * 1024 * 1024;
+
+	private static final int	WINDOW_SIZE		= 1024 * 1024;
+
+	private static final int	BUFFER_SIZE		= 1024 * 1024;
+
+	private final File			input;
+	private final File			output;
+	private final NetworkTable	networks;
+	private final int			threads;
+
+	private long[]				counts;
+	private long				addresses		= 0;
+	private long				unknown			= 0;
+	private long				invalid			= 0;
+	private long				elapsed			= 0;
+
+	public Classifier(File inInput, NetworkTable inNetworks, int inThreads)
+	{
+		if(inInput == null)
+		{
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
+
+		if(inNetworks == null)
+		{
+			throw new IllegalArgumentException("Networks cannot be null.");
+		}
+
+		input = inInput;
+		output = new File(inInput.getPath() + OUTPUT);
+		networks = inNetworks;
+		threads = Math.max(1, inThreads);
+	}
+
+	public File getOutput()
+	{
+		return output;
+	}
+
+	public void run() throws IOException
+	{
+		long started = System.nanoTime();
+		long[] bounds = split();
+		int chunks = bounds.length - 1;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks));
+		List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+
+		try
+		{
+			for(int i = 0; i < chunks; i++)
+			{
+				futures.add(executor.submit(new Chunk(bounds[i], bounds[i + 1], new File(output.getPath() + ".part" + i))));
+			}
+
+			counts = new long[networks.getLabels().size()];
+
+			List<File> parts = new ArrayList<File>();
+
+			for(Future<Chunk> future : futures)
+			{
+				Chunk chunk = future.get();
+
+				parts.add(chunk.part);
+				addresses += chunk.addresses;
+				unknown += chunk.unknown;
+				invalid += chunk.invalid;
+
+				for(int i = 0; i < counts.length; i++)
+				{
+					counts[i] += chunk.counts[i];
+				}
+			}
+
+			join(parts);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+
+			throw new IOException("Interrupted classifying " + input);
+		}
+		catch(ExecutionException e)
+		{
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+
+			for(int i = 0; i < chunks; i++)
+			{
+				new File(output.getPath() + ".part" + i).delete();
+			}
+		}
+
+		elapsed = System.nanoTime() - started;
+
+		log.info("Classified {} addresses of {} in {} ms", new Object[] { addresses, input, TimeUnit.NANOSECONDS.toMillis(elapsed) });
+	}
+
+	/**
+	 * Offsets cutting the file into chunks that each start a line, the
+	 * first 0 and the last the file size.
+	 */
+	long[] split() throws IOException
+	{
+		FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+
+		try
+		{
+			long size = channel.size();
+			int chunks = (int) Math.max(Math.min(threads, Math.max(1, size / WINDOW_SIZE)), (size + MAX_CHUNK - 1) / MAX_CHUNK);
+			long[] bounds = new long[chunks + 1];
+			ByteBuffer probe = ByteBuffer.allocate(4096);
+
+			bounds[chunks] = size;
+
+			for(int i = 1; i < chunks; i++)
+			{
+				long position = Math.max(bounds[i - 1], size * i / chunks);
+
+				// move up to just after the next newline
+
+				found:
+				while(position < size)
+				{
+					probe.clear();
+
+					int read = channel.read(probe, position);
+
+					for(int j = 0; j < read; j++)
+					{
+						if(probe.get(j) == '\n')
+						{
+							position += j + 1;
+							break found;
+						}
+					}
+
+					position += read;
+				}
+
+				bounds[i] = position;
+			}
+
+			return bounds;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private void join(List<File> inParts) throws IOException
+	{
+		if(inParts.size() == 1)
+		{
+			Files.move(inParts.get(0).toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			return;
+		}
+
+		FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		try
+		{
+			for(File part : inParts)
+			{
+				FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ);
+
+				try
+				{
+					long size = in.size();
+
+					for(long position = 0; position < size;)
+					{
+						position += in.transferTo(position, size - position, out);
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public List<String> getStatistics()
+	{
+		List<String> result = new ArrayList<String>();
+		long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+		result.add(new StringBuilder("Classified ").append(addresses).append(" addresses in ").append(millis).append(" ms, ").append(addresses * 1000 / millis).append("/s, to ").append(output).toString());
+
+		if(counts != null)
+		{
+			List<String> labels = networks.getLabels();
+
+			for(int i = 0; i < counts.length; i++)
+			{
+				if(counts[i] > 0)
+				{
+					result.add(new StringBuilder(labels.get(i)).append('\t').append(counts[i]).toString());
+				}
+			}
+		}
+
+		result.add(new StringBuilder(UNKNOWN).append('\t').append(unknown).toString());
+		result.add(new StringBuilder(INVALID).append('\t').append(invalid).toString());
+
+		return result;
+	}
+
+	/**
+	 * One line aligned piece of the input, classified into its own part file.
+	 */
+	private class Chunk implements Callable<Chunk>
+	{
+		private final long			first;
+		private final long			end;
+		private final File			part;
+
+		private final byte[][]		labels;
+		private final byte[]		unknownLabel	= UNKNOWN.getBytes(StandardCharsets.UTF_8);
+		private final byte[]		invalidLabel	= INVALID.getBytes(StandardCharsets.UTF_8);
+
+		private final long[]		counts;
+		private long				addresses		= 0;
+		private long				unknown			= 0;
+		private long				invalid			= 0;
+
+		private FileChannel			channel;
+		private final ByteBuffer	buffer			= ByteBuffer.allocate(BUFFER_SIZE);
+
+		Chunk(long inFirst, long inEnd, File inPart)
+		{
+			first = inFirst;
+			end = inEnd;
+			part = inPart;
+
+			List<String> names = networks.getLabels();
+
+			labels = new byte[names.size()][];
+			counts = new long[names.size()];
+
+			for(int i = 0; i < labels.length; i++)
+			{
+				labels[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+			}
+		}
+
+		public Chunk call() throws IOException
+		{
+			FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+			MappedByteBuffer mapped;
+
+			try
+			{
+				mapped = in.map(FileChannel.MapMode.READ_ONLY, first, end - first);
+			}
+			finally
+			{
+				in.close();
+			}
+
+			channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+			try
+			{
+				byte[] window = new byte[WINDOW_SIZE];
+				int filled = 0;
+
+				while(mapped.hasRemaining() || filled > 0)
+				{
+					int read = Math.min(window.length - filled, mapped.remaining());
+
+					mapped.get(window, filled, read);
+					filled += read;
+
+					int start = 0;
+
+					for(int i = 0; i < filled; i++)
+					{
+						if(window[i] == '\n')
+						{
+							line(window, start, i);
+							start = i + 1;
+						}
+					}
+
+					if(!mapped.hasRemaining() && start < filled)
+					{
+						// the last line of the file need not end in a newline
+
+						line(window, start, filled);
+						start = filled;
+					}
+					else if(start == 0 && filled == window.length)
+					{
+						// far too long for an address, keep what fits
+
+						line(window, 0, filled);
+						start = filled;
+					}
+
+					System.arraycopy(window, start, window, 0, filled - start);
+					filled -= start;
+				}
+
+				flush();
+			}
+			finally
+			{
+				channel.close();
+			}
+
+			return this;
+		}
+
+		private void line(byte[] inBytes, int inStart, int inEnd) throws IOException
+		{
+			int stop = inEnd;
+
+			while(stop > inStart && (inBytes[stop - 1] == '\r' || inBytes[stop - 1] == ' ' || inBytes[stop - 1] == '\t'))
+			{
+				stop--;
+			}
+
+			if(stop == inStart)
+			{
+				return;
+			}
+
+			long address = IPv4.parseQuad(inBytes, inStart, stop);
+			byte[] label;
+
+			if(address < 0)
+			{
+				invalid++;
+				label = invalidLabel;
+			}
+			else
+			{
+				int index = networks.labelOf(address);
+
+				addresses++;
+
+				if(index == NetworkTable.NOT_FOUND)
+				{
+					unknown++;
+					label = unknownLabel;
+				}
+				else
+				{
+					counts[index]++;
+					label = labels[index];
+				}
+			}
+
+			int length = stop - inStart;
+
+			if(buffer.remaining() < length + label.length + 2)
+			{
+				flush();
+			}
+
+			if(buffer.remaining() < length + label.length + 2)
+			{
+				length = buffer.remaining() - label.length - 2;
+			}
+
+			buffer.put(inBytes, inStart, length).put((byte) '\t').put(label).put((byte) '\n');
+		}
+
+		private void flush() throws IOException
+		{
+			buffer.flip();
+
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.Cache;
+import org.xbill.DNS.Credibility;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SetResponse;
+
+/**
+ * Answer cache. The default one is shared by every {@link Domain} and console
+ * command that uses the default resolver; a parser with nameservers of its
+ * own keeps a cache of its own beside them.
+ * <p>
+ * The dnsjava {@link Cache} already keys its entries by name and type for one
+ * class, expires them on their TTL, keeps NXDOMAIN and NODATA answers for the
+ * SOA minimum as RFC 2308 asks, and evicts the least recently used name once
+ * it is full. This adds the hit and miss counters, and is installed as the
+ * {@link Lookup} default so queries that miss are cached on the way back.
+ */
+public class DNSCache extends Cache
+{
+	public static final int			DEFAULT_SIZE	= 50000;
+
+	private static DNSCache			instance		= null;
+
+	private final AtomicLong		hits			= new AtomicLong();
+	private final AtomicLong		negativeHits	= new AtomicLong();
+	private final AtomicLong		misses			= new AtomicLong();
+
+	public DNSCache(int inDClass)
+	{
+		super(inDClass);
+
+		setMaxEntries(DEFAULT_SIZE);
+	}
+
+	/**
+	 * The cache for the IN class, which is also the default cache of every
+	 * {@link Lookup}.
+	 */
+	public static synchronized DNSCache getDefault()
+	{
+		if(instance == null)
+		{
+			instance = new DNSCache(DClass.IN);
+
+			Lookup.setDefaultCache(instance, DClass.IN);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Look for a usable answer, counting a hit, a negative hit or a miss.
+	 * Anything other than a successful or negative answer (a CNAME, a
+	 * delegation) counts as a miss since it still needs a {@link Lookup}.
+	 */
+	public SetResponse find(Name inName, int inType)
+	{
+		SetResponse response = lookupRecords(inName, inType, Credibility.NORMAL);
+
+		if(response.isSuccessful())
+		{
+			hits.incrementAndGet();
+		}
+		else if(response.isNXDOMAIN() || response.isNXRRSET())
+		{
+			negativeHits.incrementAndGet();
+		}
+		else
+		{
+			misses.incrementAndGet();
+		}
+
+		return response;
+	}
+
+	/**
+	 * The records of a successful answer, or an empty list.
+	 */
+	public static List<Record> getRecords(SetResponse inResponse)
+	{
+		if(!inResponse.isSuccessful())
+		{
+			return Collections.emptyList();
+		}
+
+		List<Record> records = new ArrayList<Record>();
+
+		for(RRset rrset : inResponse.answers())
+		{
+			for(Iterator<?> iterator = rrset.rrs(); iterator.hasNext();)
+			{
+				records.add((Record) iterator.next());
+			}
+		}
+
+		return records;
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getNegativeHits()
+	{
+		return negativeHits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public void resetCounters()
+	{
+		hits.set(0);
+		negativeHits.set(0);
+		misses.set(0);
+	}
+
+	public String getStatistics()
+	{
+		long found = getHits() + getNegativeHits();
+		long total = found + getMisses();
+
+		StringBuilder s = new StringBuilder();
+		s.append("entries=").append(getSize()).append("/").append(getMaxEntries());
+		s.append(" hits=").append(getHits());
+		s.append(" negative=").append(getNegativeHits());
+		s.append(" misses=").append(getMisses());
+		s.append(" ratio=").append(total == 0 ? 0 : (found * 100) / total).append("%");
+
+		return s.toString();
+	}
+}
@@ -0,0 +1,251 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Type;
+
+/**
+ * Process wide counters for the queries sent to the nameservers: how many,
+ * how many are in flight, how they were answered, and how long they took by
+ * record type and by nameserver.
+ * <p>
+ * Only queries that leave the process are counted, answers from the
+ * {@link DNSCache} are counted there. The rate is the average over the last
+ * {@link #RATE_WINDOW} whole seconds, kept as one count per second, so it
+ * reflects recent traffic rather than the whole life of the process and
+ * reading it, from any number of places, changes nothing.
+ */
+public class DNSMetrics
+{
+	private static final int							RCODES		= 16;
+
+	/** How many of the last whole seconds the query rate is averaged over. */
+	public static final int								RATE_WINDOW	= 10;
+
+	/** Each second packs its number, since the metrics started, above its count. */
+	private static final int							COUNT_BITS	= 32;
+	private static final long							COUNT_MASK	= (1L << COUNT_BITS) - 1;
+
+	private static DNSMetrics							instance	= null;
+
+	private final ConcurrentMap<String, LatencyHistogram>	types		= new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, LatencyHistogram>	upstreams	= new ConcurrentHashMap<String, LatencyHistogram>();
+	private final AtomicLongArray						rcodes		= new AtomicLongArray(RCODES);
+	private final AtomicLong							queries		= new AtomicLong();
+	private final AtomicLong							failures	= new AtomicLong();
+	private final AtomicInteger							inFlight	= new AtomicInteger();
+	private final AtomicLongArray						seconds		= new AtomicLongArray(RATE_WINDOW + 1);
+
+	private final long									origin		= now();
+	private volatile long								since		= origin;
+
+	public static synchronized DNSMetrics getDefault()
+	{
+		if(instance == null)
+		{
+			instance = new DNSMetrics();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * A query is about to be sent.
+	 */
+	public void started()
+	{
+		queries.incrementAndGet();
+		inFlight.incrementAndGet();
+
+		long second = (now() - origin) / 1000;
+		int slot = (int) (second % seconds.length());
+
+		while(true)
+		{
+			long packed = seconds.get(slot);
+			long next = (packed >>> COUNT_BITS) == second ? packed + 1 : (second << COUNT_BITS) | 1;
+
+			if(seconds.compareAndSet(slot, packed, next))
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A query got an answer after the given number of nanoseconds.
+	 */
+	public void answered(int inType, int inRcode, long inLatency)
+	{
+		inFlight.decrementAndGet();
+
+		rcodes.incrementAndGet(inRcode & (RCODES - 1));
+		histogram(types, Type.string(inType)).record(inLatency);
+	}
+
+	/**
+	 * A query got no answer from any nameserver.
+	 */
+	public void failed()
+	{
+		inFlight.decrementAndGet();
+
+		failures.incrementAndGet();
+	}
+
+	/**
+	 * One nameserver answered one attempt after the given number of
+	 * nanoseconds.
+	 */
+	public void upstream(String inUpstream, long inLatency)
+	{
+		histogram(upstreams, inUpstream).record(inLatency);
+	}
+
+	public int getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	public long getQueries()
+	{
+		return queries.get();
+	}
+
+	/**
+	 * Latencies of the queries for one record type so far.
+	 */
+	public LatencyHistogram getLatency(int inType)
+	{
+		return histogram(types, Type.string(inType));
+	}
+
+	public synchronized void reset()
+	{
+		types.clear();
+		upstreams.clear();
+
+		for(int i = 0; i < RCODES; i++)
+		{
+			rcodes.set(i, 0);
+		}
+
+		queries.set(0);
+		failures.set(0);
+
+		for(int i = 0; i < seconds.length(); i++)
+		{
+			seconds.set(i, 0);
+		}
+
+		since = now();
+	}
+
+	/**
+	 * Queries per second over the last {@link #RATE_WINDOW} whole seconds, or
+	 * as many of them as there have been since the metrics started or were
+	 * reset.
+	 */
+	public long getRate()
+	{
+		long now = now();
+		long current = (now - origin) / 1000;
+		long first = Math.max(current - RATE_WINDOW, (since - origin + 999) / 1000);
+		long count = 0;
+
+		if(first >= current)
+		{
+			return 0;
+		}
+
+		for(int i = 0; i < seconds.length(); i++)
+		{
+			long packed = seconds.get(i);
+			long second = packed >>> COUNT_BITS;
+
+			if(second >= first && second < current)
+			{
+				count += packed & COUNT_MASK;
+			}
+		}
+
+		return count / (current - first);
+	}
+
+	/**
+	 * A summary line followed by one line per record type and per nameserver.
+	 */
+	public List<String> getStatistics()
+	{
+		long now = now();
+
+		List<String> lines = new ArrayList<String>();
+
+		StringBuilder s = new StringBuilder();
+		s.append("queries=").append(queries.get());
+		s.append(" qps=").append(getRate());
+		s.append(" inflight=").append(inFlight.get());
+		s.append(" failed=").append(failures.get());
+		s.append(" uptime=").append((now - since) / 1000).append("s");
+		lines.add(s.toString());
+
+		StringBuilder r = new StringBuilder("rcodes");
+
+		for(int i = 0; i < RCODES; i++)
+		{
+			long n = rcodes.get(i);
+
+			if(n > 0)
+			{
+				r.append(" ").append(Rcode.string(i)).append("=").append(n);
+			}
+		}
+
+		lines.add(r.toString());
+
+		for(Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(types).entrySet())
+		{
+			lines.add("type " + entry.getKey() + "\t" + entry.getValue().getSummary());
+		}
+
+		for(Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(upstreams).entrySet())
+		{
+			lines.add("upstream " + entry.getKey() + "\t" + entry.getValue().getSummary());
+		}
+
+		return lines;
+	}
+
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> inMap, String inKey)
+	{
+		LatencyHistogram histogram = inMap.get(inKey);
+
+		if(histogram == null)
+		{
+			LatencyHistogram created = new LatencyHistogram();
+
+			histogram = inMap.putIfAbsent(inKey, created);
+
+			if(histogram == null)
+			{
+				histogram = created;
+			}
+		}
+
+		return histogram;
+	}
+}
@@ -1,10 +1,9 @@
 package com.thelincolnshome.CommandTool.DNS;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.UnknownHostException;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
@@ -15,21 +14,23 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.text.StrMatcher;
 import org.apache.commons.lang3.text.StrTokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.DClass;
 import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Resolver;
 
-import com.thelincolnshome.CommandTool.LineParser;
+import com.thelincolnshome.CommandTool.ListSink;
 import com.thelincolnshome.CommandTool.LineParsers;
 import com.thelincolnshome.CommandTool.Register;
+import com.thelincolnshome.CommandTool.ResultSink;
+import com.thelincolnshome.CommandTool.StreamingLineParser;
 
-public final class DNSTool implements LineParser
+public final class DNSTool implements StreamingLineParser, Closeable
 {
 	private static final String	EXIT			= "exit";
 
@@ -39,45 +40,190 @@ public final class DNSTool implements LineParser
 
 	private static final String	TEST_HOSTNAME	= "test";
 
+	private static final String	THREADS			= "threads";
+
+	private static final String	CACHE			= "cache";
+	private static final String	CACHE_CLEAR		= "clear";
+	private static final String	CACHE_SIZE		= "cachesize";
+
+	private static final String	RESOLVERS		= "resolvers";
+	private static final String	HEDGE			= "hedge";
+	private static final String	HEDGE_ON		= "on";
+	private static final String	HEDGE_OFF		= "off";
+
+	private static final String	STATS			= "stats";
+	private static final String	STATS_CLEAR		= "clear";
+
+	private static final String	NETWORKS		= "networks";
+
+	private static final String	CLASSIFY		= "classify";
+
+	private static final String	PTR				= "ptr";
+	private static final String	RATE			= "rate";
+
 	private static Logger		log				= LoggerFactory.getLogger(DNSTool.class);
 
 	private static final String	NAMESERVER		= "nameserver";
 	private static final String	DNS_FILE		= "dnsfile";
 	private static final String	NAME			= "DNS";
 
+	/** Drops the rows of a run that nobody watches as they come. */
+	private static final ResultSink	NO_PROGRESS	= new ResultSink()
+	{
+		public void add(Object inRow)
+		{
+		}
+	};
+
 	Options						options			= new Options();
 
-	private String				dnsfile;
-	private static String		nameserver		= "8.8.8.8";
+	/** The nameservers of the default resolver. */
+	static final String			DEFAULT_NAMESERVERS	= "8.8.8.8 4.2.2.6 4.2.2.1 8.8.4.4 4.2.2.3 4.2.2.4 4.2.2.5";
 
-	public static String getNameserver()
+	private String				dnsfile;
+	private int					threads			= 1;
+	private int					rate			= 0;
+	private String				nameserver		= DEFAULT_NAMESERVERS;
+	private BalancedResolver	resolver		= null;
+	private DNSCache			cache			= null;
+	private NameServerCache		nameServerCache	= null;
+
+	/**
+	 * The nameservers this parser looks names up with.
+	 */
+	public String getNameserver()
 	{
 		return nameserver;
 	}
 
-	public static void setNameserver(String inNameserver)
+	/**
+	 * Look names up with the given space separated nameservers from now on,
+	 * in this parser only, with answer caches of its own so it never sees
+	 * what other nameservers answered. Other sessions of a server keep
+	 * theirs.
+	 */
+	public void setNameserver(String inNameserver) throws IOException
 	{
+		if(StringUtils.isBlank(inNameserver))
+		{
+			throw new IllegalArgumentException("Nameserver cannot be empty.");
+		}
+
+		BalancedResolver created = createResolver(StringUtils.split(inNameserver));
+		Resolver previous = getResolver();
+
+		if(previous instanceof BalancedResolver)
+		{
+			created.setHedging(((BalancedResolver) previous).isHedging());
+		}
+
+		// only ever stop our own, the default may be in use by other sessions
+
+		if(resolver != null)
+		{
+			resolver.close();
+		}
+
+		DNSCache answers = new DNSCache(DClass.IN);
+		answers.setMaxEntries(getCache().getMaxEntries());
+
+		resolver = created;
+		cache = answers;
+		nameServerCache = new NameServerCache(NameServerCache.DEFAULT_SIZE, created, answers);
 		nameserver = inNameserver;
 	}
 
+	/**
+	 * The resolver set with {@link #setNameserver(String)}, or the default
+	 * one until there is such.
+	 */
+	Resolver getResolver()
+	{
+		return resolver != null ? resolver : Lookup.getDefaultResolver();
+	}
+
+	/**
+	 * The answers of {@link #getResolver()}.
+	 */
+	DNSCache getCache()
+	{
+		return cache != null ? cache : DNSCache.getDefault();
+	}
+
+	/**
+	 * The nameserver addresses {@link #getResolver()} gave.
+	 */
+	NameServerCache getNameServerCache()
+	{
+		return nameServerCache != null ? nameServerCache : NameServerCache.getDefault();
+	}
+
+	/**
+	 * Stop the resolver of this parser, if it has one of its own.
+	 */
+	public void close()
+	{
+		if(resolver != null)
+		{
+			resolver.close();
+		}
+	}
+
 	@Register
 	public static final void registration()
 	{
 		LineParsers.register(new DNSTool());
 
+		DNSCache.getDefault();
+
 		try
 		{
-			ExtendedResolver resolver = new ExtendedResolver(new String[] { "8.8.8.8", "4.2.2.6", "4.2.2.1", "8.8.4.4", "4.2.2.3", "4.2.2.4", "4.2.2.5" });
-			resolver.setLoadBalance(true);
-
-			Lookup.setDefaultResolver(resolver);
+			setResolver(createResolver(StringUtils.split(DEFAULT_NAMESERVERS)));
 		}
-		catch(UnknownHostException e)
+		catch(IOException e)
 		{
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Balance over the given servers by their health, each of them queried
+	 * through the shared non-blocking {@link NioDNSClient}.
+	 */
+	static BalancedResolver createResolver(String[] inServers) throws IOException
+	{
+		Resolver[] resolvers = new Resolver[inServers.length];
+
+		for(int i = 0; i < inServers.length; i++)
+		{
+			resolvers[i] = new NioResolver(inServers[i]);
+		}
+
+		return new BalancedResolver(resolvers);
+	}
+
+	/**
+	 * Make the given resolver the default, for every parser without
+	 * nameservers of its own, stopping the one it replaces and keeping its
+	 * hedging setting.
+	 */
+	static void setResolver(Resolver inResolver)
+	{
+		Resolver previous = Lookup.getDefaultResolver();
+
+		if(previous instanceof BalancedResolver && previous != inResolver)
+		{
+			if(inResolver instanceof BalancedResolver)
+			{
+				((BalancedResolver) inResolver).setHedging(((BalancedResolver) previous).isHedging());
+			}
+
+			((BalancedResolver) previous).close();
+		}
+
+		Lookup.setDefaultResolver(inResolver);
+	}
+
 	@SuppressWarnings("static-access")
 	public DNSTool()
 	{
@@ -87,12 +233,32 @@ public final class DNSTool implements LineParser
 		Option dnsFile = OptionBuilder.withArgName("DNS File").hasArg().withDescription("use given file for dns entries").create(DNS_FILE);
 		Option exit = new Option(EXIT, EXIT);
 		Option run = new Option(RUN_FILE, "run DNS File");
+		Option cache = OptionBuilder.withArgName(CACHE_CLEAR).hasOptionalArg().withDescription("show the answer cache statistics, or clear the cache").create(CACHE);
+		Option cacheSize = OptionBuilder.withArgName("entries").hasArg().withDescription("maximum number of names kept in the answer cache").create(CACHE_SIZE);
+		Option resolvers = new Option(RESOLVERS, "show the health of each nameserver");
+		Option hedge = OptionBuilder.withArgName(HEDGE_ON + "|" + HEDGE_OFF).hasArg().withDescription("also ask a second nameserver when the first is slow to answer").create(HEDGE);
+		Option stats = OptionBuilder.withArgName(STATS_CLEAR).hasOptionalArg().withDescription("show query rate, latency and answer counts, or clear them").create(STATS);
+		Option networks = OptionBuilder.withArgName("file").hasOptionalArg().withDescription("match addresses against the network lists in the file and reload it when it changes, or show the lists in use").create(NETWORKS);
+		Option classify = OptionBuilder.withArgName("file").hasArg().withDescription("tag every address in the file with its network, writing file" + Classifier.OUTPUT).create(CLASSIFY);
+		Option ptr = OptionBuilder.withArgName("cidr").hasArg().withDescription("look up the PTR record of every address in the block, continuing an earlier sweep").create(PTR);
+		Option rate = OptionBuilder.withArgName("queries").hasArg().withDescription("most PTR queries a second during a sweep, 0 for no limit").create(RATE);
+		Option threads = OptionBuilder.withArgName("count").hasArg().withDescription("most domains to resolve in parallel during a run, the run adapts below it").create(THREADS);
 
 		options.addOption(help);
 		options.addOption(dnsFile);
 		options.addOption(nameserver);
 		options.addOption(test);
 		options.addOption(run);
+		options.addOption(threads);
+		options.addOption(cache);
+		options.addOption(cacheSize);
+		options.addOption(resolvers);
+		options.addOption(hedge);
+		options.addOption(stats);
+		options.addOption(networks);
+		options.addOption(classify);
+		options.addOption(ptr);
+		options.addOption(rate);
 		options.addOption(exit);
 	}
 
@@ -126,6 +292,16 @@ public final class DNSTool implements LineParser
 			throw new IllegalArgumentException("Result param must be empty.");
 		}
 
+		return parseInput(inLine, new ListSink(theResult));
+	}
+
+	public boolean parseInput(String inLine, ResultSink theResult) throws ParseException
+	{
+		if(theResult == null)
+		{
+			throw new IllegalArgumentException("Result param cannot be null.");
+		}
+
 		if(inLine == null)
 		{
 			throw new IllegalArgumentException("Line must not be null.");
@@ -153,6 +329,20 @@ public final class DNSTool implements LineParser
 			}
 		}
 
+		if(line.hasOption(THREADS))
+		{
+			int count = NumberUtils.toInt(line.getOptionValue(THREADS), 0);
+
+			if(count < 1)
+			{
+				theResult.add("Threads must be a positive number");
+			}
+			else
+			{
+				threads = count;
+			}
+		}
+
 		if(line.hasOption(RUN_FILE))
 		{
 			if(StringUtils.isEmpty(dnsfile))
@@ -161,7 +351,7 @@ public final class DNSTool implements LineParser
 			}
 			else
 			{
-				run();
+				run(theResult);
 			}
 		}
 
@@ -169,24 +359,125 @@ public final class DNSTool implements LineParser
 		{
 			try
 			{
-				ExtendedResolver resolver = new ExtendedResolver(StringUtils.split(line.getOptionValue(NAMESERVER)));
-				resolver.setLoadBalance(true);
-
-				Lookup.setDefaultResolver(resolver);
+				setNameserver(line.getOptionValue(NAMESERVER));
 			}
-			catch(UnknownHostException e)
+			catch(IOException e)
 			{
 				theResult.add(e.getMessage());
 			}
+		}
+
+		if(line.hasOption(CACHE_SIZE))
+		{
+			int size = NumberUtils.toInt(line.getOptionValue(CACHE_SIZE), 0);
 
-			nameserver = line.getOptionValue(NAMESERVER);
+			if(size < 1)
+			{
+				theResult.add("Cache size must be a positive number");
+			}
+			else
+			{
+				getCache().setMaxEntries(size);
+			}
+		}
+
+		if(line.hasOption(NETWORKS))
+		{
+			String file = line.getOptionValue(NETWORKS);
+
+			if(file != null)
+			{
+				try
+				{
+					NetworkFile.watch(new File(file));
+				}
+				catch(IOException e)
+				{
+					theResult.add(e.getMessage());
+				}
+			}
+
+			NetworkFile watched = NetworkFile.getWatched();
+
+			if(watched != null)
+			{
+				theResult.add(watched.getStatistics());
+			}
+			else
+			{
+				theResult.add(new StringBuilder("Networks: built-in, ").append(Domain.getNetworks().size()).append(" ranges, labels ").append(Domain.getNetworks().getLabels()));
+			}
+		}
+
+		if(line.hasOption(CLASSIFY))
+		{
+			File file = new File(line.getOptionValue(CLASSIFY));
+
+			if(!file.canRead())
+			{
+				theResult.add("Unable to read file!");
+			}
+			else
+			{
+				Classifier classifier = new Classifier(file, Domain.getNetworks(), Runtime.getRuntime().availableProcessors());
+
+				try
+				{
+					classifier.run();
+					addAll(theResult, classifier.getStatistics());
+				}
+				catch(IOException e)
+				{
+					theResult.add(e.getMessage());
+				}
+			}
+		}
+
+		if(line.hasOption(RATE))
+		{
+			int queries = NumberUtils.toInt(line.getOptionValue(RATE), -1);
+
+			if(queries < 0)
+			{
+				theResult.add("Rate must be 0 or a positive number");
+			}
+			else
+			{
+				rate = queries;
+			}
+		}
+
+		if(line.hasOption(PTR))
+		{
+			try
+			{
+				IPv4 block = IPv4.parse(line.getOptionValue(PTR));
+				PtrSweep sweep = new PtrSweep(block, PtrSweep.defaultOutput(block), threads, rate, getResolver(), getCache());
+
+				sweep.run();
+
+				theResult.add(sweep.getStatus());
+				theResult.add(new StringBuilder("Written to ").append(sweep.getOutput()));
+			}
+			catch(IllegalArgumentException e)
+			{
+				theResult.add(line.getOptionValue(PTR) + " is not a network");
+			}
+			catch(IOException e)
+			{
+				theResult.add(e.getMessage());
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
 		}
 
 		if(line.hasOption(TEST_HOSTNAME))
 		{
 			try
 			{
-				Domain domain = new Domain(line.getOptionValue(TEST_HOSTNAME));
+				Domain domain = new Domain(line.getOptionValue(TEST_HOSTNAME), getResolver(), getCache(), getNameServerCache()).resolve();
 
 				theResult.add(domain.getHostname());
 
@@ -202,6 +493,7 @@ public final class DNSTool implements LineParser
 
 				theResult.add(new StringBuilder("Is StoresOnline: ").append(domain.isStoresOnlineHosted()));
 				theResult.add(new StringBuilder("Is StoresOnline NS: ").append(domain.isStoresOnlineNameServers()));
+				theResult.add(new StringBuilder("Provider: ").append(domain.getHostingProvider() == null ? "UNKNOWN" : domain.getHostingProvider()));
 			}
 			catch(Exception e)
 			{
@@ -209,78 +501,98 @@ public final class DNSTool implements LineParser
 			}
 		}
 
-		if(EXIT.equalsIgnoreCase(inLine) || line.hasOption(EXIT))
+		if(line.hasOption(CACHE))
 		{
-			return true;
-		}
-
-		return false;
-	}
-
-	private void run()
-	{
-		File errorFile = new File(dnsfile + ".err");
+			if(CACHE_CLEAR.equalsIgnoreCase(line.getOptionValue(CACHE)))
+			{
+				getCache().clearCache();
+				getCache().resetCounters();
+				getNameServerCache().clear();
+			}
 
-		FileWriter out = null;
-		FileWriter err = null;
-		PrintWriter print = null;
-		PrintWriter printErr = null;
+			theResult.add(getCache().getStatistics());
+			theResult.add(getNameServerCache().getStatistics());
+		}
 
-		try
+		if(line.hasOption(HEDGE))
 		{
-			out = new FileWriter(new File(dnsfile + ".out"));
-			err = new FileWriter(errorFile);
-			print = new PrintWriter(out);
-			printErr = new PrintWriter(err);
+			String value = line.getOptionValue(HEDGE);
 
-			print.println(compose("DOMAIN", "A", "HOSTED", "DNS"));
-
-			for(Object line : FileUtils.readLines(new File(dnsfile)))
+			if(HEDGE_ON.equalsIgnoreCase(value) || HEDGE_OFF.equalsIgnoreCase(value))
 			{
-				if(StringUtils.isEmpty(line.toString()))
-				{
-					continue;
-				}
-
-				System.out.println(line.toString());
-
 				try
 				{
-					Domain domain = new Domain(line.toString());
+					// hedge with nameservers of our own, not the shared default ones
 
-					String aRecord = domain.getARecords().isEmpty() ? "UNKNOWN" : domain.getARecords().get(0).toString();
+					if(resolver == null)
+					{
+						setNameserver(nameserver);
+					}
 
-					print.println(compose(domain.getHostname(), aRecord, Boolean.toString(domain.isStoresOnlineHosted()), Boolean.toString(domain.isStoresOnlineNameServers())));
+					resolver.setHedging(HEDGE_ON.equalsIgnoreCase(value));
 				}
-				catch(Exception e)
+				catch(IOException e)
 				{
-					printErr.println(line.toString());
-
-					log.error("Problem with " + line.toString(), e);
+					theResult.add(e.getMessage());
 				}
 			}
+			else
+			{
+				theResult.add("Hedge must be " + HEDGE_ON + " or " + HEDGE_OFF);
+			}
 		}
-		catch(IOException e)
+
+		if(line.hasOption(RESOLVERS))
 		{
-			log.error("File exception", e);
+			Resolver current = getResolver();
+
+			if(current instanceof BalancedResolver)
+			{
+				addAll(theResult, ((BalancedResolver) current).getStatistics());
+			}
+			else
+			{
+				theResult.add(current.toString());
+			}
 		}
-		finally
+
+		if(line.hasOption(STATS))
 		{
-			IOUtils.closeQuietly(print);
-			IOUtils.closeQuietly(out);
+			if(STATS_CLEAR.equalsIgnoreCase(line.getOptionValue(STATS)))
+			{
+				DNSMetrics.getDefault().reset();
+			}
 
-			IOUtils.closeQuietly(printErr);
-			IOUtils.closeQuietly(err);
+			addAll(theResult, DNSMetrics.getDefault().getStatistics());
 		}
 
-		if(errorFile.length() < 1)
+		if(EXIT.equalsIgnoreCase(inLine) || line.hasOption(EXIT))
 		{
-			errorFile.delete();
+			return true;
 		}
+
+		return false;
 	}
 
-	private String compose(String ... inString)
+	/**
+	 * Run the dnsfile, showing each domain as it is written when the result
+	 * is streamed. A list would hold a row for every line of the file, so it
+	 * only gets the summary at the end, like every other sink.
+	 */
+	private void run(ResultSink inResult)
 	{
-		return StringUtils.join(inString, "\t");
+		BulkRunner runner = new BulkRunner(dnsfile, threads, inResult instanceof ListSink ? NO_PROGRESS : inResult, getResolver(), getCache(), getNameServerCache());
+
+		runner.run();
+
+		inResult.add(runner.getStatus());
+	}
+
+	private static void addAll(ResultSink inSink, Collection<?> inRows)
+	{
+		for(Object row : inRows)
+		{
+			inSink.add(row);
+		}
 	}
 }
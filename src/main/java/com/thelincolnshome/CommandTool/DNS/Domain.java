@@ -1,17 +1,21 @@
 package com.thelincolnshome.CommandTool.DNS;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.validator.routines.DomainValidator;
 import org.xbill.DNS.ARecord;
-import org.xbill.DNS.Address;
 import org.xbill.DNS.Lookup;
 import org.xbill.DNS.NSRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 
@@ -20,30 +24,102 @@ import com.thelincolnshome.CommandTool.Register;
 public class Domain
 {
 	private String							hostname		= null;
-	private ArrayList<IPv4>					aRecords		= new ArrayList<IPv4>();
-	private ArrayList<String>				nameServers		= new ArrayList<String>();
+	private final Resolver					resolver;
+	private final DNSCache					cache;
+	private final NameServerCache			nameServerCache;
+	private IPv4List						aRecords		= null;
+	private ArrayList<String>				nameServers		= null;
+	private final AtomicInteger				outstanding		= new AtomicInteger();
+	private final AtomicInteger				timeouts		= new AtomicInteger();
+	private final AtomicInteger				serverFailures	= new AtomicInteger();
 
-	private static final ArrayList<IPv4>	STORESONLINE	= new ArrayList<IPv4>();
+	/** Label of the StoresOnline networks in the network table. */
+	public static final String				STORESONLINE	= "StoresOnline";
+
+	/** System property naming a {@link NetworkFile} to load at startup. */
+	public static final String				NETWORKS		= "networks";
+
+	private static volatile NetworkTable	networks		= NetworkTable.EMPTY;
+
+	public interface Listener
+	{
+		void domainResolved(Domain inDomain);
+	}
 
 	@Register
 	public static void initialize()
 	{
-		try
+		setNetworks(addStoresOnline(new NetworkTable.Builder()).build());
+
+		String file = System.getProperty(NETWORKS);
+
+		if(file != null)
 		{
-			STORESONLINE.add(new IPv4("208.187.218.0/24"));
-			STORESONLINE.add(new IPv4("209.210.220.0/24"));
-			STORESONLINE.add(new IPv4("184.178.213.0/24"));
-			STORESONLINE.add(new IPv4("70.102.216.0/24"));
-			STORESONLINE.add(new IPv4("70.102.218.0/24"));
+			try
+			{
+				NetworkFile.watch(new File(file));
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
 		}
-		catch(Exception e)
+	}
+
+	/**
+	 * Add the StoresOnline networks, so a table of other providers can be
+	 * built around them.
+	 */
+	public static NetworkTable.Builder addStoresOnline(NetworkTable.Builder inBuilder)
+	{
+		inBuilder.add("208.187.218.0/24", STORESONLINE);
+		inBuilder.add("209.210.220.0/24", STORESONLINE);
+		inBuilder.add("184.178.213.0/24", STORESONLINE);
+		inBuilder.add("70.102.216.0/24", STORESONLINE);
+		inBuilder.add("70.102.218.0/24", STORESONLINE);
+
+		return inBuilder;
+	}
+
+	/**
+	 * The labelled networks addresses are matched against. Lookups already
+	 * running finish on the table they started with.
+	 */
+	public static void setNetworks(NetworkTable inNetworks)
+	{
+		if(inNetworks == null)
 		{
-			e.printStackTrace();
+			throw new IllegalArgumentException("Networks cannot be null.");
 		}
+
+		networks = inNetworks;
+	}
+
+	public static NetworkTable getNetworks()
+	{
+		return networks;
 	}
 
 	public Domain(String inHostname)
 	{
+		this(inHostname, Lookup.getDefaultResolver(), DNSCache.getDefault(), NameServerCache.getDefault());
+	}
+
+	/**
+	 * A domain looked up through the given resolver and caches rather than
+	 * the default ones.
+	 */
+	public Domain(String inHostname, Resolver inResolver, DNSCache inCache, NameServerCache inNameServerCache)
+	{
+		if(inResolver == null || inCache == null || inNameServerCache == null)
+		{
+			throw new IllegalArgumentException("Resolver and caches cannot be null.");
+		}
+
+		resolver = inResolver;
+		cache = inCache;
+		nameServerCache = inNameServerCache;
+
 		if(DomainValidator.getInstance().isValid(inHostname))
 		{
 			hostname = inHostname;
@@ -54,16 +130,125 @@ public class Domain
 		}
 	}
 
-	public List<String> getNameServers() throws TextParseException
+	/**
+	 * Send the A and NS queries for this domain together, followed by the
+	 * address query of each nameserver as soon as the NS answer is in, so
+	 * the whole domain takes about as long as its slowest round trip. The
+	 * listener is called once everything has answered, after which the
+	 * getters and the StoresOnline checks no longer wait on the network.
+	 */
+	public void resolve(final Listener inListener) throws TextParseException
 	{
-		if(nameServers.isEmpty())
+		Name name = Name.fromString(hostname, Name.root);
+
+		outstanding.set(2);
+
+		lookup(name, Type.A).start(new AsyncLookup.Listener()
 		{
-			for(Record record : lookupRecords(hostname, Type.NS))
+			public void lookupComplete(AsyncLookup inLookup)
 			{
-				NSRecord ns = (NSRecord) record;
-				nameServers.add(ns.getTarget().toString());
+				count(inLookup);
+
+				aRecords = toAddresses(inLookup.getAnswers());
+
+				finish(inListener);
+			}
+		});
+
+		lookup(name, Type.NS).start(new AsyncLookup.Listener()
+		{
+			public void lookupComplete(AsyncLookup inLookup)
+			{
+				count(inLookup);
+
+				ArrayList<String> found = toNameServers(inLookup.getAnswers());
+
+				nameServers = found;
+				outstanding.addAndGet(found.size());
+
+				for(String ns : found)
+				{
+					nameServerCache.getAddress(ns, new NameServerCache.Listener()
+					{
+						public void addressResolved(String inNameServer, IPv4 inAddress, UnknownHostException inError)
+						{
+							finish(inListener);
+						}
+					});
+				}
+
+				finish(inListener);
+			}
+		});
+	}
+
+	/**
+	 * {@link #resolve(Listener)} and wait for it.
+	 */
+	public Domain resolve() throws TextParseException, InterruptedException
+	{
+		final CountDownLatch done = new CountDownLatch(1);
+
+		resolve(new Listener()
+		{
+			public void domainResolved(Domain inDomain)
+			{
+				done.countDown();
+			}
+		});
+
+		done.await();
+
+		return this;
+	}
+
+	private void count(AsyncLookup inLookup)
+	{
+		if(inLookup.getResult() == Lookup.TRY_AGAIN)
+		{
+			if(inLookup.getRcode() == Rcode.SERVFAIL || inLookup.getRcode() == Rcode.REFUSED)
+			{
+				serverFailures.incrementAndGet();
+			}
+			else
+			{
+				timeouts.incrementAndGet();
 			}
 		}
+	}
+
+	/**
+	 * How many of the queries sent by {@link #resolve(Listener)} got no
+	 * answer in time.
+	 */
+	public int getTimeouts()
+	{
+		return timeouts.get();
+	}
+
+	/**
+	 * How many of the queries sent by {@link #resolve(Listener)} were
+	 * answered with SERVFAIL or REFUSED.
+	 */
+	public int getServerFailures()
+	{
+		return serverFailures.get();
+	}
+
+	private void finish(Listener inListener)
+	{
+		if(outstanding.decrementAndGet() == 0 && inListener != null)
+		{
+			inListener.domainResolved(this);
+		}
+	}
+
+	public List<String> getNameServers() throws TextParseException, InterruptedException
+	{
+		if(nameServers == null)
+		{
+			nameServers = toNameServers(lookupRecords(hostname, Type.NS));
+		}
 
 		return nameServers;
 	}
@@ -73,53 +258,91 @@ public class Domain
 		return hostname;
 	}
 
-	private List<Record> lookupRecords(String inHostname, int inType) throws TextParseException
+	private AsyncLookup lookup(Name inName, int inType)
 	{
-		Record[] records = new Lookup(inHostname, inType).run();
+		return new AsyncLookup(inName, inType, resolver, cache);
+	}
 
-		if(records == null)
+	private Record[] lookupRecords(String inHostname, int inType) throws TextParseException, InterruptedException
+	{
+		return lookup(Name.fromString(inHostname, Name.root), inType).run();
+	}
+
+	public List<IPv4> getARecords() throws TextParseException, InterruptedException
+	{
+		if(aRecords == null)
 		{
-			return Collections.emptyList();
+			aRecords = toAddresses(lookupRecords(hostname, Type.A));
 		}
 
-		return Arrays.asList(records);
+		return aRecords;
 	}
 
-	public List<IPv4> getARecords() throws TextParseException
+	private static IPv4List toAddresses(Record[] inRecords)
 	{
-		if(aRecords.isEmpty())
+		IPv4List addresses = new IPv4List(inRecords == null ? 1 : inRecords.length);
+
+		if(inRecords != null)
 		{
-			for(Record record : lookupRecords(hostname, Type.A))
+			for(Record record : inRecords)
 			{
 				ARecord a = (ARecord) record;
 
-				aRecords.add(new IPv4(a.getAddress().getHostAddress()));
+				addresses.addInt(IPv4.toInt(a.getAddress()));
 			}
 		}
 
-		return aRecords;
+		return addresses;
 	}
 
-	public boolean isStoresOnlineHosted()
+	private static ArrayList<String> toNameServers(Record[] inRecords)
 	{
-		for(IPv4 ipaddress : aRecords)
+		ArrayList<String> hosts = new ArrayList<String>();
+
+		if(inRecords != null)
 		{
-			if(inNetwork(ipaddress))
+			for(Record record : inRecords)
 			{
-				return true;
+				NSRecord ns = (NSRecord) record;
+				hosts.add(ns.getTarget().toString());
 			}
 		}
 
-		return false;
+		return hosts;
 	}
 
-	public boolean isStoresOnlineNameServers() throws UnknownHostException, Exception
+	/**
+	 * The label of the network hosting the first A record that is in one,
+	 * or null when none of them is.
+	 */
+	public String getHostingProvider() throws TextParseException, InterruptedException
 	{
-		for(String ns : getNameServers())
+		NetworkTable table = networks;
+
+		getARecords();
+
+		for(int i = 0; i < aRecords.size(); i++)
 		{
-			IPv4 address = new IPv4(Address.getByName(ns).getHostAddress());
+			String provider = table.lookup(aRecords.getInt(i) & IPv4.ADDRESS_MASK);
 
-			if(inNetwork(address))
+			if(provider != null)
+			{
+				return provider;
+			}
+		}
+
+		return null;
+	}
+
+	public boolean isStoresOnlineHosted() throws TextParseException, InterruptedException
+	{
+		NetworkTable table = networks;
+
+		getARecords();
+
+		for(int i = 0; i < aRecords.size(); i++)
+		{
+			if(STORESONLINE.equals(table.lookup(aRecords.getInt(i) & IPv4.ADDRESS_MASK)))
 			{
 				return true;
 			}
@@ -128,11 +351,13 @@ public class Domain
 		return false;
 	}
 
-	private boolean inNetwork(IPv4 address)
+	public boolean isStoresOnlineNameServers() throws UnknownHostException, Exception
 	{
-		for(IPv4 network : STORESONLINE)
+		for(String ns : getNameServers())
 		{
-			if(network.includes(address))
+			IPv4 address = nameServerCache.getAddress(ns);
+
+			if(inNetwork(address))
 			{
 				return true;
 			}
@@ -140,4 +365,9 @@ public class Domain
 
 		return false;
 	}
+
+	static boolean inNetwork(IPv4 address)
+	{
+		return STORESONLINE.equals(networks.lookup(address));
+	}
 }
@@ -1,8 +1,11 @@
 package com.thelincolnshome.CommandTool.DNS;
 
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
-import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,9 +16,23 @@ public class IPv4 extends Object
 	public final static int			FULL_CIDR		= 32;
 	public final static long		DEFAULT_MASK	= 0x00000000FFFFFFFF;
 
+	/** The low 32 bits, unlike DEFAULT_MASK which the int literal makes -1. */
+	final static long				ADDRESS_MASK	= 0xFFFFFFFFL;
+
 	public final static String		NETWORK			= "NETWORK";
 	public final static String		BROADCAST		= "BROADCAST";
 
+	/*
+	 * What parseQuad returns for input that is not a dotted quad. Addresses
+	 * are never negative, so any negative result is one of these.
+	 */
+
+	public final static long		INVALID_EMPTY		= -1;
+	public final static long		INVALID_CHARACTER	= -2;
+	public final static long		INVALID_OCTET		= -3;
+	public final static long		INVALID_PARTS		= -4;
+	public final static long		INVALID_EMPTY_OCTET	= -5;
+
 	protected long					addr_network	= 0;
 	protected long					addr_broadcast	= 0;
 
@@ -23,6 +40,75 @@ public class IPv4 extends Object
 	protected long					mask			= DEFAULT_MASK;
 
 
+	private IPv4()
+	{
+	}
+
+	/**
+	 * A single address from its 32 bits, as kept in the primitive
+	 * collections. Never fails, unlike the long constructors.
+	 */
+	public static IPv4 valueOf(int addr)
+	{
+		IPv4 ip = new IPv4();
+		ip.addr_network = addr & ADDRESS_MASK;
+		ip.addr_broadcast = ip.addr_network;
+		ip.cidr = FULL_CIDR;
+
+		return ip;
+	}
+
+	/**
+	 * The block of the given prefix length, 0 to 32, holding an address. The
+	 * address is masked down to its block rather than checked; a prefix length
+	 * outside 0 to 32 throws an {@link IllegalArgumentException}.
+	 */
+	public static IPv4 valueOf(long addr, int cidr)
+	{
+		if(cidr < 0 || cidr > FULL_CIDR)
+		{
+			throw new IllegalArgumentException("Prefix length must be 0 to 32: " + cidr);
+		}
+
+		long size = 1L << (FULL_CIDR - cidr);
+
+		IPv4 ip = new IPv4();
+		ip.addr_network = addr & ADDRESS_MASK & ~(size - 1);
+		ip.addr_broadcast = ip.addr_network + size - 1;
+		ip.cidr = cidr;
+		ip.calculateMask();
+
+		if(cidr == 0)
+		{
+			ip.mask = 0;
+		}
+
+		return ip;
+	}
+
+	/**
+	 * A single address from a resolved IPv4 {@link InetAddress}.
+	 */
+	public static IPv4 valueOf(InetAddress addr)
+	{
+		return valueOf(toInt(addr));
+	}
+
+	/**
+	 * The 32 bits of a resolved IPv4 {@link InetAddress}.
+	 */
+	public static int toInt(InetAddress addr)
+	{
+		byte[] bytes = addr.getAddress();
+
+		if(bytes.length != 4)
+		{
+			throw new IllegalArgumentException(addr + " is not an IPv4 address.");
+		}
+
+		return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+	}
+
 	public IPv4(long addr_network) throws Exception
 	{
 		parseAddressBlock(addr_network, addr_network);
@@ -43,43 +129,100 @@ public class IPv4 extends Object
 		parseAddressBlock(addr_network.longValue(), addr_broadcast.longValue());
 	}
 
+	/**
+	 * Parse <code>a.b.c.d</code> or <code>a.b.c.d/n</code>, with whitespace
+	 * allowed around the address and the prefix length but not inside them.
+	 * A bad prefix length is a {@link NumberFormatException} and a bad
+	 * address an {@link IllegalArgumentException}.
+	 */
 	public IPv4(String addr_str)
 	{
-		String cidr_str = "0";
-		String dotted_quad = addr_str.trim();
+		if(addr_str == null)
+		{
+			throw new IllegalArgumentException("Address cannot be null.");
+		}
+
+		int start = 0;
+		int end = addr_str.length();
+		int slash = addr_str.indexOf('/');
 
 		cidr = FULL_CIDR;
 
 		// attempt to parse a network mask value
 
-		if(addr_str.indexOf("/") >= 0)
+		if(slash >= 0)
 		{
-			java.util.StringTokenizer st = new java.util.StringTokenizer(addr_str, "/", false);
-			String token = st.nextToken().trim();
+			int first = slash + 1;
+			int last = end;
+
+			while(first < last && Character.isWhitespace(addr_str.charAt(first)))
+			{
+				first++;
+			}
 
-			if(token.length() > 0)
+			while(last > first && Character.isWhitespace(addr_str.charAt(last - 1)))
 			{
-				dotted_quad = token;
+				last--;
 			}
 
-			if(st.hasMoreTokens())
+			if(first == last)
 			{
-				token = st.nextToken().trim();
+				throw new NumberFormatException("No prefix length: \"" + addr_str + "\"");
+			}
+
+			cidr = 0;
+
+			for(int i = first; i < last; i++)
+			{
+				char c = addr_str.charAt(i);
+
+				if(c < '0' || c > '9')
+				{
+					throw new NumberFormatException("For input string: \"" + addr_str.substring(slash + 1) + "\"");
+				}
 
-				if(token.length() > 0)
+				if(cidr <= FULL_CIDR)
 				{
-					cidr_str = token;
+					cidr = cidr * 10 + (c - '0');
 				}
 			}
 
-			cidr = Integer.parseInt(cidr_str);
+			if(cidr > FULL_CIDR)
+			{
+				throw new NumberFormatException("CIDR out of range: " + addr_str);
+			}
+
+			end = slash;
 
 			calculateMask();
+
+			// the whole space, not the single address a missing prefix means
+
+			if(cidr == 0)
+			{
+				mask = 0;
+			}
+		}
+
+		while(start < end && Character.isWhitespace(addr_str.charAt(start)))
+		{
+			start++;
+		}
+
+		while(end > start && Character.isWhitespace(addr_str.charAt(end - 1)))
+		{
+			end--;
 		}
 
-		long delta = (1 << (FULL_CIDR - cidr)) - 1;
+		long delta = (1L << (FULL_CIDR - cidr)) - 1;
+		long quad = parseQuad(addr_str, start, end);
+
+		if(quad < 0)
+		{
+			throw new IllegalArgumentException(addr_str + " is not an IPv4 address (" + quad + ").");
+		}
 
-		addr_network = quadToLong(dotted_quad) & mask;
+		addr_network = quad & mask;
 		addr_broadcast = addr_network + delta;
 
 		if(log.isTraceEnabled())
@@ -88,6 +231,17 @@ public class IPv4 extends Object
 		}
 	}
 
+	/**
+	 * Parse <code>a.b.c.d</code> or <code>a.b.c.d/n</code> strictly, the same
+	 * as the String constructor: anything that is not a network throws an
+	 * {@link IllegalArgumentException}, a bad prefix length being the
+	 * {@link NumberFormatException} kind.
+	 */
+	public static IPv4 parse(String addr_str)
+	{
+		return new IPv4(addr_str);
+	}
+
 	public IPv4(String addr_network, String addr_broadcast) throws Exception
 	{
 		parseAddressBlock(quadToLong(addr_network), quadToLong(addr_broadcast));
@@ -163,6 +317,15 @@ public class IPv4 extends Object
 		return ((mask & addr_network) == 0) || ((test_addr & mask) == addr_network);
 	}
 
+	/**
+	 * Every address of the block in order, without an object per address.
+	 * Call <code>parallel()</code> on it to sweep a large block on all cores.
+	 */
+	public LongStream addresses()
+	{
+		return StreamSupport.longStream(new AddressSpliterator(new long[] { addr_network }, new long[] { addr_broadcast }, 1), false);
+	}
+
 	public long getNetworkAddr()
 	{
 		return addr_network;
@@ -178,6 +341,28 @@ public class IPv4 extends Object
 		return cidr;
 	}
 
+	/**
+	 * The network address as 32 bits, the key of the primitive collections.
+	 */
+	public int toInt()
+	{
+		return (int) addr_network;
+	}
+
+	/**
+	 * The prefix length as printed: 0 and 32 both mean a single address,
+	 * unless the 0 was parsed as /0, the whole space.
+	 */
+	private int prefixLength()
+	{
+		if(cidr == 0 && addr_broadcast > addr_network)
+		{
+			return 0;
+		}
+
+		return (cidr > 0 && cidr < FULL_CIDR) ? cidr : FULL_CIDR;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -188,7 +373,7 @@ public class IPv4 extends Object
 	{
 		String s = longToQuad(addr_network);
 
-		if((cidr > 0) && (cidr < FULL_CIDR))
+		if(prefixLength() < FULL_CIDR)
 		{
 			s += "/" + cidr;
 		}
@@ -196,55 +381,248 @@ public class IPv4 extends Object
 		return s;
 	}
 
+	/**
+	 * Equal to another IPv4 exactly when their strings are, without
+	 * building them.
+	 */
 	@Override
 	public int hashCode()
 	{
-		return getString().hashCode();
+		return IPv4Set.mix((int) addr_network) * 31 + prefixLength();
 	}
 
 	@Override
 	public boolean equals(Object obj)
 	{
-		return (obj instanceof IPv4) && getString().equals(((IPv4) obj).getString());
+		if(obj == this)
+		{
+			return true;
+		}
+
+		if(!(obj instanceof IPv4))
+		{
+			return false;
+		}
+
+		IPv4 other = (IPv4) obj;
+
+		return ((addr_network ^ other.addr_network) & ADDRESS_MASK) == 0 && prefixLength() == other.prefixLength();
 	}
 
 	public static long quadToLong(String dotted_quad)
 	{
+		long addr = parseQuad(dotted_quad, 0, dotted_quad.length());
+
+		if(addr < 0)
+		{
+			log.error("Invalid IP Address (" + addr + "): " + dotted_quad);
+
+			return 0;
+		}
+
+		return addr;
+	}
+
+	/**
+	 * Parse a dotted quad without allocating, for reading addresses out of
+	 * a larger buffer such as a line of a log file.
+	 *
+	 * @return the address, or one of the negative INVALID_ codes
+	 */
+	public static long parseQuad(CharSequence dotted_quad)
+	{
+		return parseQuad(dotted_quad, 0, dotted_quad.length());
+	}
+
+	/**
+	 * Parse the dotted quad between start, inclusive, and end, exclusive.
+	 * There may be no spaces around it.
+	 *
+	 * @return the address, or one of the negative INVALID_ codes
+	 */
+	public static long parseQuad(CharSequence chars, int start, int end)
+	{
+		if(start >= end)
+		{
+			return INVALID_EMPTY;
+		}
+
 		long addr = 0;
+		int octet = -1;
+		int dots = 0;
+
+		for(int i = start; i < end; i++)
+		{
+			char c = chars.charAt(i);
+
+			if(c >= '0' && c <= '9')
+			{
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+
+				if(octet > 255)
+				{
+					return INVALID_OCTET;
+				}
+			}
+			else if(c == '.')
+			{
+				if(octet < 0)
+				{
+					return INVALID_EMPTY_OCTET;
+				}
+
+				if(++dots > 3)
+				{
+					return INVALID_PARTS;
+				}
 
-		String[] parts = dotted_quad.split("\\.");
+				addr = (addr << 8) | octet;
+				octet = -1;
+			}
+			else
+			{
+				return INVALID_CHARACTER;
+			}
+		}
 
-		if(parts.length != 4)
+		if(octet < 0)
 		{
-			log.error("Invalid IP Address (parts != 4): " + dotted_quad);
+			return INVALID_EMPTY_OCTET;
+		}
+
+		if(dots != 3)
+		{
+			return INVALID_PARTS;
+		}
+
+		return (addr << 8) | octet;
+	}
 
-			return addr;
+	/**
+	 * The same as {@link #parseQuad(CharSequence, int, int)} over ASCII bytes.
+	 */
+	public static long parseQuad(byte[] bytes, int start, int end)
+	{
+		if(start >= end)
+		{
+			return INVALID_EMPTY;
 		}
 
-		for(String part : parts)
+		long addr = 0;
+		int octet = -1;
+		int dots = 0;
+
+		for(int i = start; i < end; i++)
 		{
-			long quad = NumberUtils.createInteger(part);
+			byte b = bytes[i];
+
+			if(b >= '0' && b <= '9')
+			{
+				octet = (octet < 0 ? 0 : octet * 10) + (b - '0');
+
+				if(octet > 255)
+				{
+					return INVALID_OCTET;
+				}
+			}
+			else if(b == '.')
+			{
+				if(octet < 0)
+				{
+					return INVALID_EMPTY_OCTET;
+				}
+
+				if(++dots > 3)
+				{
+					return INVALID_PARTS;
+				}
 
-			if(quad > 255 | quad < 0)
+				addr = (addr << 8) | octet;
+				octet = -1;
+			}
+			else
 			{
-				quad = 0;
+				return INVALID_CHARACTER;
 			}
+		}
 
-			addr = (addr << 8) | quad;
+		if(octet < 0)
+		{
+			return INVALID_EMPTY_OCTET;
 		}
 
-		return addr;
+		if(dots != 3)
+		{
+			return INVALID_PARTS;
+		}
+
+		return (addr << 8) | octet;
 	}
 
 	public static String longToQuad(long addr)
 	{
-		StringBuilder s = new StringBuilder();
-		s.append(Long.toString((addr >> 24) & 0xFF));
-		s.append(".").append(Long.toString((addr >> 16) & 0xFF));
-		s.append(".").append(Long.toString((addr >> 8) & 0xFF));
-		s.append(".").append(Long.toString(addr & 0xFF));
+		return appendQuad(new StringBuilder(15), addr).toString();
+	}
+
+	/**
+	 * Append the dotted quad of the address without allocating.
+	 */
+	public static StringBuilder appendQuad(StringBuilder s, long addr)
+	{
+		for(int shift = 24; shift >= 0; shift -= 8)
+		{
+			int octet = (int) (addr >> shift) & 0xFF;
+
+			if(octet >= 100)
+			{
+				s.append((char) ('0' + octet / 100));
+			}
+
+			if(octet >= 10)
+			{
+				s.append((char) ('0' + (octet / 10) % 10));
+			}
+
+			s.append((char) ('0' + octet % 10));
+
+			if(shift > 0)
+			{
+				s.append('.');
+			}
+		}
+
+		return s;
+	}
+
+	/**
+	 * Put the dotted quad of the address into the buffer as ASCII, at most
+	 * 15 bytes.
+	 */
+	public static ByteBuffer appendQuad(ByteBuffer buffer, long addr)
+	{
+		for(int shift = 24; shift >= 0; shift -= 8)
+		{
+			int octet = (int) (addr >> shift) & 0xFF;
+
+			if(octet >= 100)
+			{
+				buffer.put((byte) ('0' + octet / 100));
+			}
+
+			if(octet >= 10)
+			{
+				buffer.put((byte) ('0' + (octet / 10) % 10));
+			}
+
+			buffer.put((byte) ('0' + octet % 10));
+
+			if(shift > 0)
+			{
+				buffer.put((byte) '.');
+			}
+		}
 
-		return s.toString();
+		return buffer;
 	}
 
 	public static long hexToLong(String addr)
@@ -0,0 +1,121 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of single IPv4 addresses kept as one int array, four bytes an
+ * address where an {@link IPv4} in an ArrayList costs a pointer and an
+ * object. It is a List&lt;IPv4&gt; for code that wants one, handing out a
+ * new IPv4 from {@link #get(int)}; {@link #getInt(int)} reads the address
+ * without one.
+ */
+public class IPv4List extends AbstractList<IPv4> implements RandomAccess
+{
+	private int[]	addresses;
+	private int		size	= 0;
+
+	public IPv4List()
+	{
+		this(4);
+	}
+
+	public IPv4List(int inCapacity)
+	{
+		addresses = new int[Math.max(1, inCapacity)];
+	}
+
+	public int getInt(int inIndex)
+	{
+		if(inIndex < 0 || inIndex >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + inIndex + ", Size: " + size);
+		}
+
+		return addresses[inIndex];
+	}
+
+	@Override
+	public IPv4 get(int inIndex)
+	{
+		return IPv4.valueOf(getInt(inIndex));
+	}
+
+	public void addInt(int inAddress)
+	{
+		if(size == addresses.length)
+		{
+			addresses = Arrays.copyOf(addresses, size * 2);
+		}
+
+		addresses[size++] = inAddress;
+		modCount++;
+	}
+
+	/**
+	 * Only single addresses fit, a network would lose its prefix length.
+	 */
+	@Override
+	public boolean add(IPv4 inAddress)
+	{
+		if(inAddress == null)
+		{
+			throw new IllegalArgumentException("Address cannot be null.");
+		}
+
+		if(inAddress.getNetworkAddr() != inAddress.getBroadcastAddr())
+		{
+			throw new IllegalArgumentException(inAddress + " is a network, not an address.");
+		}
+
+		addInt(inAddress.toInt());
+
+		return true;
+	}
+
+	@Override
+	public IPv4 set(int inIndex, IPv4 inAddress)
+	{
+		IPv4 previous = get(inIndex);
+
+		if(inAddress.getNetworkAddr() != inAddress.getBroadcastAddr())
+		{
+			throw new IllegalArgumentException(inAddress + " is a network, not an address.");
+		}
+
+		addresses[inIndex] = inAddress.toInt();
+
+		return previous;
+	}
+
+	@Override
+	public IPv4 remove(int inIndex)
+	{
+		IPv4 previous = get(inIndex);
+
+		System.arraycopy(addresses, inIndex + 1, addresses, inIndex, size - inIndex - 1);
+		size--;
+		modCount++;
+
+		return previous;
+	}
+
+	@Override
+	public void clear()
+	{
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	public int[] toIntArray()
+	{
+		return Arrays.copyOf(addresses, size);
+	}
+}
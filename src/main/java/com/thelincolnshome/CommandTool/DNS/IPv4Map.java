@@ -0,0 +1,236 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Arrays;
+
+/**
+ * A map from single IPv4 addresses, kept as primitive ints, to values, laid
+ * out like {@link IPv4Set} with the values in a parallel array. Joining
+ * millions of addresses against it costs no box or hash node per address.
+ * Null values are not allowed, so {@link #get(int)} returning null always
+ * means absent. Not thread safe.
+ */
+public class IPv4Map<V>
+{
+	private int[]		keys;
+	private Object[]	values;
+	private int			size		= 0;
+	private V			zeroValue	= null;
+
+	public IPv4Map()
+	{
+		this(0);
+	}
+
+	/**
+	 * A map that holds the given number of addresses before it grows.
+	 */
+	public IPv4Map(int inExpected)
+	{
+		int capacity = IPv4Set.capacityFor(inExpected);
+
+		keys = new int[capacity];
+		values = new Object[capacity];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int inAddress)
+	{
+		if(inAddress == 0)
+		{
+			return zeroValue;
+		}
+
+		int mask = keys.length - 1;
+
+		for(int i = IPv4Set.mix(inAddress) & mask;; i = (i + 1) & mask)
+		{
+			if(keys[i] == inAddress)
+			{
+				return (V) values[i];
+			}
+
+			if(keys[i] == 0)
+			{
+				return null;
+			}
+		}
+	}
+
+	public V get(IPv4 inAddress)
+	{
+		return get(inAddress.toInt());
+	}
+
+	public boolean containsKey(int inAddress)
+	{
+		return get(inAddress) != null;
+	}
+
+	/**
+	 * @return the value the address had before, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int inAddress, V inValue)
+	{
+		if(inValue == null)
+		{
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		if(inAddress == 0)
+		{
+			V previous = zeroValue;
+
+			if(previous == null)
+			{
+				size++;
+			}
+
+			zeroValue = inValue;
+
+			return previous;
+		}
+
+		int mask = keys.length - 1;
+
+		for(int i = IPv4Set.mix(inAddress) & mask;; i = (i + 1) & mask)
+		{
+			if(keys[i] == inAddress)
+			{
+				V previous = (V) values[i];
+				values[i] = inValue;
+
+				return previous;
+			}
+
+			if(keys[i] == 0)
+			{
+				keys[i] = inAddress;
+				values[i] = inValue;
+
+				if(++size > keys.length * 3 / 4)
+				{
+					resize(keys.length * 2);
+				}
+
+				return null;
+			}
+		}
+	}
+
+	public V put(IPv4 inAddress, V inValue)
+	{
+		return put(inAddress.toInt(), inValue);
+	}
+
+	/**
+	 * @return the value the address had, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int inAddress)
+	{
+		if(inAddress == 0)
+		{
+			V previous = zeroValue;
+
+			if(previous != null)
+			{
+				zeroValue = null;
+				size--;
+			}
+
+			return previous;
+		}
+
+		int mask = keys.length - 1;
+
+		for(int i = IPv4Set.mix(inAddress) & mask;; i = (i + 1) & mask)
+		{
+			if(keys[i] == 0)
+			{
+				return null;
+			}
+
+			if(keys[i] == inAddress)
+			{
+				V previous = (V) values[i];
+
+				keys[i] = 0;
+				values[i] = null;
+				size--;
+
+				IPv4Set.shiftBack(keys, values, i);
+
+				return previous;
+			}
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		zeroValue = null;
+		size = 0;
+	}
+
+	/**
+	 * The addresses, in no particular order.
+	 */
+	public int[] keys()
+	{
+		int[] addresses = new int[size];
+		int n = 0;
+
+		if(zeroValue != null)
+		{
+			addresses[n++] = 0;
+		}
+
+		for(int key : keys)
+		{
+			if(key != 0)
+			{
+				addresses[n++] = key;
+			}
+		}
+
+		return addresses;
+	}
+
+	private void resize(int inCapacity)
+	{
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		int mask = inCapacity - 1;
+
+		keys = new int[inCapacity];
+		values = new Object[inCapacity];
+
+		for(int j = 0; j < oldKeys.length; j++)
+		{
+			if(oldKeys[j] != 0)
+			{
+				int i = IPv4Set.mix(oldKeys[j]) & mask;
+
+				while(keys[i] != 0)
+				{
+					i = (i + 1) & mask;
+				}
+
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+}
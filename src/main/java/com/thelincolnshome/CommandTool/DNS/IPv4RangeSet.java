@@ -0,0 +1,494 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A set of IPv4 addresses kept as sorted, disjoint, non-adjacent intervals
+ * in two primitive arrays, for merging, intersecting and subtracting large
+ * prefix lists such as "provider ranges minus ours" or collapsing an ACL.
+ * <p>
+ * Union, intersection and difference walk both sets once, O(n + m), and
+ * {@link #contains(long)} is a binary search. Touching intervals are always
+ * merged, so two sets holding the same addresses are equal however they
+ * were built, and {@link #toCidrs()} gives the fewest blocks covering them.
+ * A set never changes once built; sixteen bytes an interval.
+ */
+public class IPv4RangeSet
+{
+	public static final IPv4RangeSet	EMPTY	= new IPv4RangeSet(new long[0], new long[0], 0);
+
+	public static final IPv4RangeSet	ALL		= new Builder().add(0, IPv4.ADDRESS_MASK).build();
+
+	private final long[]				firsts;
+	private final long[]				lasts;
+	private final int					size;
+
+	private IPv4RangeSet(long[] inFirsts, long[] inLasts, int inSize)
+	{
+		firsts = inFirsts;
+		lasts = inLasts;
+		size = inSize;
+	}
+
+	/**
+	 * How many intervals the addresses fall into.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public long getFirst(int inIndex)
+	{
+		checkIndex(inIndex);
+
+		return firsts[inIndex];
+	}
+
+	public long getLast(int inIndex)
+	{
+		checkIndex(inIndex);
+
+		return lasts[inIndex];
+	}
+
+	private void checkIndex(int inIndex)
+	{
+		if(inIndex < 0 || inIndex >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + inIndex + ", Size: " + size);
+		}
+	}
+
+	/**
+	 * How many addresses the set holds, up to 2^32.
+	 */
+	public long getAddressCount()
+	{
+		long count = 0;
+
+		for(int i = 0; i < size; i++)
+		{
+			count += lasts[i] - firsts[i] + 1;
+		}
+
+		return count;
+	}
+
+	public boolean contains(long inAddress)
+	{
+		int interval = intervalOf(inAddress & IPv4.ADDRESS_MASK);
+
+		return interval >= 0 && lasts[interval] >= (inAddress & IPv4.ADDRESS_MASK);
+	}
+
+	/**
+	 * True if every address of the block is in the set.
+	 */
+	public boolean contains(IPv4 inBlock)
+	{
+		int interval = intervalOf(inBlock.getNetworkAddr());
+
+		return interval >= 0 && lasts[interval] >= inBlock.getBroadcastAddr();
+	}
+
+	/**
+	 * The last interval starting at or below the address, or -1.
+	 */
+	private int intervalOf(long inAddress)
+	{
+		int low = 0;
+		int high = size - 1;
+
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if(firsts[middle] <= inAddress)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+
+		return high;
+	}
+
+	/**
+	 * Every address of the set in order, splitting evenly for a parallel
+	 * stream.
+	 */
+	public Spliterator.OfLong spliterator()
+	{
+		return new AddressSpliterator(firsts, lasts, size);
+	}
+
+	/**
+	 * Every address of the set in order, without an object per address.
+	 * Call <code>parallel()</code> on it to spread the work over all cores.
+	 */
+	public LongStream addresses()
+	{
+		return StreamSupport.longStream(spliterator(), false);
+	}
+
+	/**
+	 * Every address in either set.
+	 */
+	public IPv4RangeSet union(IPv4RangeSet inOther)
+	{
+		Intervals result = new Intervals(size + inOther.size);
+		int i = 0;
+		int j = 0;
+
+		while(i < size || j < inOther.size)
+		{
+			if(j == inOther.size || (i < size && firsts[i] <= inOther.firsts[j]))
+			{
+				result.add(firsts[i], lasts[i]);
+				i++;
+			}
+			else
+			{
+				result.add(inOther.firsts[j], inOther.lasts[j]);
+				j++;
+			}
+		}
+
+		return result.toSet();
+	}
+
+	/**
+	 * Every address in both sets.
+	 */
+	public IPv4RangeSet intersection(IPv4RangeSet inOther)
+	{
+		Intervals result = new Intervals(Math.min(size, inOther.size) * 2);
+		int i = 0;
+		int j = 0;
+
+		while(i < size && j < inOther.size)
+		{
+			long first = Math.max(firsts[i], inOther.firsts[j]);
+			long last = Math.min(lasts[i], inOther.lasts[j]);
+
+			if(first <= last)
+			{
+				result.add(first, last);
+			}
+
+			// the interval ending first cannot meet anything further on
+
+			if(lasts[i] < inOther.lasts[j])
+			{
+				i++;
+			}
+			else
+			{
+				j++;
+			}
+		}
+
+		return result.toSet();
+	}
+
+	/**
+	 * Every address in this set and not in the other.
+	 */
+	public IPv4RangeSet difference(IPv4RangeSet inOther)
+	{
+		Intervals result = new Intervals(size + inOther.size);
+		int j = 0;
+
+		for(int i = 0; i < size; i++)
+		{
+			long next = firsts[i];
+
+			while(j < inOther.size && inOther.lasts[j] < next)
+			{
+				j++;
+			}
+
+			while(j < inOther.size && inOther.firsts[j] <= lasts[i])
+			{
+				if(inOther.firsts[j] > next)
+				{
+					result.add(next, inOther.firsts[j] - 1);
+				}
+
+				next = inOther.lasts[j] + 1;
+
+				// one reaching past this interval may cut the next one too
+
+				if(inOther.lasts[j] > lasts[i])
+				{
+					break;
+				}
+
+				j++;
+			}
+
+			if(next <= lasts[i])
+			{
+				result.add(next, lasts[i]);
+			}
+		}
+
+		return result.toSet();
+	}
+
+	/**
+	 * Every address not in the set.
+	 */
+	public IPv4RangeSet complement()
+	{
+		return ALL.difference(this);
+	}
+
+	/**
+	 * The fewest CIDR blocks covering exactly the addresses of the set, the
+	 * whole address space being the one block 0.0.0.0/0.
+	 */
+	public List<IPv4> toCidrs()
+	{
+		List<IPv4> blocks = new ArrayList<IPv4>(size);
+
+		for(int i = 0; i < size; i++)
+		{
+			long first = firsts[i];
+
+			while(first <= lasts[i])
+			{
+				// the largest block aligned at first that ends within the interval
+
+				long block = first == 0 ? 1L << IPv4.FULL_CIDR : Long.lowestOneBit(first);
+
+				while(first + block - 1 > lasts[i])
+				{
+					block >>>= 1;
+				}
+
+				blocks.add(IPv4.valueOf(first, IPv4.FULL_CIDR - Long.numberOfTrailingZeros(block)));
+				first += block;
+			}
+		}
+
+		return blocks;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int hash = size;
+
+		for(int i = 0; i < size; i++)
+		{
+			hash = hash * 31 + (int) firsts[i];
+			hash = hash * 31 + (int) lasts[i];
+		}
+
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object inOther)
+	{
+		if(inOther == this)
+		{
+			return true;
+		}
+
+		if(!(inOther instanceof IPv4RangeSet))
+		{
+			return false;
+		}
+
+		IPv4RangeSet other = (IPv4RangeSet) inOther;
+
+		if(size != other.size)
+		{
+			return false;
+		}
+
+		for(int i = 0; i < size; i++)
+		{
+			if(firsts[i] != other.firsts[i] || lasts[i] != other.lasts[i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("[");
+
+		for(int i = 0; i < size; i++)
+		{
+			if(i > 0)
+			{
+				s.append(", ");
+			}
+
+			IPv4.appendQuad(s, firsts[i]);
+
+			if(lasts[i] != firsts[i])
+			{
+				IPv4.appendQuad(s.append('-'), lasts[i]);
+			}
+		}
+
+		return s.append(']').toString();
+	}
+
+	/**
+	 * Collects networks and ranges, in any order and possibly overlapping,
+	 * and merges them into a set. Each one costs a single long until the set
+	 * is built, so millions can be added.
+	 */
+	public static class Builder
+	{
+		private long[]	ranges	= new long[16];
+		private int		count	= 0;
+
+		/**
+		 * Add a network, such as <code>208.187.218.0/24</code>, or a single address.
+		 *
+		 * @throws IllegalArgumentException if it is not a network
+		 */
+		public Builder add(String inNetwork)
+		{
+			return add(IPv4.parse(inNetwork));
+		}
+
+		public Builder add(IPv4 inNetwork)
+		{
+			if(inNetwork == null)
+			{
+				throw new IllegalArgumentException("Network cannot be null.");
+			}
+
+			return add(inNetwork.getNetworkAddr(), inNetwork.getBroadcastAddr());
+		}
+
+		/**
+		 * Add every address from the first to the last, inclusive.
+		 */
+		public Builder add(long inFirst, long inLast)
+		{
+			if(inFirst < 0 || inLast > IPv4.ADDRESS_MASK || inFirst > inLast)
+			{
+				throw new IllegalArgumentException("Not an IPv4 range: " + inFirst + " - " + inLast);
+			}
+
+			if(count == ranges.length)
+			{
+				ranges = Arrays.copyOf(ranges, count * 2);
+			}
+
+			// first and last in one long, flipped so a signed sort orders by first
+
+			ranges[count++] = ((inFirst << 32) | inLast) ^ Long.MIN_VALUE;
+
+			return this;
+		}
+
+		public Builder addAll(IPv4RangeSet inSet)
+		{
+			for(int i = 0; i < inSet.size; i++)
+			{
+				add(inSet.firsts[i], inSet.lasts[i]);
+			}
+
+			return this;
+		}
+
+		public IPv4RangeSet build()
+		{
+			long[] sorted = Arrays.copyOf(ranges, count);
+
+			Arrays.sort(sorted);
+
+			Intervals intervals = new Intervals(count);
+
+			for(long range : sorted)
+			{
+				range ^= Long.MIN_VALUE;
+
+				intervals.add(range >>> 32, range & IPv4.ADDRESS_MASK);
+			}
+
+			return intervals.toSet();
+		}
+	}
+
+	/**
+	 * Growing arrays of intervals added in order of their first address,
+	 * each merged into the one before when they overlap or touch.
+	 */
+	private static class Intervals
+	{
+		private long[]	firsts;
+		private long[]	lasts;
+		private int		count	= 0;
+
+		Intervals(int inCapacity)
+		{
+			firsts = new long[Math.max(1, inCapacity)];
+			lasts = new long[Math.max(1, inCapacity)];
+		}
+
+		void add(long inFirst, long inLast)
+		{
+			if(count > 0 && inFirst <= lasts[count - 1] + 1)
+			{
+				lasts[count - 1] = Math.max(lasts[count - 1], inLast);
+
+				return;
+			}
+
+			if(count == firsts.length)
+			{
+				firsts = Arrays.copyOf(firsts, count * 2);
+				lasts = Arrays.copyOf(lasts, count * 2);
+			}
+
+			firsts[count] = inFirst;
+			lasts[count] = inLast;
+			count++;
+		}
+
+		IPv4RangeSet toSet()
+		{
+			if(count == 0)
+			{
+				return EMPTY;
+			}
+
+			// trim only when it saves something worth having
+
+			if(count < firsts.length / 2)
+			{
+				return new IPv4RangeSet(Arrays.copyOf(firsts, count), Arrays.copyOf(lasts, count), count);
+			}
+
+			return new IPv4RangeSet(firsts, lasts, count);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Arrays;
+
+/**
+ * A set of single IPv4 addresses kept as primitive ints in one open
+ * addressing table, for deduplicating millions of addresses without an
+ * object, a box or a hash node per address.
+ * <p>
+ * Linear probing over a power of two table, at most three quarters full.
+ * Slot value 0 means empty, so the address 0.0.0.0 is tracked by a flag of
+ * its own, and removal shifts the following entries back rather than
+ * leaving tombstones. Not thread safe.
+ */
+public class IPv4Set
+{
+	private static final int	MIN_CAPACITY	= 16;
+
+	private int[]				slots;
+	private int					size			= 0;
+	private boolean				hasZero			= false;
+
+	public IPv4Set()
+	{
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * A set that holds the given number of addresses before it grows.
+	 */
+	public IPv4Set(int inExpected)
+	{
+		slots = new int[capacityFor(inExpected)];
+	}
+
+	/**
+	 * Spread the bits of an address over the whole int, since addresses from
+	 * one network differ only in their low bits. The finaliser of MurmurHash3.
+	 */
+	static int mix(int inKey)
+	{
+		int h = inKey;
+
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+
+		return h;
+	}
+
+	/**
+	 * The smallest power of two table that keeps the given number of entries
+	 * at most three quarters full.
+	 */
+	static int capacityFor(int inExpected)
+	{
+		long needed = Math.max(MIN_CAPACITY, (long) inExpected * 4 / 3 + 1);
+
+		if(needed > (1 << 30))
+		{
+			throw new IllegalArgumentException("Too many addresses: " + inExpected);
+		}
+
+		return Integer.highestOneBit((int) needed - 1) << 1;
+	}
+
+	/**
+	 * @return true if the address was not already in the set
+	 */
+	public boolean add(int inAddress)
+	{
+		if(inAddress == 0)
+		{
+			if(hasZero)
+			{
+				return false;
+			}
+
+			hasZero = true;
+			size++;
+
+			return true;
+		}
+
+		int mask = slots.length - 1;
+
+		for(int i = mix(inAddress) & mask;; i = (i + 1) & mask)
+		{
+			if(slots[i] == inAddress)
+			{
+				return false;
+			}
+
+			if(slots[i] == 0)
+			{
+				slots[i] = inAddress;
+
+				if(++size > slots.length * 3 / 4)
+				{
+					resize(slots.length * 2);
+				}
+
+				return true;
+			}
+		}
+	}
+
+	public boolean add(IPv4 inAddress)
+	{
+		return add(inAddress.toInt());
+	}
+
+	public boolean contains(int inAddress)
+	{
+		if(inAddress == 0)
+		{
+			return hasZero;
+		}
+
+		int mask = slots.length - 1;
+
+		for(int i = mix(inAddress) & mask;; i = (i + 1) & mask)
+		{
+			if(slots[i] == inAddress)
+			{
+				return true;
+			}
+
+			if(slots[i] == 0)
+			{
+				return false;
+			}
+		}
+	}
+
+	public boolean contains(IPv4 inAddress)
+	{
+		return contains(inAddress.toInt());
+	}
+
+	/**
+	 * @return true if the address was in the set
+	 */
+	public boolean remove(int inAddress)
+	{
+		if(inAddress == 0)
+		{
+			if(!hasZero)
+			{
+				return false;
+			}
+
+			hasZero = false;
+			size--;
+
+			return true;
+		}
+
+		int mask = slots.length - 1;
+
+		for(int i = mix(inAddress) & mask;; i = (i + 1) & mask)
+		{
+			if(slots[i] == 0)
+			{
+				return false;
+			}
+
+			if(slots[i] == inAddress)
+			{
+				slots[i] = 0;
+				size--;
+
+				shiftBack(slots, null, i);
+
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Close the gap left at a slot by moving back every entry after it that
+	 * would otherwise no longer be found from its home slot. The values move
+	 * along with the keys when there are any.
+	 */
+	static void shiftBack(int[] inKeys, Object[] inValues, int inGap)
+	{
+		int mask = inKeys.length - 1;
+		int gap = inGap;
+
+		for(int i = (gap + 1) & mask; inKeys[i] != 0; i = (i + 1) & mask)
+		{
+			int home = mix(inKeys[i]) & mask;
+
+			// move it unless its home lies cyclically after the gap, up to it
+
+			if(((i - home) & mask) >= ((i - gap) & mask))
+			{
+				inKeys[gap] = inKeys[i];
+				inKeys[i] = 0;
+
+				if(inValues != null)
+				{
+					inValues[gap] = inValues[i];
+					inValues[i] = null;
+				}
+
+				gap = i;
+			}
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(slots, 0);
+		hasZero = false;
+		size = 0;
+	}
+
+	/**
+	 * The addresses, in no particular order.
+	 */
+	public int[] toArray()
+	{
+		int[] addresses = new int[size];
+		int n = 0;
+
+		if(hasZero)
+		{
+			addresses[n++] = 0;
+		}
+
+		for(int slot : slots)
+		{
+			if(slot != 0)
+			{
+				addresses[n++] = slot;
+			}
+		}
+
+		return addresses;
+	}
+
+	private void resize(int inCapacity)
+	{
+		int[] old = slots;
+		int mask = inCapacity - 1;
+
+		slots = new int[inCapacity];
+
+		for(int key : old)
+		{
+			if(key != 0)
+			{
+				int i = mix(key) & mask;
+
+				while(slots[i] != 0)
+				{
+					i = (i + 1) & mask;
+				}
+
+				slots[i] = key;
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies into logarithmic buckets, after the fashion of
+ * HdrHistogram, so percentiles can be read without keeping every sample.
+ * <p>
+ * Latencies are kept in microseconds. Below 16 every value has its own
+ * bucket; above that each power of two is split into 16 buckets, so any
+ * value is reported to within about 6%, and values up to about an hour fit
+ * in a few hundred counters. Recording is a couple of atomic increments and
+ * never allocates, so it can be done from the selector thread.
+ */
+public class LatencyHistogram
+{
+	private static final int		SUB_BITS		= 4;
+	private static final int		SUB_BUCKETS		= 1 << SUB_BITS;
+	private static final int		MAX_EXPONENT	= 40;
+	private static final int		BUCKETS			= (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray	counts			= new AtomicLongArray(BUCKETS);
+	private final AtomicLong		total			= new AtomicLong();
+	private final AtomicLong		sum				= new AtomicLong();
+	private final AtomicLong		max				= new AtomicLong();
+
+	/**
+	 * Count one latency, in nanoseconds.
+	 */
+	public void record(long inNanos)
+	{
+		long micros = Math.max(0, inNanos / 1000);
+
+		counts.incrementAndGet(bucket(micros));
+		total.incrementAndGet();
+		sum.addAndGet(micros);
+
+		for(long current = max.get(); micros > current; current = max.get())
+		{
+			if(max.compareAndSet(current, micros))
+			{
+				break;
+			}
+		}
+	}
+
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+
+		total.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	public long getCount()
+	{
+		return total.get();
+	}
+
+	/**
+	 * Mean latency in microseconds.
+	 */
+	public long getMean()
+	{
+		long count = total.get();
+
+		return count == 0 ? 0 : sum.get() / count;
+	}
+
+	/**
+	 * Highest latency recorded, in microseconds.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * The latency, in microseconds, that the given fraction of the recorded
+	 * latencies are at or below. It is the top of the bucket the percentile
+	 * falls in, so it errs on the slow side.
+	 */
+	public long getPercentile(double inFraction)
+	{
+		long count = total.get();
+
+		if(count == 0)
+		{
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, inFraction)) * count));
+		long seen = 0;
+
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+
+			if(seen >= rank)
+			{
+				return Math.min(highest(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Count and p50/p95/p99/max in milliseconds.
+	 */
+	public String getSummary()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append("n=").append(getCount());
+		s.append(" p50=").append(millis(getPercentile(0.50)));
+		s.append(" p95=").append(millis(getPercentile(0.95)));
+		s.append(" p99=").append(millis(getPercentile(0.99)));
+		s.append(" max=").append(millis(getMax())).append("ms");
+
+		return s.toString();
+	}
+
+	private static String millis(long inMicros)
+	{
+		return String.format("%.1f", inMicros / 1000.0);
+	}
+
+	static int bucket(long inMicros)
+	{
+		if(inMicros < SUB_BUCKETS)
+		{
+			return (int) inMicros;
+		}
+
+		int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(inMicros));
+
+		if(exponent == MAX_EXPONENT && inMicros >= (2L << MAX_EXPONENT))
+		{
+			return BUCKETS - 1;
+		}
+
+		int mantissa = (int) ((inMicros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	static long lowest(int inBucket)
+	{
+		if(inBucket < SUB_BUCKETS)
+		{
+			return inBucket;
+		}
+
+		int exponent = inBucket / SUB_BUCKETS + SUB_BITS - 1;
+		int mantissa = inBucket % SUB_BUCKETS;
+
+		return (long) (SUB_BUCKETS + mantissa) << (exponent - SUB_BITS);
+	}
+
+	static long highest(int inBucket)
+	{
+		if(inBucket < SUB_BUCKETS)
+		{
+			return inBucket;
+		}
+
+		int exponent = inBucket / SUB_BUCKETS + SUB_BITS - 1;
+
+		return lowest(inBucket) + (1L << (exponent - SUB_BITS)) - 1;
+	}
+}
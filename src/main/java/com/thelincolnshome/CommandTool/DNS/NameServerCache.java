@@ -0,0 +1,335 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.validator.routines.InetAddressValidator;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+/**
+ * Nameserver host to address cache.
+ * <p>
+ * A bulk run sees the same few hundred nameservers for thousands of domains,
+ * so each one is resolved once, through the resolver and {@link DNSCache}
+ * the cache was made with, instead of through <code>InetAddress</code> for
+ * every domain. A parser with nameservers of its own has a cache of its
+ * own, so it never sees addresses other nameservers gave. Callers asking for a nameserver that is already being resolved
+ * wait for that query rather than sending their own.
+ * <p>
+ * An address is kept for the TTL of its A record and a definite "no such
+ * host" answer for {@link #NEGATIVE_TTL}, or until the least recently used
+ * entry is evicted or the cache is cleared, so a long running server picks
+ * up a nameserver that moved. Timeouts and other transient failures are
+ * forgotten straight away so the next caller tries again. Nameservers given
+ * as addresses never expire.
+ */
+public class NameServerCache
+{
+	public static final int					DEFAULT_SIZE	= 10000;
+
+	/** How long a nameserver without an address is remembered, in seconds. */
+	public static final long				NEGATIVE_TTL	= 300;
+
+	private static final NameServerCache	instance		= new NameServerCache(DEFAULT_SIZE);
+
+	public interface Listener
+	{
+		/**
+		 * Called once the address is known, or with a null address and the
+		 * reason when it could not be resolved.
+		 */
+		void addressResolved(String inNameServer, IPv4 inAddress, UnknownHostException inError);
+	}
+
+	private final Entries					entries;
+	private final Resolver					resolver;
+	private final DNSCache					cache;
+
+	private final AtomicLong				hits			= new AtomicLong();
+	private final AtomicLong				misses			= new AtomicLong();
+
+	/**
+	 * A cache that asks the default resolver, whichever it is at the time,
+	 * through the default {@link DNSCache}.
+	 */
+	public NameServerCache(int inMaxEntries)
+	{
+		entries = new Entries(inMaxEntries);
+		resolver = null;
+		cache = null;
+	}
+
+	/**
+	 * A cache that asks the given resolver through the given answer cache.
+	 */
+	public NameServerCache(int inMaxEntries, Resolver inResolver, DNSCache inCache)
+	{
+		if(inResolver == null || inCache == null)
+		{
+			throw new IllegalArgumentException("Resolver and cache cannot be null.");
+		}
+
+		entries = new Entries(inMaxEntries);
+		resolver = inResolver;
+		cache = inCache;
+	}
+
+	public static NameServerCache getDefault()
+	{
+		return instance;
+	}
+
+	/**
+	 * The first IPv4 address of a nameserver host, waiting for it if needed.
+	 *
+	 * @throws UnknownHostException if the host has no address or could not be resolved
+	 */
+	public IPv4 getAddress(String inNameServer) throws UnknownHostException, InterruptedException
+	{
+		Entry entry = resolve(inNameServer, null);
+
+		entry.done.await();
+
+		if(entry.error != null)
+		{
+			throw entry.error;
+		}
+
+		return entry.address;
+	}
+
+	/**
+	 * Resolve a nameserver host without waiting. The listener is called
+	 * straight away when the address is already known.
+	 */
+	public void getAddress(String inNameServer, Listener inListener)
+	{
+		resolve(inNameServer, inListener);
+	}
+
+	private Entry resolve(String inNameServer, Listener inListener)
+	{
+		String key = inNameServer.toLowerCase();
+		Entry entry = null;
+		boolean owner = false;
+
+		synchronized(entries)
+		{
+			entry = entries.get(key);
+
+			if(entry == null || entry.isExpired(now()))
+			{
+				entry = new Entry(key);
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+
+		(owner ? misses : hits).incrementAndGet();
+
+		if(inListener != null)
+		{
+			entry.addListener(inListener);
+		}
+
+		if(owner)
+		{
+			entry.start();
+		}
+
+		return entry;
+	}
+
+	/**
+	 * The clock entries expire by.
+	 */
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	public void clear()
+	{
+		synchronized(entries)
+		{
+			entries.clear();
+		}
+
+		hits.set(0);
+		misses.set(0);
+	}
+
+	public int getSize()
+	{
+		synchronized(entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public String getStatistics()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append("nameservers=").append(getSize()).append("/").append(entries.maxEntries);
+		s.append(" hits=").append(hits.get());
+		s.append(" misses=").append(misses.get());
+
+		return s.toString();
+	}
+
+	private void forget(Entry inEntry)
+	{
+		synchronized(entries)
+		{
+			if(entries.get(inEntry.nameServer) == inEntry)
+			{
+				entries.remove(inEntry.nameServer);
+			}
+		}
+	}
+
+	private class Entry implements AsyncLookup.Listener
+	{
+		private final String			nameServer;
+		private final CountDownLatch	done		= new CountDownLatch(1);
+		private final List<Listener>	listeners	= new ArrayList<Listener>();
+
+		private IPv4					address		= null;
+		private UnknownHostException	error		= null;
+		private volatile long			expires		= Long.MAX_VALUE;
+
+		Entry(String inNameServer)
+		{
+			nameServer = inNameServer;
+		}
+
+		void start()
+		{
+			try
+			{
+				if(InetAddressValidator.getInstance().isValidInet4Address(nameServer))
+				{
+					complete(new IPv4(nameServer), null);
+				}
+				else
+				{
+					Name name = Name.fromString(nameServer, Name.root);
+
+					if(resolver == null)
+					{
+						new AsyncLookup(name, Type.A).start(this);
+					}
+					else
+					{
+						new AsyncLookup(name, Type.A, resolver, cache).start(this);
+					}
+				}
+			}
+			catch(TextParseException e)
+			{
+				complete(null, new UnknownHostException(nameServer + ": " + e.getMessage()));
+			}
+		}
+
+		public void lookupComplete(AsyncLookup inLookup)
+		{
+			if(inLookup.getResult() == Lookup.SUCCESSFUL)
+			{
+				ARecord record = (ARecord) inLookup.getAnswers()[0];
+
+				expires = now() + TimeUnit.SECONDS.toMillis(record.getTTL());
+
+				complete(IPv4.valueOf(record.getAddress()), null);
+			}
+			else
+			{
+				if(inLookup.getResult() == Lookup.TRY_AGAIN)
+				{
+					forget(this);
+				}
+				else
+				{
+					expires = now() + TimeUnit.SECONDS.toMillis(NEGATIVE_TTL);
+				}
+
+				complete(null, new UnknownHostException(nameServer + ": " + inLookup.getErrorString()));
+			}
+		}
+
+		/**
+		 * Answered, and kept for longer than its TTL. An entry still being
+		 * resolved is never expired, so its waiters are not stranded.
+		 */
+		boolean isExpired(long inNow)
+		{
+			return done.getCount() == 0 && inNow >= expires;
+		}
+
+		void addListener(Listener inListener)
+		{
+			synchronized(this)
+			{
+				if(done.getCount() > 0)
+				{
+					listeners.add(inListener);
+
+					return;
+				}
+			}
+
+			inListener.addressResolved(nameServer, address, error);
+		}
+
+		private void complete(IPv4 inAddress, UnknownHostException inError)
+		{
+			List<Listener> waiting = null;
+
+			synchronized(this)
+			{
+				address = inAddress;
+				error = inError;
+
+				done.countDown();
+
+				waiting = new ArrayList<Listener>(listeners);
+				listeners.clear();
+			}
+
+			for(Listener listener : waiting)
+			{
+				listener.addressResolved(nameServer, address, error);
+			}
+		}
+	}
+
+	private static class Entries extends LinkedHashMap<String, Entry>
+	{
+		private static final long	serialVersionUID	= 1L;
+
+		private final int			maxEntries;
+
+		Entries(int inMaxEntries)
+		{
+			super(16, 0.75f, true);
+
+			maxEntries = inMaxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> inEldest)
+		{
+			return size() > maxEntries;
+		}
+	}
+}
@@ -0,0 +1,490 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Named network lists kept in a text file, compiled once into a binary file
+ * beside it and memory mapped from there, so a list of hundreds of thousands
+ * of prefixes opens in milliseconds instead of being parsed on every start.
+ * <p>
+ * The text holds one network per line. A <code>[Label]</code> line names
+ * the list the networks after it belong to, a network followed by a label
+ * belongs to that one instead, and networks before any header take the name
+ * of the file. Blank lines and anything after a <code>#</code> are ignored:
+ *
+ * <pre>
+ * [StoresOnline]
+ * 208.187.218.0/24
+ * 10.0.0.0/8	Private
+ * </pre>
+ *
+ * A file without a StoresOnline list keeps the built-in one, so a table of
+ * other providers does not hide it; an empty <code>[StoresOnline]</code>
+ * list removes it.
+ * <p>
+ * The compiled file is <code>&lt;source&gt;.ntb</code>: a header with the
+ * size and modification time of the source it came from, the range starts,
+ * ends and label indexes of the flattened {@link NetworkTable} as ints, then
+ * the labels. It is rebuilt whenever it no longer matches its source.
+ * <p>
+ * A watched file is checked every couple of seconds and swapped into
+ * {@link Domain#setNetworks(NetworkTable)} when it changes. Lookups already
+ * running finish on the table they started with; a file that no longer
+ * parses is logged and the previous table kept.
+ */
+public class NetworkFile
+{
+	public static final String					COMPILED			= ".ntb";
+
+	public static final long					DEFAULT_INTERVAL	= 2000;
+
+	private static final int					MAGIC				= 0x4E544231;
+
+	/** Magic, source size, source modification time, range and label counts. */
+	static final int						HEADER				= 4 + 8 + 8 + 4 + 4;
+
+	private static final String					COMMENT				= "#";
+
+	private static Logger						log					= LoggerFactory.getLogger(NetworkFile.class);
+
+	private static final ScheduledThreadPoolExecutor	watcher	= createWatcher();
+
+	private static NetworkFile					watched				= null;
+
+	private final File							source;
+	private final File							compiled;
+	private volatile NetworkTable				table				= NetworkTable.EMPTY;
+	private long								length				= -1;
+	private long								modified			= -1;
+	private ScheduledFuture<?>					poll				= null;
+
+	public NetworkFile(File inSource)
+	{
+		if(inSource == null)
+		{
+			throw new IllegalArgumentException("Source cannot be null.");
+		}
+
+		source = inSource;
+		compiled = new File(inSource.getPath() + COMPILED);
+	}
+
+	private static ScheduledThreadPoolExecutor createWatcher()
+	{
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+		{
+			public Thread newThread(Runnable inRunnable)
+			{
+				Thread thread = new Thread(inRunnable, "NetworkFile watcher");
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		executor.setRemoveOnCancelPolicy(true);
+
+		return executor;
+	}
+
+	/**
+	 * Load the file into {@link Domain#setNetworks(NetworkTable)} and keep
+	 * it there as it changes, replacing the file watched before.
+	 *
+	 * @throws IOException if the file cannot be read or parsed, leaving the
+	 *             current networks as they were
+	 */
+	public static synchronized NetworkFile watch(File inSource) throws IOException
+	{
+		NetworkFile file = new NetworkFile(inSource);
+
+		Domain.setNetworks(file.load());
+
+		if(watched != null)
+		{
+			watched.stop();
+		}
+
+		watched = file;
+		file.start(DEFAULT_INTERVAL);
+
+		return file;
+	}
+
+	/**
+	 * The file being watched, or null.
+	 */
+	public static synchronized NetworkFile getWatched()
+	{
+		return watched;
+	}
+
+	public File getSource()
+	{
+		return source;
+	}
+
+	public File getCompiled()
+	{
+		return compiled;
+	}
+
+	/**
+	 * The table last loaded, empty before the first load.
+	 */
+	public NetworkTable getTable()
+	{
+		return table;
+	}
+
+	/**
+	 * Open the compiled file, compiling it first if it is missing or older
+	 * than the source.
+	 */
+	public synchronized NetworkTable load() throws IOException
+	{
+		long sourceLength = source.length();
+		long sourceModified = source.lastModified();
+
+		if(sourceModified == 0)
+		{
+			throw new IOException("Unable to read " + source);
+		}
+
+		NetworkTable loaded = map(compiled, sourceLength, sourceModified);
+
+		if(loaded == null)
+		{
+			long started = System.nanoTime();
+
+			write(parse(source), compiled, sourceLength, sourceModified);
+
+			loaded = map(compiled, sourceLength, sourceModified);
+
+			if(loaded == null)
+			{
+				throw new IOException("Unable to map " + compiled);
+			}
+
+			log.info("Compiled {} ranges from {} in {} ms", new Object[] { loaded.size(), source, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) });
+		}
+
+		length = sourceLength;
+		modified = sourceModified;
+		table = loaded;
+
+		return loaded;
+	}
+
+	/**
+	 * Check the source every interval, swapping the new table into
+	 * {@link Domain} when it changed.
+	 */
+	synchronized void start(long inInterval)
+	{
+		if(poll != null)
+		{
+			return;
+		}
+
+		poll = watcher.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				reloadIfChanged();
+			}
+		}, inInterval, inInterval, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void stop()
+	{
+		if(poll != null)
+		{
+			poll.cancel(false);
+			poll = null;
+		}
+	}
+
+	/**
+	 * @return true if the source had changed and was loaded again
+	 */
+	synchronized boolean reloadIfChanged()
+	{
+		if(source.length() == length && source.lastModified() == modified)
+		{
+			return false;
+		}
+
+		try
+		{
+			NetworkTable loaded = load();
+
+			if(poll != null)
+			{
+				Domain.setNetworks(loaded);
+			}
+
+			log.info("Reloaded {}: {} ranges, {} labels", new Object[] { source, loaded.size(), loaded.getLabels().size() });
+
+			return true;
+		}
+		catch(IOException e)
+		{
+			log.warn("Keeping the networks loaded before, " + e.getMessage());
+
+			// only complain again once the file changes again
+
+			length = source.length();
+			modified = source.lastModified();
+
+			return false;
+		}
+	}
+
+	/**
+	 * Parse the text form of a file into a table.
+	 */
+	static NetworkTable parse(File inSource) throws IOException
+	{
+		NetworkTable.Builder builder = new NetworkTable.Builder();
+		String label = StringUtils.substringBeforeLast(inSource.getName(), ".");
+		boolean storesOnline = false;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(inSource), StandardCharsets.UTF_8));
+
+		try
+		{
+			int number = 0;
+			String line;
+
+			while((line = reader.readLine()) != null)
+			{
+				number++;
+				line = StringUtils.substringBefore(line, COMMENT).trim();
+
+				if(line.isEmpty())
+				{
+					continue;
+				}
+
+				if(line.startsWith("[") && line.endsWith("]"))
+				{
+					label = line.substring(1, line.length() - 1).trim();
+					storesOnline |= Domain.STORESONLINE.equals(label);
+					continue;
+				}
+
+				String[] fields = StringUtils.split(line);
+
+				if(fields.length > 2)
+				{
+					throw new IOException(inSource + " line " + number + ": expected a network and an optional label");
+				}
+
+				String networkLabel = fields.length == 2 ? fields[1] : label;
+
+				try
+				{
+					builder.add(IPv4.parse(fields[0]), networkLabel);
+				}
+				catch(IllegalArgumentException e)
+				{
+					throw new IOException(inSource + " line " + number + ": " + fields[0] + " is not a network");
+				}
+
+				storesOnline |= Domain.STORESONLINE.equals(networkLabel);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		if(!storesOnline)
+		{
+			// built-ins first so the file wins where they overlap
+
+			NetworkTable.Builder withStoresOnline = Domain.addStoresOnline(new NetworkTable.Builder());
+
+			return withStoresOnline.addAll(builder).build();
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Write the compiled form of a table next to its source, replacing the
+	 * file as a whole so a reader never maps half of one.
+	 */
+	static void write(NetworkTable inTable, File inCompiled, long inSourceLength, long inSourceModified) throws IOException
+	{
+		File partial = new File(inCompiled.getPath() + ".tmp");
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)));
+
+		try
+		{
+			int size = inTable.size();
+			List<String> labels = inTable.getLabels();
+
+			output.writeInt(MAGIC);
+			output.writeLong(inSourceLength);
+			output.writeLong(inSourceModified);
+			output.writeInt(size);
+			output.writeInt(labels.size());
+
+			for(IntBuffer buffer : new IntBuffer[] { inTable.getStarts(), inTable.getEnds(), inTable.getLabelIndexes() })
+			{
+				for(int i = 0; i < size; i++)
+				{
+					output.writeInt(buffer.get(i));
+				}
+			}
+
+			for(String label : labels)
+			{
+				byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+
+				output.writeInt(bytes.length);
+				output.write(bytes);
+			}
+		}
+		finally
+		{
+			output.close();
+		}
+
+		Files.move(partial.toPath(), inCompiled.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Map a compiled file into a table whose ranges stay in the mapping.
+	 *
+	 * @return null if the file is missing, damaged or not compiled from a
+	 *         source of the given size and modification time
+	 */
+	static NetworkTable map(File inCompiled, long inSourceLength, long inSourceModified) throws IOException
+	{
+		if(!inCompiled.isFile() || inCompiled.length() < HEADER)
+		{
+			return null;
+		}
+
+		FileChannel channel = FileChannel.open(inCompiled.toPath(), StandardOpenOption.READ);
+		MappedByteBuffer buffer;
+
+		try
+		{
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			// the mapping stays valid without the channel
+
+			channel.close();
+		}
+
+		if(buffer.getInt(0) != MAGIC || buffer.getLong(4) != inSourceLength || buffer.getLong(12) != inSourceModified)
+		{
+			return null;
+		}
+
+		int size = buffer.getInt(20);
+		int labelCount = buffer.getInt(24);
+		long labelsAt = HEADER + 12L * size;
+
+		if(size < 0 || labelCount < 0 || labelsAt > buffer.capacity())
+		{
+			return null;
+		}
+
+		IntBuffer starts = ints(buffer, HEADER, size);
+		IntBuffer ends = ints(buffer, HEADER + 4 * size, size);
+		IntBuffer labelIndexes = ints(buffer, HEADER + 8 * size, size);
+		String[] labels = new String[labelCount];
+		int position = (int) labelsAt;
+
+		for(int i = 0; i < labelCount; i++)
+		{
+			if(position + 4 > buffer.capacity())
+			{
+				return null;
+			}
+
+			int length = buffer.getInt(position);
+
+			if(length < 0 || position + 4 + length > buffer.capacity())
+			{
+				return null;
+			}
+
+			byte[] bytes = new byte[length];
+
+			for(int j = 0; j < length; j++)
+			{
+				bytes[j] = buffer.get(position + 4 + j);
+			}
+
+			labels[i] = new String(bytes, StandardCharsets.UTF_8);
+			position += 4 + length;
+		}
+
+		// checked once here so a damaged file is compiled again rather than failing lookups
+
+		for(int i = 0; i < size; i++)
+		{
+			int label = labelIndexes.get(i);
+
+			if(label < 0 || label >= labelCount || (starts.get(i) & IPv4.ADDRESS_MASK) > (ends.get(i) & IPv4.ADDRESS_MASK))
+			{
+				return null;
+			}
+
+			if(i > 0 && (starts.get(i) & IPv4.ADDRESS_MASK) <= (ends.get(i - 1) & IPv4.ADDRESS_MASK))
+			{
+				return null;
+			}
+		}
+
+		return new NetworkTable(starts, ends, labelIndexes, labels);
+	}
+
+	private static IntBuffer ints(ByteBuffer inBuffer, int inOffset, int inCount)
+	{
+		ByteBuffer view = inBuffer.duplicate();
+
+		view.position(inOffset);
+		view.limit(inOffset + 4 * inCount);
+
+		return view.slice().asIntBuffer();
+	}
+
+	public String getStatistics()
+	{
+		NetworkTable current = table;
+
+		return new StringBuilder("Networks: ").append(source).append(", ").append(current.size()).append(" ranges, labels ").append(current.getLabels()).toString();
+	}
+}
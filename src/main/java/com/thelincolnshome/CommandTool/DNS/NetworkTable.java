@@ -0,0 +1,359 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Longest prefix match of IPv4 addresses against a set of labelled networks,
+ * such as the prefixes of each hosting provider.
+ * <p>
+ * The networks are flattened into sorted, disjoint address ranges, each
+ * carrying the label of the most specific network covering it, so a lookup
+ * is one binary search over primitive ints: O(log n) and no allocation.
+ * Where a network is nested inside another, the inner one wins over its
+ * range and the outer one keeps the rest. Neighbouring ranges with the same
+ * label are merged, so a provider's contiguous prefixes cost one entry.
+ * <p>
+ * The ranges live in {@link IntBuffer}s holding unsigned addresses, so a
+ * table can sit on a mapped file as well as on the heap. A table never
+ * changes once built.
+ */
+public class NetworkTable
+{
+	public static final int			NOT_FOUND	= -1;
+
+	public static final NetworkTable	EMPTY		= new Builder().build();
+
+	private final IntBuffer			starts;
+	private final IntBuffer			ends;
+	private final IntBuffer			labelIndexes;
+	private final String[]			labels;
+	private final int				size;
+
+	NetworkTable(IntBuffer inStarts, IntBuffer inEnds, IntBuffer inLabelIndexes, String[] inLabels)
+	{
+		if(inStarts.limit() != inEnds.limit() || inStarts.limit() != inLabelIndexes.limit())
+		{
+			throw new IllegalArgumentException("Ranges and labels must be the same length.");
+		}
+
+		starts = inStarts;
+		ends = inEnds;
+		labelIndexes = inLabelIndexes;
+		labels = inLabels;
+		size = inStarts.limit();
+	}
+
+	/**
+	 * The label of the most specific network holding the address, or null.
+	 */
+	public String lookup(long inAddress)
+	{
+		int label = labelOf(inAddress);
+
+		return label == NOT_FOUND ? null : labels[label];
+	}
+
+	public String lookup(IPv4 inAddress)
+	{
+		return inAddress == null ? null : lookup(inAddress.getNetworkAddr());
+	}
+
+	/**
+	 * The index into {@link #getLabels()} of the most specific network
+	 * holding the address, or {@link #NOT_FOUND}.
+	 */
+	public int labelOf(long inAddress)
+	{
+		int range = rangeOf(inAddress);
+
+		return range == NOT_FOUND ? NOT_FOUND : labelIndexes.get(range);
+	}
+
+	/**
+	 * The range holding the address, or {@link #NOT_FOUND}.
+	 */
+	int rangeOf(long inAddress)
+	{
+		long address = inAddress & IPv4.ADDRESS_MASK;
+		int low = 0;
+		int high = size - 1;
+
+		// last range starting at or below the address
+
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if(unsigned(starts.get(middle)) <= address)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+
+		if(high < 0 || unsigned(ends.get(high)) < address)
+		{
+			return NOT_FOUND;
+		}
+
+		return high;
+	}
+
+	/**
+	 * How many disjoint ranges the networks were flattened into.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public List<String> getLabels()
+	{
+		return Collections.unmodifiableList(Arrays.asList(labels));
+	}
+
+	IntBuffer getStarts()
+	{
+		return starts.duplicate();
+	}
+
+	IntBuffer getEnds()
+	{
+		return ends.duplicate();
+	}
+
+	IntBuffer getLabelIndexes()
+	{
+		return labelIndexes.duplicate();
+	}
+
+	static long unsigned(int inAddress)
+	{
+		return inAddress & IPv4.ADDRESS_MASK;
+	}
+
+	/**
+	 * Collects labelled networks, in any order and possibly nested, and
+	 * flattens them into a table. Where two ranges overlap without one
+	 * holding the other, the one starting later keeps the shared addresses
+	 * and the earlier one keeps the rest. However many ranges hold an
+	 * address, it goes to the one starting latest, then the shortest, then
+	 * the last added.
+	 */
+	public static class Builder
+	{
+		private final List<long[]>				networks	= new ArrayList<long[]>();
+		private final List<String>				labels		= new ArrayList<String>();
+		private final HashMap<String, Integer>	indexes		= new HashMap<String, Integer>();
+
+		/**
+		 * Add a network, such as <code>208.187.218.0/24</code>.
+		 *
+		 * @throws IllegalArgumentException if it is not a network
+		 */
+		public Builder add(String inNetwork, String inLabel)
+		{
+			return add(IPv4.parse(inNetwork), inLabel);
+		}
+
+		public Builder add(IPv4 inNetwork, String inLabel)
+		{
+			if(inNetwork == null)
+			{
+				throw new IllegalArgumentException("Network cannot be null.");
+			}
+
+			return add(inNetwork.getNetworkAddr(), inNetwork.getBroadcastAddr(), inLabel);
+		}
+
+		/**
+		 * Add every address from the first to the last, inclusive.
+		 */
+		public Builder add(long inFirst, long inLast, String inLabel)
+		{
+			if(inLabel == null)
+			{
+				throw new IllegalArgumentException("Label cannot be null.");
+			}
+
+			if(inFirst < 0 || inLast > IPv4.ADDRESS_MASK || inFirst > inLast)
+			{
+				throw new IllegalArgumentException("Not an IPv4 range: " + inFirst + " - " + inLast);
+			}
+
+			Integer index = indexes.get(inLabel);
+
+			if(index == null)
+			{
+				index = Integer.valueOf(labels.size());
+
+				indexes.put(inLabel, index);
+				labels.add(inLabel);
+			}
+
+			networks.add(new long[] { inFirst, inLast, index.longValue(), networks.size() });
+
+			return this;
+		}
+
+		/**
+		 * Add every network of another builder, after the ones here.
+		 */
+		public Builder addAll(Builder inOther)
+		{
+			for(long[] network : inOther.networks)
+			{
+				add(network[0], network[1], inOther.labels.get((int) network[2]));
+			}
+
+			return this;
+		}
+
+		public NetworkTable build()
+		{
+			// outer networks before the ones nested in them, later additions win a tie
+
+			List<long[]> sorted = new ArrayList<long[]>(networks);
+
+			Collections.sort(sorted, new Comparator<long[]>()
+			{
+				public int compare(long[] inLeft, long[] inRight)
+				{
+					if(inLeft[0] != inRight[0])
+					{
+						return inLeft[0] < inRight[0] ? -1 : 1;
+					}
+
+					if(inLeft[1] != inRight[1])
+					{
+						return inLeft[1] > inRight[1] ? -1 : 1;
+					}
+
+					return inLeft[3] < inRight[3] ? -1 : inLeft[3] > inRight[3] ? 1 : 0;
+				}
+			});
+
+			// sweep the boundaries, the innermost open range labelling each stretch
+			// between them; ranges that have ended are dropped once they reach the top
+
+			Ranges ranges = new Ranges(sorted.size() * 2 + 1);
+			List<long[]> open = new ArrayList<long[]>();
+			int added = 0;
+			long position = 0;
+
+			while(added < sorted.size() || !open.isEmpty())
+			{
+				while(added < sorted.size() && sorted.get(added)[0] <= position)
+				{
+					open.add(sorted.get(added++));
+				}
+
+				while(!open.isEmpty() && top(open)[1] < position)
+				{
+					open.remove(open.size() - 1);
+				}
+
+				if(open.isEmpty())
+				{
+					if(added < sorted.size())
+					{
+						position = sorted.get(added)[0];
+					}
+
+					continue;
+				}
+
+				long last = top(open)[1];
+
+				if(added < sorted.size())
+				{
+					last = Math.min(last, sorted.get(added)[0] - 1);
+				}
+
+				position = ranges.add(position, last, top(open)[2]);
+			}
+
+			return new NetworkTable(ranges.starts(), ranges.ends(), ranges.labels(), labels.toArray(new String[labels.size()]));
+		}
+
+		private static long[] top(List<long[]> inOpen)
+		{
+			return inOpen.get(inOpen.size() - 1);
+		}
+	}
+
+	/**
+	 * Growing arrays of ranges, merging each with the one before when they
+	 * touch and share a label.
+	 */
+	private static class Ranges
+	{
+		private int[]	starts;
+		private int[]	ends;
+		private int[]	labels;
+		private int		count	= 0;
+
+		Ranges(int inCapacity)
+		{
+			starts = new int[inCapacity];
+			ends = new int[inCapacity];
+			labels = new int[inCapacity];
+		}
+
+		/**
+		 * Add the range if it is not empty, returning the address after it.
+		 */
+		long add(long inFirst, long inLast, long inLabel)
+		{
+			if(inFirst > inLast)
+			{
+				return inFirst;
+			}
+
+			if(count > 0 && labels[count - 1] == (int) inLabel && unsigned(ends[count - 1]) + 1 == inFirst)
+			{
+				ends[count - 1] = (int) inLast;
+
+				return inLast + 1;
+			}
+
+			if(count == starts.length)
+			{
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+				labels = Arrays.copyOf(labels, count * 2);
+			}
+
+			starts[count] = (int) inFirst;
+			ends[count] = (int) inLast;
+			labels[count] = (int) inLabel;
+			count++;
+
+			return inLast + 1;
+		}
+
+		IntBuffer starts()
+		{
+			return IntBuffer.wrap(Arrays.copyOf(starts, count));
+		}
+
+		IntBuffer ends()
+		{
+			return IntBuffer.wrap(Arrays.copyOf(ends, count));
+		}
+
+		IntBuffer labels()
+		{
+			return IntBuffer.wrap(Arrays.copyOf(labels, count));
+		}
+	}
+}
@@ -0,0 +1,536 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.ResolverListener;
+
+/**
+ * Sends UDP queries for every {@link NioResolver} from one selector thread.
+ * <p>
+ * A handful of non-blocking channels, each bound to a random source port,
+ * carry all the queries. Every query gets a random ID that is unique on its
+ * channel, and a response is only accepted when it arrives on that channel
+ * from the server the query went to, with that ID and the same question.
+ * Timeouts are kept on a hashed timer wheel so thousands of queries in
+ * flight cost one slot each rather than one thread each.
+ * <p>
+ * Once the client is closed, every query still waiting to be sent or
+ * answered fails with an {@link IOException}, as does any sent after.
+ */
+public class NioDNSClient implements Runnable
+{
+	private static Logger					log				= LoggerFactory.getLogger(NioDNSClient.class);
+
+	public static final int					DEFAULT_CHANNELS	= 4;
+
+	private static final int				TICK_MILLIS		= 10;
+	private static final int				WHEEL_SIZE		= 1024;
+	private static final int				BIND_ATTEMPTS	= 16;
+	private static final int				FIRST_PORT		= 1024;
+	private static final int				RECEIVE_BUFFER	= 1024 * 1024;
+
+	private static NioDNSClient				instance		= null;
+
+	private final Selector					selector;
+	private final DatagramChannel[]			channels;
+	private final List<HashMap<Integer, Query>>	pending			= new ArrayList<HashMap<Integer, Query>>();
+	private final ConcurrentLinkedQueue<Query>	submitted		= new ConcurrentLinkedQueue<Query>();
+	private final ArrayDeque<Query>			outbound		= new ArrayDeque<Query>();
+	private final TimerWheel				timers			= new TimerWheel();
+	private final SecureRandom				random			= new SecureRandom();
+	private final ByteBuffer				buffer			= ByteBuffer.allocateDirect(Message.MAXLENGTH);
+	private final long						start			= System.nanoTime();
+
+	private final AtomicLong				sent			= new AtomicLong();
+	private final AtomicLong				received		= new AtomicLong();
+	private final AtomicLong				timeouts		= new AtomicLong();
+	private final AtomicLong				mismatched		= new AtomicLong();
+	private final AtomicInteger				inFlight		= new AtomicInteger();
+
+	private volatile boolean				running			= true;
+
+	public NioDNSClient(int inChannels) throws IOException
+	{
+		if(inChannels < 1)
+		{
+			throw new IllegalArgumentException("At least one channel is needed.");
+		}
+
+		selector = Selector.open();
+		channels = new DatagramChannel[inChannels];
+
+		for(int i = 0; i < inChannels; i++)
+		{
+			channels[i] = open();
+			channels[i].register(selector, SelectionKey.OP_READ, Integer.valueOf(i));
+
+			pending.add(new HashMap<Integer, Query>());
+		}
+
+		Thread thread = new Thread(this, "NioDNSClient");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * The client shared by every {@link NioResolver} that is not given its own.
+	 */
+	public static synchronized NioDNSClient getDefault() throws IOException
+	{
+		if(instance == null)
+		{
+			instance = new NioDNSClient(DEFAULT_CHANNELS);
+		}
+
+		return instance;
+	}
+
+	private DatagramChannel open() throws IOException
+	{
+		DatagramChannel channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.SO_RCVBUF, Integer.valueOf(RECEIVE_BUFFER));
+
+		// pick the source port ourselves rather than trusting the OS to randomise it
+
+		for(int attempt = 0; attempt < BIND_ATTEMPTS; attempt++)
+		{
+			try
+			{
+				channel.bind(new InetSocketAddress(FIRST_PORT + random.nextInt(65536 - FIRST_PORT)));
+
+				return channel;
+			}
+			catch(BindException e)
+			{
+			}
+		}
+
+		channel.bind(new InetSocketAddress(0));
+
+		return channel;
+	}
+
+	/**
+	 * Queue a query. Its listener is called from the selector thread, or at
+	 * once from this one when the client is closed.
+	 */
+	void send(Query inQuery)
+	{
+		submitted.add(inQuery);
+
+		// closed meanwhile: whichever of this and the selector takes the query
+		// back out fails it, so it fails exactly once
+
+		if(!running)
+		{
+			if(submitted.remove(inQuery))
+			{
+				deliver(inQuery, null, new IOException("Client is closed"));
+			}
+
+			return;
+		}
+
+		selector.wakeup();
+	}
+
+	/**
+	 * Stop the selector thread, failing every query it has not answered.
+	 */
+	public void close()
+	{
+		running = false;
+		selector.wakeup();
+	}
+
+	public int getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	public String getStatistics()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append("channels=").append(channels.length);
+		s.append(" inflight=").append(getInFlight());
+		s.append(" sent=").append(sent.get());
+		s.append(" received=").append(received.get());
+		s.append(" timeouts=").append(timeouts.get());
+		s.append(" mismatched=").append(mismatched.get());
+
+		return s.toString();
+	}
+
+	public void run()
+	{
+		List<Query> expired = new ArrayList<Query>();
+
+		while(running)
+		{
+			try
+			{
+				selector.select(TICK_MILLIS);
+
+				for(Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext();)
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if(key.isValid() && key.isReadable())
+					{
+						read(((Integer) key.attachment()).intValue());
+					}
+				}
+
+				for(Query query = submitted.poll(); query != null; query = submitted.poll())
+				{
+					outbound.add(query);
+				}
+
+				write();
+
+				timers.advance(tick(), expired);
+
+				for(Query query : expired)
+				{
+					pending.get(query.channel).remove(Integer.valueOf(query.id));
+					inFlight.decrementAndGet();
+					timeouts.incrementAndGet();
+
+					deliver(query, null, new SocketTimeoutException("timed out"));
+				}
+
+				expired.clear();
+			}
+			catch(Exception e)
+			{
+				log.error("DNS client loop", e);
+			}
+		}
+
+		// queries not sent yet have no channel, the others are all pending
+
+		for(Query query : outbound)
+		{
+			if(query.channel < 0)
+			{
+				deliver(query, null, new IOException("Client is closed"));
+			}
+		}
+
+		outbound.clear();
+
+		for(HashMap<Integer, Query> queries : pending)
+		{
+			for(Query query : queries.values())
+			{
+				inFlight.decrementAndGet();
+
+				deliver(query, null, new IOException("Client is closed"));
+			}
+
+			queries.clear();
+		}
+
+		for(Query query = submitted.poll(); query != null; query = submitted.poll())
+		{
+			deliver(query, null, new IOException("Client is closed"));
+		}
+
+		for(DatagramChannel channel : channels)
+		{
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+			}
+		}
+
+		try
+		{
+			selector.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	private long tick()
+	{
+		return (System.nanoTime() - start) / (TICK_MILLIS * 1000000L);
+	}
+
+	private void write()
+	{
+		while(!outbound.isEmpty())
+		{
+			Query query = outbound.peek();
+
+			if(query.channel < 0)
+			{
+				query.channel = random.nextInt(channels.length);
+				query.id = nextId(pending.get(query.channel));
+				query.wire[0] = (byte) (query.id >>> 8);
+				query.wire[1] = (byte) query.id;
+
+				pending.get(query.channel).put(Integer.valueOf(query.id), query);
+				inFlight.incrementAndGet();
+			}
+
+			try
+			{
+				if(channels[query.channel].send(ByteBuffer.wrap(query.wire), query.server) == 0)
+				{
+					// the socket buffer is full, try again on the next tick
+
+					return;
+				}
+			}
+			catch(IOException e)
+			{
+				outbound.poll();
+
+				pending.get(query.channel).remove(Integer.valueOf(query.id));
+				inFlight.decrementAndGet();
+
+				deliver(query, null, e);
+
+				continue;
+			}
+
+			outbound.poll();
+			sent.incrementAndGet();
+
+			timers.schedule(query, tick() + Math.max(1, query.timeout / TICK_MILLIS));
+		}
+	}
+
+	private int nextId(HashMap<Integer, Query> inPending)
+	{
+		int id = random.nextInt(0x10000);
+
+		while(inPending.containsKey(Integer.valueOf(id)))
+		{
+			id = random.nextInt(0x10000);
+		}
+
+		return id;
+	}
+
+	private void read(int inChannel) throws IOException
+	{
+		HashMap<Integer, Query> queries = pending.get(inChannel);
+
+		while(true)
+		{
+			buffer.clear();
+
+			SocketAddress from = channels[inChannel].receive(buffer);
+
+			if(from == null)
+			{
+				return;
+			}
+
+			buffer.flip();
+
+			if(buffer.remaining() < 12)
+			{
+				mismatched.incrementAndGet();
+
+				continue;
+			}
+
+			Integer id = Integer.valueOf(buffer.getShort(0) & 0xFFFF);
+			Query query = queries.get(id);
+
+			if(query == null || !query.server.equals(from))
+			{
+				mismatched.incrementAndGet();
+
+				continue;
+			}
+
+			byte[] data = new byte[buffer.remaining()];
+			buffer.get(data);
+
+			Message response = null;
+
+			try
+			{
+				response = new Message(data);
+			}
+			catch(IOException e)
+			{
+				mismatched.incrementAndGet();
+
+				continue;
+			}
+
+			Record question = response.getQuestion();
+
+			if(question != null && !question.equals(query.question))
+			{
+				mismatched.incrementAndGet();
+
+				continue;
+			}
+
+			queries.remove(id);
+			inFlight.decrementAndGet();
+			timers.cancel(query);
+			received.incrementAndGet();
+
+			deliver(query, response, null);
+		}
+	}
+
+	private void deliver(Query inQuery, Message inResponse, Exception inError)
+	{
+		try
+		{
+			if(inError != null)
+			{
+				inQuery.listener.handleException(inQuery, inError);
+			}
+			else
+			{
+				inQuery.listener.receiveMessage(inQuery, inResponse);
+			}
+		}
+		catch(Exception e)
+		{
+			log.error("DNS listener failed", e);
+		}
+	}
+
+	/**
+	 * One query in flight. Only the selector thread touches it once it has
+	 * been submitted.
+	 */
+	static final class Query
+	{
+		final InetSocketAddress				server;
+		final byte[]						wire;
+		final Record						question;
+		final int							timeout;
+		final ResolverListener						listener;
+
+		int									channel		= -1;
+		int									id;
+		long								deadline;
+		Query								previous;
+		Query								next;
+
+		Query(InetSocketAddress inServer, Message inQuery, byte[] inWire, int inTimeout, ResolverListener inListener)
+		{
+			server = inServer;
+			wire = inWire;
+			question = inQuery.getQuestion();
+			timeout = inTimeout;
+			listener = inListener;
+		}
+	}
+
+	/**
+	 * Hashed timer wheel. A query sits in the slot of its deadline tick and
+	 * is looked at once per turn of the wheel until that tick comes round, so
+	 * scheduling and cancelling are both constant time.
+	 */
+	private static final class TimerWheel
+	{
+		private final Query[]	slots	= new Query[WHEEL_SIZE];
+		private long			current	= -1;
+
+		void schedule(Query inQuery, long inDeadline)
+		{
+			int slot = (int) (inDeadline & (WHEEL_SIZE - 1));
+
+			inQuery.deadline = inDeadline;
+			inQuery.previous = null;
+			inQuery.next = slots[slot];
+
+			if(slots[slot] != null)
+			{
+				slots[slot].previous = inQuery;
+			}
+
+			slots[slot] = inQuery;
+		}
+
+		void cancel(Query inQuery)
+		{
+			int slot = (int) (inQuery.deadline & (WHEEL_SIZE - 1));
+
+			if(inQuery.previous != null)
+			{
+				inQuery.previous.next = inQuery.next;
+			}
+			else if(slots[slot] == inQuery)
+			{
+				slots[slot] = inQuery.next;
+			}
+
+			if(inQuery.next != null)
+			{
+				inQuery.next.previous = inQuery.previous;
+			}
+
+			inQuery.previous = null;
+			inQuery.next = null;
+		}
+
+		void advance(long inNow, List<Query> inExpired)
+		{
+			if(current < 0)
+			{
+				current = inNow - 1;
+			}
+
+			while(current < inNow)
+			{
+				current++;
+
+				Query query = slots[(int) (current & (WHEEL_SIZE - 1))];
+
+				while(query != null)
+				{
+					Query next = query.next;
+
+					if(query.deadline <= current)
+					{
+						cancel(query);
+						inExpired.add(query);
+					}
+
+					query = next;
+				}
+			}
+		}
+	}
+}
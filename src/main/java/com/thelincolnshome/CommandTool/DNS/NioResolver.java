@@ -0,0 +1,186 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TSIG;
+
+/**
+ * A {@link Resolver} for one server that sends its UDP queries through a
+ * shared {@link NioDNSClient}, so {@link #sendAsync} never starts a thread.
+ * It can be handed to {@link org.xbill.DNS.Lookup#setDefaultResolver} or
+ * wrapped in an {@link org.xbill.DNS.ExtendedResolver} like a
+ * {@link SimpleResolver}.
+ * <p>
+ * TCP, whether asked for or needed because a UDP answer came back truncated,
+ * is left to a SimpleResolver for the same server.
+ */
+public class NioResolver implements Resolver
+{
+	public static final int			DEFAULT_TIMEOUT		= 5000;
+
+	private final NioDNSClient		client;
+	private final SimpleResolver	tcp;
+
+	private InetSocketAddress		address;
+	private int						timeout				= DEFAULT_TIMEOUT;
+	private boolean					useTCP				= false;
+	private boolean					ignoreTruncation	= false;
+	private OPTRecord				queryOPT			= null;
+	private TSIG					tsig				= null;
+
+	public NioResolver(String inHostname) throws UnknownHostException, IOException
+	{
+		this(inHostname, NioDNSClient.getDefault());
+	}
+
+	public NioResolver(String inHostname, NioDNSClient inClient) throws UnknownHostException
+	{
+		if(inClient == null)
+		{
+			throw new IllegalArgumentException("Client cannot be null.");
+		}
+
+		client = inClient;
+		address = new InetSocketAddress(InetAddress.getByName(inHostname), SimpleResolver.DEFAULT_PORT);
+
+		tcp = new SimpleResolver(inHostname);
+		tcp.setTCP(true);
+		tcp.setTimeout(0, DEFAULT_TIMEOUT);
+	}
+
+	public InetSocketAddress getAddress()
+	{
+		return address;
+	}
+
+	public void setPort(int inPort)
+	{
+		address = new InetSocketAddress(address.getAddress(), inPort);
+		tcp.setPort(inPort);
+	}
+
+	public void setTCP(boolean inFlag)
+	{
+		useTCP = inFlag;
+	}
+
+	public void setIgnoreTruncation(boolean inFlag)
+	{
+		ignoreTruncation = inFlag;
+		tcp.setIgnoreTruncation(inFlag);
+	}
+
+	public void setEDNS(int inLevel)
+	{
+		setEDNS(inLevel, 0, 0, null);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void setEDNS(int inLevel, int inPayloadSize, int inFlags, List inOptions)
+	{
+		if(inLevel != 0 && inLevel != -1)
+		{
+			throw new IllegalArgumentException("invalid EDNS level - must be 0 or -1");
+		}
+
+		if(inPayloadSize == 0)
+		{
+			inPayloadSize = SimpleResolver.DEFAULT_EDNS_PAYLOADSIZE;
+		}
+
+		queryOPT = inLevel == -1 ? null : new OPTRecord(inPayloadSize, 0, inLevel, inFlags, inOptions);
+
+		tcp.setEDNS(inLevel, inPayloadSize, inFlags, inOptions);
+	}
+
+	public void setTSIGKey(TSIG inKey)
+	{
+		tsig = inKey;
+		tcp.setTSIGKey(inKey);
+	}
+
+	public void setTimeout(int inSeconds, int inMilliseconds)
+	{
+		timeout = inSeconds * 1000 + inMilliseconds;
+		tcp.setTimeout(inSeconds, inMilliseconds);
+	}
+
+	public void setTimeout(int inSeconds)
+	{
+		setTimeout(inSeconds, 0);
+	}
+
+	public int getTimeout()
+	{
+		return timeout;
+	}
+
+	public Message send(Message inQuery) throws IOException
+	{
+		// a truncated answer is asked again over TCP, with a timeout of its own
+
+		return ResponseWaiter.send(this, inQuery, 2L * timeout);
+	}
+
+	public Object sendAsync(final Message inQuery, final ResolverListener inListener)
+	{
+		if(useTCP)
+		{
+			return tcp.sendAsync(inQuery, inListener);
+		}
+
+		Message query = (Message) inQuery.clone();
+
+		if(queryOPT != null && query.getOPT() == null)
+		{
+			query.addRecord(queryOPT, Section.ADDITIONAL);
+		}
+
+		if(tsig != null)
+		{
+			tsig.apply(query, null);
+		}
+
+		ResolverListener listener = new ResolverListener()
+		{
+			public void receiveMessage(Object inId, Message inResponse)
+			{
+				if(!ignoreTruncation && inResponse.getHeader().getFlag(Flags.TC))
+				{
+					tcp.sendAsync(inQuery, inListener);
+				}
+				else
+				{
+					inListener.receiveMessage(inId, inResponse);
+				}
+			}
+
+			public void handleException(Object inId, Exception inException)
+			{
+				inListener.handleException(inId, inException);
+			}
+		};
+
+		NioDNSClient.Query pending = new NioDNSClient.Query(address, query, query.toWire(), timeout, listener);
+		client.send(pending);
+
+		return pending;
+	}
+
+	@Override
+	public String toString()
+	{
+		return address.getAddress().getHostAddress() + (address.getPort() == SimpleResolver.DEFAULT_PORT ? "" : ":" + address.getPort());
+	}
+}
@@ -0,0 +1,394 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.PTRRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ReverseMap;
+import org.xbill.DNS.Type;
+
+/**
+ * Looks up the PTR record of every address in a block, writing
+ * <code>address TAB name</code> lines in address order to an output file as
+ * the answers come in. Addresses without a PTR record get
+ * <code>NONE</code>, lookups that failed <code>FAILED</code>.
+ * <p>
+ * The lookups go out asynchronously, at most <code>parallelism</code> at a
+ * time and fewer when the {@link AdaptiveLimit} sees the resolvers
+ * struggle, and no faster than the given rate when there is one. An output
+ * file left by an earlier sweep of the block is continued after its last
+ * complete line rather than started over. The lines before it are kept as
+ * they are, <code>FAILED</code> ones included: those addresses are not
+ * asked again on resume, so sweep them into a new file to retry them.
+ */
+public class PtrSweep
+{
+	private static Logger		log				= LoggerFactory.getLogger(PtrSweep.class);
+
+	static final String			NONE			= "NONE";
+	static final String			FAILED			= "FAILED";
+
+	/** How many results may be waiting to be written per slot of the window. */
+	private static final int	BACKLOG			= 4;
+
+	private static final int	INITIAL_WINDOW	= 8;
+
+	private static final long	STATUS_INTERVAL	= 10000;
+
+	private static final int	BUFFER_SIZE		= 64 * 1024;
+
+	private final IPv4			block;
+	private final File			output;
+	private final int			parallelism;
+	private final int			rate;
+	private final Resolver		resolver;
+	private final DNSCache		cache;
+
+	private AdaptiveLimit		limit;
+	private long				started;
+	private long				reported;
+	private long				written			= 0;
+	private long				found			= 0;
+	private long				failed			= 0;
+	private long				skipped			= 0;
+
+	/**
+	 * @param inRate most queries a second, or 0 for as fast as the window allows
+	 */
+	public PtrSweep(IPv4 inBlock, File inOutput, int inParallelism, int inRate)
+	{
+		this(inBlock, inOutput, inParallelism, inRate, Lookup.getDefaultResolver(), DNSCache.getDefault());
+	}
+
+	/**
+	 * A sweep that asks the given resolver through the given cache rather
+	 * than the default ones.
+	 */
+	public PtrSweep(IPv4 inBlock, File inOutput, int inParallelism, int inRate, Resolver inResolver, DNSCache inCache)
+	{
+		if(inBlock == null)
+		{
+			throw new IllegalArgumentException("Block cannot be null.");
+		}
+
+		if(inOutput == null)
+		{
+			throw new IllegalArgumentException("Output cannot be null.");
+		}
+
+		if(inParallelism < 1)
+		{
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+
+		if(inResolver == null || inCache == null)
+		{
+			throw new IllegalArgumentException("Resolver and cache cannot be null.");
+		}
+
+		block = inBlock;
+		output = inOutput;
+		parallelism = inParallelism;
+		rate = Math.max(0, inRate);
+		resolver = inResolver;
+		cache = inCache;
+	}
+
+	/**
+	 * The file a sweep of the block writes to when none is given:
+	 * <code>10.0.0.0_16.ptr</code> for 10.0.0.0/16.
+	 */
+	public static File defaultOutput(IPv4 inBlock)
+	{
+		return new File(inBlock.toString().replace('/', '_') + ".ptr");
+	}
+
+	public File getOutput()
+	{
+		return output;
+	}
+
+	public void run() throws IOException, InterruptedException
+	{
+		long last = resumePoint(output);
+		long first = last < 0 ? block.getNetworkAddr() : Math.max(block.getNetworkAddr(), last + 1);
+
+		skipped = first - block.getNetworkAddr();
+
+		if(skipped > 0)
+		{
+			log.info("Resuming {} after {} addresses already in {}", new Object[] { block, skipped, output });
+		}
+
+		LinkedList<Task> pending = new LinkedList<Task>();
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output, true), StandardCharsets.US_ASCII), BUFFER_SIZE);
+		long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+		long next = System.nanoTime();
+
+		limit = new AdaptiveLimit(INITIAL_WINDOW, 1, parallelism);
+		started = System.currentTimeMillis();
+		reported = started;
+
+		try
+		{
+			for(long address = first; address <= block.getBroadcastAddr(); address++)
+			{
+				// pace the sends rather than the answers, so a slow stretch is not made up in a burst
+
+				if(interval > 0)
+				{
+					long wait = next - System.nanoTime();
+
+					if(wait > 0)
+					{
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+
+					next = Math.max(next + interval, System.nanoTime() - interval);
+				}
+
+				Task task = new Task(address);
+				pending.add(task);
+				task.start();
+
+				while(pending.size() >= parallelism * BACKLOG)
+				{
+					pending.getFirst().done.await();
+
+					write(pending, out);
+				}
+
+				write(pending, out);
+			}
+
+			while(!pending.isEmpty())
+			{
+				pending.getFirst().done.await();
+
+				write(pending, out);
+			}
+
+			log.info(getStatus());
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * The last address an earlier sweep wrote to the file, or -1 for none.
+	 * A line cut short by a crash is dropped, so its address is asked again.
+	 */
+	static long resumePoint(File inOutput) throws IOException
+	{
+		if(!inOutput.isFile() || inOutput.length() == 0)
+		{
+			return -1;
+		}
+
+		RandomAccessFile file = new RandomAccessFile(inOutput, "rw");
+
+		try
+		{
+			long end = file.length();
+			long complete = lastNewline(file, end);
+
+			if(complete + 1 < end)
+			{
+				file.setLength(complete + 1);
+			}
+
+			if(complete < 0)
+			{
+				return -1;
+			}
+
+			long start = lastNewline(file, complete) + 1;
+			byte[] line = new byte[(int) (complete - start)];
+
+			file.seek(start);
+			file.readFully(line);
+
+			int tab = 0;
+
+			while(tab < line.length && line[tab] != '\t')
+			{
+				tab++;
+			}
+
+			long address = IPv4.parseQuad(line, 0, tab);
+
+			if(address < 0)
+			{
+				throw new IOException(inOutput + " does not end with a PTR result");
+			}
+
+			return address;
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/**
+	 * The offset of the last newline before the given one, or -1.
+	 */
+	private static long lastNewline(RandomAccessFile inFile, long inBefore) throws IOException
+	{
+		byte[] buffer = new byte[4096];
+
+		for(long end = inBefore; end > 0;)
+		{
+			int length = (int) Math.min(buffer.length, end);
+
+			inFile.seek(end - length);
+			inFile.readFully(buffer, 0, length);
+
+			for(int i = length - 1; i >= 0; i--)
+			{
+				if(buffer[i] == '\n')
+				{
+					return end - length + i;
+				}
+			}
+
+			end -= length;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Write every finished task at the head of the queue.
+	 */
+	private void write(LinkedList<Task> inPending, Writer inOut) throws IOException
+	{
+		while(!inPending.isEmpty() && inPending.getFirst().isDone())
+		{
+			inOut.write(inPending.removeFirst().compose());
+			written++;
+		}
+
+		if(System.currentTimeMillis() - reported >= STATUS_INTERVAL)
+		{
+			reported = System.currentTimeMillis();
+
+			// what a resumed sweep starts after
+
+			inOut.flush();
+
+			log.info(getStatus());
+		}
+	}
+
+	public String getStatus()
+	{
+		long elapsed = Math.max(1, System.currentTimeMillis() - started);
+
+		StringBuilder s = new StringBuilder();
+		s.append(block).append(" ").append(written + skipped).append("/").append(block.getBroadcastAddr() - block.getNetworkAddr() + 1).append(" addresses");
+		s.append(" ").append((written * 1000) / elapsed).append("/s");
+		s.append(" found=").append(found).append(" failed=").append(failed);
+		s.append(" ").append(limit.getStatistics());
+
+		return s.toString();
+	}
+
+	/**
+	 * The PTR lookup of one address, holding a slot of the window while it is
+	 * in flight.
+	 */
+	private class Task implements AsyncLookup.Listener
+	{
+		private final long				address;
+		private final CountDownLatch	done	= new CountDownLatch(1);
+
+		private AsyncLookup				lookup	= null;
+		private long					sent;
+
+		Task(long inAddress)
+		{
+			address = inAddress;
+		}
+
+		void start() throws InterruptedException
+		{
+			long a = address;
+
+			lookup = new AsyncLookup(ReverseMap.fromAddress(new byte[] { (byte) (a >>> 24), (byte) (a >>> 16), (byte) (a >>> 8), (byte) a }), Type.PTR, resolver, cache);
+
+			limit.acquire();
+			sent = System.nanoTime();
+
+			lookup.start(this);
+		}
+
+		public void lookupComplete(AsyncLookup inLookup)
+		{
+			int rcode = inLookup.getRcode();
+			boolean timedOut = inLookup.getResult() == Lookup.TRY_AGAIN && rcode == -1;
+
+			limit.release(System.nanoTime() - sent, timedOut, rcode == Rcode.SERVFAIL || rcode == Rcode.REFUSED);
+
+			done.countDown();
+		}
+
+		boolean isDone()
+		{
+			return done.getCount() == 0;
+		}
+
+		/**
+		 * The output line, counting it.
+		 */
+		String compose()
+		{
+			StringBuilder s = IPv4.appendQuad(new StringBuilder(64), address).append('\t');
+			int length = s.length();
+
+			switch(lookup.getResult())
+			{
+				case Lookup.SUCCESSFUL:
+					for(Record record : lookup.getAnswers())
+					{
+						if(record instanceof PTRRecord)
+						{
+							s.append(s.length() > length ? "," : "").append(((PTRRecord) record).getTarget());
+						}
+					}
+					found++;
+					break;
+
+				case Lookup.HOST_NOT_FOUND:
+				case Lookup.TYPE_NOT_FOUND:
+					s.append(NONE);
+					break;
+
+				default:
+					s.append(FAILED);
+					failed++;
+					break;
+			}
+
+			return s.append('\n').toString();
+		}
+	}
+}
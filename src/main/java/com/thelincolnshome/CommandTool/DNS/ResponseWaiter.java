@@ -0,0 +1,83 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+
+/**
+ * Turns {@link Resolver#sendAsync} into {@link Resolver#send} for resolvers
+ * that only really work asynchronously.
+ * <p>
+ * The resolver is expected to time the query out itself. The wait is still
+ * bounded, a little past the longest the resolver should take, so a query
+ * the resolver lost never holds up its caller for good.
+ */
+class ResponseWaiter implements ResolverListener
+{
+	/** How long past the resolver's own timeout to wait before giving up. */
+	static final long				GRACE		= 1000;
+
+	private final CountDownLatch	done		= new CountDownLatch(1);
+
+	private volatile Message		response	= null;
+	private volatile Exception		error		= null;
+
+	/**
+	 * Send the query and wait for the answer, for at most the given time plus
+	 * {@link #GRACE}.
+	 */
+	static Message send(Resolver inResolver, Message inQuery, long inTimeout) throws IOException
+	{
+		ResponseWaiter waiter = new ResponseWaiter();
+
+		inResolver.sendAsync(inQuery, waiter);
+
+		return waiter.await(inTimeout + GRACE);
+	}
+
+	public void receiveMessage(Object inId, Message inResponse)
+	{
+		response = inResponse;
+		done.countDown();
+	}
+
+	public void handleException(Object inId, Exception inException)
+	{
+		error = inException;
+		done.countDown();
+	}
+
+	Message await(long inMillis) throws IOException
+	{
+		try
+		{
+			if(!done.await(inMillis, TimeUnit.MILLISECONDS))
+			{
+				throw new SocketTimeoutException("no answer or timeout in " + inMillis + "ms");
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("interrupted");
+		}
+
+		if(error instanceof IOException)
+		{
+			throw (IOException) error;
+		}
+		else if(error != null)
+		{
+			throw new IOException(error);
+		}
+
+		return response;
+	}
+}
@@ -1,8 +1,12 @@
 package com.thelincolnshome.CommandTool;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.cli.ParseException;
+
 
 public final class LineParsers
 {
@@ -18,6 +22,53 @@ public final class LineParsers
 		return parsers.get(inName);
 	}
 
+	/**
+	 * Run a command, its rows handed to the sink as they come when the parser
+	 * is a {@link StreamingLineParser}, or all at the end when it is not.
+	 */
+	public static boolean parseInput(LineParser inParser, String inLine, ResultSink inSink) throws ParseException
+	{
+		if(inParser instanceof StreamingLineParser)
+		{
+			return ((StreamingLineParser) inParser).parseInput(inLine, inSink);
+		}
+
+		List<Object> result = new ArrayList<Object>();
+		boolean exit = inParser.parseInput(inLine, result);
+
+		for(Object row : result)
+		{
+			inSink.add(row);
+		}
+
+		return exit;
+	}
+
+	/**
+	 * A parser of its own for a session of the {@link CommandServer}, so what
+	 * one client sets does not change another's: a new instance of the
+	 * registered parser's class, or the registered parser itself when the
+	 * class has no public no-argument constructor. Null for an unknown name.
+	 */
+	public static LineParser newParser(String inName)
+	{
+		LineParser parser = parsers.get(inName);
+
+		if(parser == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			return parser.getClass().getConstructor().newInstance();
+		}
+		catch(Exception e)
+		{
+			return parser;
+		}
+	}
+
 	public static Set<String> getParsers()
 	{
 		return parsers.keySet();
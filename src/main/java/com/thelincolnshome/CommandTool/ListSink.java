@@ -0,0 +1,32 @@
+package com.thelincolnshome.CommandTool;
+
+import java.util.List;
+
+/**
+ * Collects the rows into a list, for the list form of
+ * {@link LineParser#parseInput(String, List)}.
+ */
+public class ListSink implements ResultSink
+{
+	private final List<Object>	list;
+
+	public ListSink(List<Object> inList)
+	{
+		if(inList == null)
+		{
+			throw new IllegalArgumentException("List cannot be null.");
+		}
+
+		list = inList;
+	}
+
+	public void add(Object inRow)
+	{
+		list.add(inRow);
+	}
+
+	public List<Object> getList()
+	{
+		return list;
+	}
+}
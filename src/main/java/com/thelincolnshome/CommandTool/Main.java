@@ -1,17 +1,34 @@
 package com.thelincolnshome.CommandTool;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,12 +41,52 @@ public class Main
 	protected static MainClassLoader		classLoader;
 	protected static File					root;
 
+	private static final String				SERVER		= "-server";
+	private static final String				CLIENT		= "-client";
+	private static final String				BATCH		= "-batch";
+	private static final String				THREADS		= "-threads";
+
+	private static final int				BUFFER_SIZE	= 64 * 1024;
+
+	/** The highest exit status a batch gives, above it shells have their own meanings. */
+	private static final int				MAX_STATUS	= 125;
+
 	public static void main(String[] args)
 	{
 		try
 		{
+			// the client only talks to a running server, it needs none of the jars
+
+			if(args.length > 0 && CLIENT.equals(args[0]))
+			{
+				CommandClient.main(Arrays.copyOfRange(args, 1, args.length));
+
+				return;
+			}
+
 			register();
 
+			if(args.length > 0 && SERVER.equals(args[0]))
+			{
+				int port = args.length > 1 ? NumberUtils.toInt(args[1], -1) : CommandServer.getConfiguredPort();
+
+				if(port < 0)
+				{
+					Console.display("Usage: -server [port]\n");
+
+					return;
+				}
+
+				new CommandServer(port).run();
+
+				return;
+			}
+
+			if(args.length > 0 && BATCH.equals(args[0]))
+			{
+				System.exit(batch(Arrays.copyOfRange(args, 1, args.length)));
+			}
+
 			if(args.length == 1 && StringUtils.isNotEmpty(args[0]))
 			{
 				LineParser interpreter = LineParsers.getParser(args[0]);
@@ -53,6 +110,50 @@ public class Main
 		}
 	}
 
+	/**
+	 * <code>-batch [-threads n] parser [script]</code>: run a script, or stdin
+	 * when there is none, exiting with the number of failed commands.
+	 */
+	static int batch(String[] args) throws IOException
+	{
+		int threads = 1;
+		int next = 0;
+
+		if(args.length > 1 && THREADS.equals(args[0]))
+		{
+			threads = NumberUtils.toInt(args[1], 0);
+			next = 2;
+		}
+
+		LineParser interpreter = args.length > next ? LineParsers.getParser(args[next]) : null;
+
+		if(interpreter == null || threads < 1 || args.length > next + 2)
+		{
+			Console.display("Usage: -batch [-threads n] parser [script]\n");
+
+			return MAX_STATUS;
+		}
+
+		if(args.length > next + 1 && !new File(args[next + 1]).canRead())
+		{
+			Console.display("Unable to read file!\n");
+
+			return MAX_STATUS;
+		}
+
+		BufferedReader script = new BufferedReader(args.length > next + 1 ? new InputStreamReader(new FileInputStream(args[next + 1])) : new InputStreamReader(System.in), BUFFER_SIZE);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE);
+
+		try
+		{
+			return Math.min(new Console(interpreter).runBatch(script, out, threads), MAX_STATUS);
+		}
+		finally
+		{
+			script.close();
+		}
+	}
+
 	static void register() throws Exception
 	{
 		File libs = new File(root, ".");
@@ -71,91 +172,225 @@ public class Main
 
 		// ----------------
 
+		// unchanged jars come from the cache without being opened, the rest are read in parallel
+
+		RegisterCache cache = new RegisterCache(RegisterCache.defaultFile()).load();
+		List<File> changed = new ArrayList<File>();
+
 		for(File file : getJarFiles())
 		{
-			JarFile jarFile = null;
+			List<String> cached = cache.get(file);
 
+			if(cached != null)
+			{
+				load(file, cached);
+			}
+			else
+			{
+				changed.add(file);
+			}
+		}
+
+		find(changed, cache);
+		cache.save();
+
+		for(Method method : registers)
+		{
 			try
 			{
-				jarFile = new JarFile(file);
+				if((method.getModifiers() & Modifier.STATIC) == 0)
+				{
+					throw new Exception("Register methods must be static");
+				}
 
-				for(Enumeration<JarEntry> enumeration = jarFile.entries(); enumeration.hasMoreElements();)
+				if(method.getParameterTypes().length > 0)
 				{
-					JarEntry entry = enumeration.nextElement();
+					throw new Exception("Register methods can not have parameters");
+				}
+
+				method.invoke(null);
+			}
+			catch(Throwable e)
+			{
+				throw new Exception(e);
+			}
+		}
 
-					String name = entry.getName();
+		registers.clear();
+	}
 
-					if(name.endsWith(".class"))
-					{
-						name = name.substring(0, name.length() - 6).replaceAll("\\/", ".");
+	/**
+	 * Read the registers of each jar, several jars at a time, and remember
+	 * them in the cache.
+	 */
+	static void find(List<File> inJars, RegisterCache inCache) throws Exception
+	{
+		if(inJars.isEmpty())
+		{
+			return;
+		}
 
-						try
-						{
-							Class<?> registerClass = classLoader.loadClass(name);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(inJars.size(), Runtime.getRuntime().availableProcessors()));
+		List<Future<List<String>>> found = new ArrayList<Future<List<String>>>();
 
-							if(registerClass != null)
-							{
-								for(Method method : registerClass.getMethods())
-								{
-									if(method.isAnnotationPresent(Register.class))
-									{
-										registers.add(method);
-									}
-								}
-							}
-						}
-						catch(NoClassDefFoundError e)
-						{
-						}
-						catch(Throwable e)
-						{
-							throw new Exception(e);
-						}
+		try
+		{
+			for(final File file : inJars)
+			{
+				found.add(executor.submit(new Callable<List<String>>()
+				{
+					public List<String> call() throws Exception
+					{
+						return find(file);
 					}
+				}));
+			}
+
+			for(int i = 0; i < inJars.size(); i++)
+			{
+				List<String> registers;
+
+				try
+				{
+					registers = found.get(i).get();
+				}
+				catch(ExecutionException e)
+				{
+					throw new Exception(e.getCause());
 				}
+
+				inCache.put(inJars.get(i), registers);
+				load(inJars.get(i), registers);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The <code>class method</code> registers of a jar, from its
+	 * {@link RegisterProcessor} index when it has one.
+	 */
+	static List<String> find(File inJar) throws Exception
+	{
+		JarFile jarFile = new JarFile(inJar);
+
+		try
+		{
+			JarEntry index = jarFile.getJarEntry(RegisterProcessor.INDEX);
+
+			return index != null ? readIndex(jarFile, index) : scan(jarFile);
+		}
+		finally
+		{
+			try
+			{
+				jarFile.close();
 			}
 			catch(Exception e)
 			{
-				throw e;
 			}
-			finally
+		}
+	}
+
+	static List<String> readIndex(JarFile inJarFile, JarEntry inIndex) throws IOException
+	{
+		List<String> registers = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(inJarFile.getInputStream(inIndex), StandardCharsets.UTF_8));
+
+		try
+		{
+			for(String line = in.readLine(); line != null; line = in.readLine())
 			{
-				if(jarFile != null)
+				if(StringUtils.split(line).length == 2)
 				{
-					try
-					{
-						jarFile.close();
-					}
-					catch(Exception e)
+					registers.add(line.trim());
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return registers;
+	}
+
+	/**
+	 * Load every class of a jar built without the index, looking for
+	 * {@link Register} methods.
+	 */
+	static List<String> scan(JarFile inJarFile) throws Exception
+	{
+		List<String> registers = new ArrayList<String>();
+
+		for(Enumeration<JarEntry> enumeration = inJarFile.entries(); enumeration.hasMoreElements();)
+		{
+			JarEntry entry = enumeration.nextElement();
+
+			String name = entry.getName();
+
+			if(name.endsWith(".class"))
+			{
+				name = name.substring(0, name.length() - 6).replaceAll("\\/", ".");
+
+				try
+				{
+					Class<?> registerClass = classLoader.loadClass(name);
+
+					if(registerClass != null)
 					{
+						for(Method method : registerClass.getMethods())
+						{
+							if(method.isAnnotationPresent(Register.class))
+							{
+								registers.add(method.getDeclaringClass().getName() + " " + method.getName());
+							}
+						}
 					}
 				}
+				catch(NoClassDefFoundError e)
+				{
+				}
+				catch(Throwable e)
+				{
+					throw new Exception(e);
+				}
 			}
 		}
 
-		for(Method method : registers)
+		return registers;
+	}
+
+	/**
+	 * Load just the classes named by <code>class method</code> registers.
+	 */
+	static void load(File inJar, List<String> inRegisters)
+	{
+		for(String register : inRegisters)
 		{
+			String[] fields = StringUtils.split(register);
+
 			try
 			{
-				if((method.getModifiers() & Modifier.STATIC) == 0)
-				{
-					throw new Exception("Register methods must be static");
-				}
+				Method method = classLoader.loadClass(fields[0]).getMethod(fields[1]);
 
-				if(method.getParameterTypes().length > 0)
+				if(method.isAnnotationPresent(Register.class))
 				{
-					throw new Exception("Register methods can not have parameters");
+					registers.add(method);
 				}
-
-				method.invoke(null);
 			}
-			catch(Throwable e)
+			catch(ClassNotFoundException e)
 			{
-				throw new Exception(e);
+				log.warn("Stale register in " + inJar + ": " + register);
+			}
+			catch(NoSuchMethodException e)
+			{
+				log.warn("Stale register in " + inJar + ": " + register);
 			}
 		}
-
-		registers.clear();
 	}
 
 	static void findJars(File inDirectory) throws Exception
@@ -185,6 +420,13 @@ public class Main
 
 	protected static class MainClassLoader extends URLClassLoader
 	{
+		static
+		{
+			// jars are scanned on several threads at once
+
+			ClassLoader.registerAsParallelCapable();
+		}
+
 		protected MainClassLoader()
 		{
 			super(new URL[0], Thread.currentThread().getContextClassLoader());
@@ -0,0 +1,281 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link Register} methods found in each jar on earlier startups, so a
+ * jar that has not changed is neither opened nor scanned again.
+ * <p>
+ * A jar is known by its path, size, modification time and a SHA-256 of its
+ * contents. Path, size and time are checked on every startup; the hash is
+ * only worked out when the time moved but the size did not, so a jar that
+ * was copied or touched without changing is still found. A jar rewritten
+ * to the same size with the same modification time is trusted without
+ * hashing, so the hash only guards against a changed time, not a rewrite
+ * that kept it. One line a jar:
+ *
+ * <pre>
+ * path TAB size TAB time TAB hash TAB class method,class method
+ * </pre>
+ */
+public class RegisterCache
+{
+	private static final Logger		log			= LoggerFactory.getLogger(RegisterCache.class);
+
+	private static final String		SEPARATOR	= ",";
+
+	private final File				file;
+	private final Map<String, Entry>	entries	= new HashMap<String, Entry>();
+	private boolean					changed		= false;
+
+	public RegisterCache(File inFile)
+	{
+		if(inFile == null)
+		{
+			throw new IllegalArgumentException("File cannot be null.");
+		}
+
+		file = inFile;
+	}
+
+	/**
+	 * <code>~/.CommandTool/registers</code>, shared by every root.
+	 */
+	public static File defaultFile()
+	{
+		return new File(new File(System.getProperty("user.home"), ".CommandTool"), "registers");
+	}
+
+	/**
+	 * Read the cache, starting empty when there is none or it is unreadable.
+	 */
+	public synchronized RegisterCache load()
+	{
+		if(!file.isFile())
+		{
+			return this;
+		}
+
+		try
+		{
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+
+			try
+			{
+				for(String line = in.readLine(); line != null; line = in.readLine())
+				{
+					String[] fields = StringUtils.splitPreserveAllTokens(line, '\t');
+
+					if(fields.length != 5)
+					{
+						continue;
+					}
+
+					Entry entry = new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+
+					for(String register : StringUtils.split(fields[4], SEPARATOR))
+					{
+						entry.registers.add(register.trim());
+					}
+
+					entries.put(fields[0], entry);
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch(Exception e)
+		{
+			log.warn("Ignoring register cache " + file + ": " + e.getMessage());
+
+			entries.clear();
+		}
+
+		return this;
+	}
+
+	/**
+	 * The <code>class method</code> registers last found in the jar, or null
+	 * if it is new or has changed since.
+	 */
+	public synchronized List<String> get(File inJar)
+	{
+		Entry entry = entries.get(key(inJar));
+
+		if(entry == null || entry.size != inJar.length())
+		{
+			return null;
+		}
+
+		if(entry.modified != inJar.lastModified())
+		{
+			try
+			{
+				if(!entry.hash.equals(hash(inJar)))
+				{
+					return null;
+				}
+			}
+			catch(IOException e)
+			{
+				return null;
+			}
+
+			// the same bytes under a new time, no need to hash it again next time
+
+			entry.modified = inJar.lastModified();
+			changed = true;
+		}
+
+		return entry.registers;
+	}
+
+	public synchronized void put(File inJar, List<String> inRegisters) throws IOException
+	{
+		Entry entry = new Entry(inJar.length(), inJar.lastModified(), hash(inJar));
+
+		entry.registers.addAll(inRegisters);
+		entries.put(key(inJar), entry);
+		changed = true;
+	}
+
+	/**
+	 * Write the cache back if anything changed, dropping jars that are gone.
+	 * It is written aside and renamed, so two startups at once cannot leave
+	 * half a file.
+	 */
+	public synchronized void save()
+	{
+		for(String path : new ArrayList<String>(entries.keySet()))
+		{
+			if(!new File(path).isFile())
+			{
+				entries.remove(path);
+				changed = true;
+			}
+		}
+
+		if(!changed)
+		{
+			return;
+		}
+
+		File partial = new File(file.getPath() + "." + System.nanoTime() + ".tmp");
+
+		try
+		{
+			file.getParentFile().mkdirs();
+
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partial), StandardCharsets.UTF_8));
+
+			try
+			{
+				for(Map.Entry<String, Entry> entry : entries.entrySet())
+				{
+					Entry value = entry.getValue();
+
+					out.write(StringUtils.join(Arrays.asList(entry.getKey(), value.size, value.modified, value.hash, StringUtils.join(value.registers, SEPARATOR)), '\t'));
+					out.write('\n');
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+
+			Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			changed = false;
+		}
+		catch(IOException e)
+		{
+			log.warn("Cannot write register cache " + file + ": " + e.getMessage());
+
+			partial.delete();
+		}
+	}
+
+	private static String key(File inJar)
+	{
+		return inJar.getAbsoluteFile().toPath().normalize().toString();
+	}
+
+	static String hash(File inJar) throws IOException
+	{
+		MessageDigest digest;
+
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+
+		InputStream in = new FileInputStream(inJar);
+
+		try
+		{
+			byte[] buffer = new byte[64 * 1024];
+
+			for(int read = in.read(buffer); read >= 0; read = in.read(buffer))
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		StringBuilder s = new StringBuilder();
+
+		for(byte b : digest.digest())
+		{
+			s.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return s.toString();
+	}
+
+	private static class Entry
+	{
+		private final long			size;
+		private long				modified;
+		private final String		hash;
+		private final List<String>	registers	= new ArrayList<String>();
+
+		Entry(long inSize, long inModified, String inHash)
+		{
+			size = inSize;
+			modified = inModified;
+			hash = inHash;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes the {@link Register} methods of a jar to {@link #INDEX} as it is
+ * compiled, one <code>class method</code> line each, so {@link Main} loads
+ * just those classes instead of every class of every jar. Methods
+ * {@link Main} could not call are compile errors here rather than failures
+ * at startup.
+ */
+@SupportedAnnotationTypes("com.thelincolnshome.CommandTool.Register")
+public class RegisterProcessor extends AbstractProcessor
+{
+	public static final String	INDEX		= "META-INF/CommandTool/registers";
+
+	private final Set<String>	registers	= new TreeSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> inAnnotations, RoundEnvironment inRound)
+	{
+		for(Element element : inRound.getElementsAnnotatedWith(Register.class))
+		{
+			ExecutableElement method = (ExecutableElement) element;
+			TypeElement type = (TypeElement) method.getEnclosingElement();
+
+			if(!method.getModifiers().contains(Modifier.STATIC))
+			{
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Register methods must be static", method);
+			}
+			else if(!method.getParameters().isEmpty())
+			{
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Register methods can not have parameters", method);
+			}
+			else if(!method.getModifiers().contains(Modifier.PUBLIC) || !type.getModifiers().contains(Modifier.PUBLIC))
+			{
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Register methods must be public, in a public class", method);
+			}
+			else
+			{
+				registers.add(processingEnv.getElementUtils().getBinaryName(type) + " " + method.getSimpleName());
+			}
+		}
+
+		if(inRound.processingOver() && !registers.isEmpty())
+		{
+			write();
+		}
+
+		return true;
+	}
+
+	private void write()
+	{
+		try
+		{
+			FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+			Writer out = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8);
+
+			try
+			{
+				for(String register : registers)
+				{
+					out.write(register);
+					out.write('\n');
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch(IOException e)
+		{
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + INDEX + ": " + e.getMessage());
+		}
+	}
+}
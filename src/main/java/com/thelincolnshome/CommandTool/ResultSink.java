@@ -0,0 +1,15 @@
+package com.thelincolnshome.CommandTool;
+
+/**
+ * Where a {@link StreamingLineParser} puts the rows of a result as it
+ * produces them, instead of collecting them all before returning. A sink may
+ * block in {@link #add(Object)} until whoever reads it has caught up, which
+ * is how a fast command is held to the pace of a slow client.
+ */
+public interface ResultSink
+{
+	/**
+	 * One row, shown as its toString().
+	 */
+	void add(Object inRow);
+}
@@ -0,0 +1,14 @@
+package com.thelincolnshome.CommandTool;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A {@link LineParser} that streams its result rows to a {@link ResultSink}.
+ * The list form of parseInput is still there for callers that want the
+ * whole result at once, and is usually just
+ * <code>parseInput(inLine, new ListSink(aResult))</code>.
+ */
+public interface StreamingLineParser extends LineParser
+{
+	boolean parseInput(String inLine, ResultSink inSink) throws ParseException;
+}
@@ -0,0 +1,43 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes each row as a line. Nothing is flushed here, so with a buffered
+ * writer rows reach the file or pipe in blocks rather than one at a time; a
+ * failed write surfaces as an {@link UncheckedIOException}.
+ */
+public class WriterSink implements ResultSink
+{
+	private final Writer	out;
+
+	public WriterSink(Writer inOut)
+	{
+		if(inOut == null)
+		{
+			throw new IllegalArgumentException("Writer cannot be null.");
+		}
+
+		out = inOut;
+	}
+
+	public void add(Object inRow)
+	{
+		if(inRow == null)
+		{
+			return;
+		}
+
+		try
+		{
+			out.write(inRow.toString());
+			out.write('\n');
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+}
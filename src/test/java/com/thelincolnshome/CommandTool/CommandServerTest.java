@@ -0,0 +1,421 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for CommandServer and CommandClient.
+ */
+public class CommandServerTest
+    extends TestCase
+{
+    private CommandServer server;
+
+    private File tokenFile;
+
+    public CommandServerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CommandServerTest.class );
+    }
+
+    /**
+     * Counts the commands of its session, and answers ".x" with a line that
+     * has to be stuffed.
+     */
+    public static class Counter implements LineParser
+    {
+        private int count = 0;
+
+        public String getName()
+        {
+            return "Counter";
+        }
+
+        public String getUsage()
+        {
+            return null;
+        }
+
+        public String getHelloPrompt()
+        {
+            return "hello";
+        }
+
+        public boolean parseInput( String inLine, List<Object> inResult )
+        {
+            if ( "exit".equals( inLine ) )
+            {
+                return true;
+            }
+
+            inResult.add( inLine + " " + ( ++count ) );
+
+            return false;
+        }
+    }
+
+    /**
+     * Streams as many numbered rows as it is asked for.
+     */
+    public static class Rows extends Counter implements StreamingLineParser
+    {
+        @Override
+        public String getName()
+        {
+            return "Rows";
+        }
+
+        @Override
+        public boolean parseInput( String inLine, List<Object> inResult )
+        {
+            return parseInput( inLine, new ListSink( inResult ) );
+        }
+
+        public boolean parseInput( String inLine, ResultSink inSink )
+        {
+            int count = Integer.parseInt( inLine );
+
+            for ( int i = 0; i < count; i++ )
+            {
+                inSink.add( "row " + i );
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Waits until interrupted on "wait", and notes whether it had stopped
+     * by the time it was closed, and on which thread.
+     */
+    public static class Blocker extends Counter implements Closeable
+    {
+        static CountDownLatch started;
+        static CountDownLatch closed;
+        static volatile boolean stopped;
+        static volatile String closedOn;
+
+        @Override
+        public String getName()
+        {
+            return "Blocker";
+        }
+
+        @Override
+        public boolean parseInput( String inLine, List<Object> inResult )
+        {
+            started.countDown();
+
+            try
+            {
+                Thread.sleep( 60000 );
+            }
+            catch ( InterruptedException e )
+            {
+                stopped = true;
+            }
+
+            return false;
+        }
+
+        public void close()
+        {
+            closedOn = Thread.currentThread().getName();
+            closed.countDown();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        LineParsers.register( new Counter() );
+        LineParsers.register( new Rows() );
+        LineParsers.register( new Blocker() );
+
+        Blocker.started = new CountDownLatch( 1 );
+        Blocker.closed = new CountDownLatch( 1 );
+        Blocker.stopped = false;
+        Blocker.closedOn = null;
+
+        tokenFile = new File( Files.createTempDirectory( "CommandServerTest" ).toFile(), "token" );
+        tokenFile.getParentFile().deleteOnExit();
+        tokenFile.deleteOnExit();
+
+        server = new CommandServer( 0, tokenFile );
+
+        Thread thread = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                server.run();
+            }
+        } );
+
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        server.close();
+    }
+
+    public void testSessionsKeepTheirOwnParser() throws Exception
+    {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        PrintStream a = new PrintStream( first, true, "UTF-8" );
+        PrintStream b = new PrintStream( second, true, "UTF-8" );
+
+        CommandClient one = new CommandClient( server.getPort(), tokenFile, "Counter", a );
+        CommandClient two = new CommandClient( server.getPort(), tokenFile, "Counter", b );
+
+        assertTrue( one.execute( "x", a ) );
+        assertTrue( one.execute( ".x", a ) );
+        assertTrue( two.execute( "y", b ) );
+        assertTrue( one.execute( "exit", a ) );
+        assertFalse( one.execute( "z", a ) );
+
+        two.close();
+        one.close();
+
+        assertEquals( "hello\nx 1\n.x 2\n", first.toString( "UTF-8" ) );
+        assertEquals( "hello\ny 1\n", second.toString( "UTF-8" ) );
+    }
+
+    public void testStreamsMoreThanCanBeQueued() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream display = new PrintStream( out, true, "UTF-8" );
+        int rows = 3 * CommandServer.MAX_QUEUED / 8;
+
+        CommandClient client = new CommandClient( server.getPort(), tokenFile, "Rows", display );
+
+        assertTrue( client.execute( Integer.toString( rows ), display ) );
+        assertTrue( client.execute( "1", display ) );
+
+        client.close();
+
+        String[] lines = out.toString( "UTF-8" ).split( "\n" );
+
+        assertEquals( rows + 2, lines.length );
+        assertEquals( "row " + ( rows - 1 ), lines[ rows ] );
+        assertEquals( "row 0", lines[ rows + 1 ] );
+    }
+
+    public void testStuffing()
+    {
+        StringBuilder response = new StringBuilder();
+
+        CommandServer.appendResponse( response, Arrays.<Object> asList( "a\n.b", ".", null ) );
+
+        assertEquals( "a\n..b\n..\n.\n", response.toString() );
+    }
+
+    public void testTokenFileIsPrivate() throws Exception
+    {
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions( tokenFile.toPath() );
+
+        assertEquals( PosixFilePermissions.fromString( "rw-------" ), permissions );
+        assertEquals( CommandServer.readToken( tokenFile ), CommandServer.createToken( tokenFile ) );
+    }
+
+    public void testWrongTokenIsRefused() throws Exception
+    {
+        File wrong = new File( tokenFile.getParentFile(), "wrong" );
+        wrong.deleteOnExit();
+
+        CommandServer.createToken( wrong );
+
+        try
+        {
+            new CommandClient( server.getPort(), wrong, "Counter", new PrintStream( new ByteArrayOutputStream() ) );
+            fail();
+        }
+        catch ( IOException e )
+        {
+        }
+    }
+
+    public void testLongLineDropsTheSession() throws Exception
+    {
+        Socket socket = new Socket( InetAddress.getLoopbackAddress(), server.getPort() );
+        socket.setSoTimeout( 5000 );
+
+        try
+        {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write( ( CommandServer.readToken( tokenFile ) + "\nCounter\n" ).getBytes( "UTF-8" ) );
+            out.flush();
+
+            // the greeting
+
+            while ( in.read() != '.' )
+            {
+            }
+
+            assertEquals( '\n', in.read() );
+
+            byte[] line = new byte[ CommandServer.MAX_LINE + 1 ];
+            Arrays.fill( line, (byte) 'x' );
+
+            try
+            {
+                out.write( line );
+                out.flush();
+            }
+            catch ( IOException e )
+            {
+                // closed while still sending
+            }
+
+            try
+            {
+                assertEquals( -1, in.read() );
+            }
+            catch ( SocketTimeoutException e )
+            {
+                fail( "still open" );
+            }
+            catch ( IOException e )
+            {
+                // reset, the server did not read the rest
+            }
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    public void testEndedSessionStopsItsCommandBeforeClosingTheParser() throws Exception
+    {
+        Socket socket = open( "Blocker" );
+
+        socket.getOutputStream().write( "wait\n".getBytes( "UTF-8" ) );
+        socket.getOutputStream().flush();
+
+        assertTrue( Blocker.started.await( 5, TimeUnit.SECONDS ) );
+
+        socket.close();
+
+        assertTrue( Blocker.closed.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( Blocker.stopped );
+        assertTrue( Blocker.closedOn, Blocker.closedOn.startsWith( "CommandServer " ) );
+    }
+
+    public void testIdleSessionClosesItsParser() throws Exception
+    {
+        open( "Blocker" ).close();
+
+        assertTrue( Blocker.closed.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( Blocker.closedOn, Blocker.closedOn.startsWith( "CommandServer " ) );
+    }
+
+    public void testTooManyCommandsDropTheSession() throws Exception
+    {
+        Socket socket = open( "Blocker" );
+
+        try
+        {
+            StringBuilder commands = new StringBuilder();
+
+            for ( int i = 0; i <= CommandServer.MAX_COMMANDS + 1; i++ )
+            {
+                commands.append( "wait\n" );
+            }
+
+            try
+            {
+                socket.getOutputStream().write( commands.toString().getBytes( "UTF-8" ) );
+                socket.getOutputStream().flush();
+            }
+            catch ( IOException e )
+            {
+                // closed while still sending
+            }
+
+            try
+            {
+                assertEquals( -1, socket.getInputStream().read() );
+            }
+            catch ( SocketTimeoutException e )
+            {
+                fail( "still open" );
+            }
+            catch ( IOException e )
+            {
+                // reset, the server did not read the rest
+            }
+
+            assertTrue( Blocker.closed.await( 5, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * A raw session with the parser, past its greeting.
+     */
+    private Socket open( String inParser ) throws IOException
+    {
+        Socket socket = new Socket( InetAddress.getLoopbackAddress(), server.getPort() );
+        socket.setSoTimeout( 5000 );
+
+        OutputStream out = socket.getOutputStream();
+        InputStream in = socket.getInputStream();
+
+        out.write( ( CommandServer.readToken( tokenFile ) + "\n" + inParser + "\n" ).getBytes( "UTF-8" ) );
+        out.flush();
+
+        while ( in.read() != '.' )
+        {
+        }
+
+        assertEquals( '\n', in.read() );
+
+        return socket;
+    }
+
+    public void testUnknownParser() throws Exception
+    {
+        try
+        {
+            new CommandClient( server.getPort(), tokenFile, "Nope", new PrintStream( new ByteArrayOutputStream() ) );
+            fail();
+        }
+        catch ( IOException e )
+        {
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package com.thelincolnshome.CommandTool;
 
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.apache.commons.cli.ParseException;
+
 /**
  * Unit test for simple App.
  */
@@ -35,4 +42,71 @@ public class ConsoleTest
     {
         assertTrue( true );
     }
+
+    /**
+     * Echoes a line back upper cased, after a delay that makes the later lines
+     * finish first when run in parallel.
+     */
+    private static final LineParser ECHO = new LineParser()
+    {
+        public String getName()
+        {
+            return "Echo";
+        }
+
+        public String getUsage()
+        {
+            return null;
+        }
+
+        public String getHelloPrompt()
+        {
+            return "";
+        }
+
+        public boolean parseInput( String inLine, List<Object> inResult ) throws ParseException
+        {
+            if ( inLine.equals( "exit" ) )
+            {
+                return true;
+            }
+
+            if ( inLine.startsWith( "-" ) )
+            {
+                throw new ParseException( inLine );
+            }
+
+            try
+            {
+                Thread.sleep( 50 - inLine.length() );
+            }
+            catch ( InterruptedException e )
+            {
+            }
+
+            inResult.add( inLine.toUpperCase() );
+
+            return false;
+        }
+    };
+
+    private static final String SCRIPT = "# a script\nfirst\n\n-bad\nsecond line\n-worse\nthe third line\nexit\nnever\n";
+
+    private static final String OUTPUT = "FIRST\n" + Console.NOT_UNDERSTOOD + "\nSECOND LINE\n" + Console.NOT_UNDERSTOOD + "\nTHE THIRD LINE\n";
+
+    public void testBatch() throws Exception
+    {
+        StringWriter out = new StringWriter();
+
+        assertEquals( 2, new Console( ECHO ).runBatch( new BufferedReader( new StringReader( SCRIPT ) ), out, 1 ) );
+        assertEquals( OUTPUT, out.toString() );
+    }
+
+    public void testParallelBatchKeepsScriptOrder() throws Exception
+    {
+        StringWriter out = new StringWriter();
+
+        assertEquals( 2, new Console( ECHO ).runBatch( new BufferedReader( new StringReader( SCRIPT ) ), out, 4 ) );
+        assertEquals( OUTPUT, out.toString() );
+    }
 }
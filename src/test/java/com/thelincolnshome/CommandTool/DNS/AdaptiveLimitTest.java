@@ -0,0 +1,192 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for AdaptiveLimit.
+ */
+public class AdaptiveLimitTest
+    extends TestCase
+{
+    private static final long MILLIS = 1000000L;
+
+    public AdaptiveLimitTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( AdaptiveLimitTest.class );
+    }
+
+    private static void complete( AdaptiveLimit limit, int count, long latency, boolean timedOut, boolean serverFailure )
+        throws InterruptedException
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            limit.acquire();
+            limit.release( latency, timedOut, serverFailure );
+        }
+    }
+
+    public void testGrowsByAboutOnePerWindow() throws InterruptedException
+    {
+        AdaptiveLimit limit = new AdaptiveLimit( 4, 1, 100 );
+
+        complete( limit, 4, MILLIS, false, false );
+        assertEquals( 4, limit.getWindow() );
+
+        complete( limit, 1, MILLIS, false, false );
+        assertEquals( 5, limit.getWindow() );
+
+        complete( limit, 35, MILLIS, false, false );
+        assertEquals( 9, limit.getWindow() );
+        assertEquals( 40, limit.getCompleted() );
+        assertEquals( 0, limit.getInFlight() );
+    }
+
+    public void testTimeoutHalvesOncePerWindow() throws InterruptedException
+    {
+        AdaptiveLimit limit = new AdaptiveLimit( 4, 1, 100 );
+
+        complete( limit, 20, MILLIS, false, false );
+        assertEquals( 7, limit.getWindow() );
+
+        complete( limit, 1, MILLIS, true, false );
+        assertEquals( 3, limit.getWindow() );
+
+        // the rest of the same burst is not paid for again
+
+        complete( limit, 3, MILLIS, true, false );
+        assertEquals( 3, limit.getWindow() );
+
+        complete( limit, 1, MILLIS, true, false );
+        assertEquals( 1, limit.getWindow() );
+        assertTrue( limit.getStatistics(), limit.getStatistics().endsWith( " backoffs=2" ) );
+    }
+
+    public void testLateAnswerCountsAsLost() throws InterruptedException
+    {
+        AdaptiveLimit limit = new AdaptiveLimit( 4, 1, 100 );
+
+        complete( limit, 20, MILLIS, false, false );
+        complete( limit, 1, 300 * MILLIS, false, false );
+
+        assertEquals( 3, limit.getWindow() );
+    }
+
+    public void testOccasionalServerFailureIsTolerated() throws InterruptedException
+    {
+        AdaptiveLimit limit = new AdaptiveLimit( 4, 1, 100 );
+
+        complete( limit, 20, MILLIS, false, false );
+        complete( limit, 1, MILLIS, false, true );
+
+        assertEquals( 7, limit.getWindow() );
+
+        // a run of them pushes the error rate over the threshold
+
+        complete( limit, 2, MILLIS, false, true );
+
+        assertEquals( 3, limit.getWindow() );
+    }
+
+    public void testRisingLatencyStopsGrowth() throws InterruptedException
+    {
+        AdaptiveLimit limit = new AdaptiveLimit( 4, 1, 100 );
+
+        complete( limit, 20, MILLIS, false, false );
+        complete( limit, 20, 20 * MILLIS, false, false );
+
+        assertEquals( 7, limit.getWindow() );
+    }
+
+    public void testStaysWithinBounds() throws InterruptedException
+    {
+        AdaptiveLimit limit = new AdaptiveLimit( 50, 2, 6 );
+
+        assertEquals( 6, limit.getWindow() );
+
+        complete( limit, 100, MILLIS, false, false );
+        assertEquals( 6, limit.getWindow() );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            complete( limit, 10, MILLIS, true, false );
+        }
+
+        assertEquals( 2, limit.getWindow() );
+    }
+
+    public void testAcquireWaitsForRoom() throws InterruptedException
+    {
+        final AdaptiveLimit limit = new AdaptiveLimit( 1, 1, 1 );
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+
+        limit.acquire();
+
+        Thread waiter = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    limit.acquire();
+                    acquired.countDown();
+                }
+                catch ( InterruptedException e )
+                {
+                }
+            }
+        } );
+
+        waiter.setDaemon( true );
+        waiter.start();
+
+        assertFalse( acquired.await( 100, TimeUnit.MILLISECONDS ) );
+
+        limit.release( MILLIS, false, false );
+
+        assertTrue( acquired.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, limit.getInFlight() );
+    }
+
+    public void testCancelGivesTheSlotBackWithoutCounting() throws InterruptedException
+    {
+        final AdaptiveLimit limit = new AdaptiveLimit( 1, 1, 1 );
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+
+        limit.acquire();
+
+        Thread waiter = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    limit.acquire();
+                    acquired.countDown();
+                }
+                catch ( InterruptedException e )
+                {
+                }
+            }
+        } );
+
+        waiter.setDaemon( true );
+        waiter.start();
+
+        limit.cancel();
+
+        assertTrue( acquired.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 0, limit.getCompleted() );
+        assertEquals( 0, limit.getLatency() );
+        assertEquals( 1, limit.getInFlight() );
+    }
+}
@@ -0,0 +1,284 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+import org.xbill.DNS.Type;
+
+/**
+ * Unit test for BalancedResolver, with upstreams that answer or fail on the
+ * calling thread and a clock the test moves by hand.
+ */
+public class BalancedResolverTest
+    extends TestCase
+{
+    private long now = 1000000L;
+
+    public BalancedResolverTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BalancedResolverTest.class );
+    }
+
+    /**
+     * Answers every query at once, or fails it at once while failing is set,
+     * as if it had timed out while timingOut is.
+     */
+    private static class Fake implements Resolver
+    {
+        private final String name;
+        private final AtomicInteger queries = new AtomicInteger();
+        private volatile boolean failing = false;
+        private volatile boolean timingOut = false;
+
+        Fake( String name )
+        {
+            this.name = name;
+        }
+
+        public void setPort( int port )
+        {
+        }
+
+        public void setTCP( boolean flag )
+        {
+        }
+
+        public void setIgnoreTruncation( boolean flag )
+        {
+        }
+
+        public void setEDNS( int level )
+        {
+        }
+
+        @SuppressWarnings( "rawtypes" )
+        public void setEDNS( int level, int payloadSize, int flags, List options )
+        {
+        }
+
+        public void setTSIGKey( TSIG key )
+        {
+        }
+
+        public void setTimeout( int secs, int msecs )
+        {
+        }
+
+        public void setTimeout( int secs )
+        {
+        }
+
+        public Message send( Message query ) throws IOException
+        {
+            return ResponseWaiter.send( this, query, NioResolver.DEFAULT_TIMEOUT );
+        }
+
+        public Object sendAsync( Message query, ResolverListener listener )
+        {
+            Object id = new Object();
+
+            queries.incrementAndGet();
+
+            if ( timingOut )
+            {
+                listener.handleException( id, new SocketTimeoutException( "timed out" ) );
+            }
+            else if ( failing )
+            {
+                listener.handleException( id, new IOException( "network error" ) );
+            }
+            else
+            {
+                Message response = new Message( query.getHeader().getID() );
+
+                response.getHeader().setFlag( Flags.QR );
+                response.addRecord( query.getQuestion(), Section.QUESTION );
+
+                listener.receiveMessage( id, response );
+            }
+
+            return id;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    private static Message query() throws Exception
+    {
+        return Message.newQuery( Record.newRecord( Name.fromString( "example.test." ), Type.A, DClass.IN ) );
+    }
+
+    private static boolean isEjected( BalancedResolver resolver, int upstream )
+    {
+        return resolver.getStatistics().get( upstream ).contains( "EJECTED" );
+    }
+
+    private BalancedResolver timed( Resolver... upstreams )
+    {
+        BalancedResolver resolver = new BalancedResolver( upstreams )
+        {
+            @Override
+            long now()
+            {
+                return now;
+            }
+        };
+
+        // only the probes the test runs
+
+        resolver.close();
+
+        return resolver;
+    }
+
+    public void testDeadUpstreamGetsAtMostOneQuery() throws Exception
+    {
+        Fake dead = new Fake( "dead" );
+        Fake good = new Fake( "good" );
+
+        BalancedResolver resolver = timed( dead, good );
+
+        dead.timingOut = true;
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            assertNotNull( resolver.send( query() ) );
+        }
+
+        assertTrue( Integer.toString( dead.queries.get() ), dead.queries.get() <= 1 );
+        assertEquals( 20, good.queries.get() );
+    }
+
+    public void testFailingUpstreamIsEjectedUntilAProbeAnswers() throws Exception
+    {
+        Fake bad = new Fake( "bad" );
+        Fake good = new Fake( "good" );
+
+        BalancedResolver resolver = timed( bad, good );
+
+        // with both failing, each query tries both until both are ejected
+
+        bad.failing = true;
+        good.failing = true;
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            try
+            {
+                resolver.send( query() );
+                fail();
+            }
+            catch ( IOException e )
+            {
+            }
+        }
+
+        assertTrue( isEjected( resolver, 0 ) );
+        assertTrue( isEjected( resolver, 1 ) );
+        assertEquals( 5, bad.queries.get() );
+
+        // not due yet, then due: good answers its probe, bad still fails so
+        // it waits twice as long
+
+        good.failing = false;
+
+        resolver.probe();
+        assertEquals( 5, bad.queries.get() );
+
+        now += 5000;
+        resolver.probe();
+        assertEquals( 6, bad.queries.get() );
+        assertTrue( isEjected( resolver, 0 ) );
+        assertFalse( isEjected( resolver, 1 ) );
+
+        resolver.send( query() );
+        assertEquals( 6, bad.queries.get() );
+
+        now += 9999;
+        resolver.probe();
+        assertEquals( 6, bad.queries.get() );
+
+        bad.failing = false;
+
+        now += 1;
+        resolver.probe();
+        assertEquals( 7, bad.queries.get() );
+        assertFalse( isEjected( resolver, 0 ) );
+
+        // back, but scored worse than the upstream that kept answering
+
+        resolver.send( query() );
+        assertEquals( 7, bad.queries.get() );
+    }
+
+    public void testHedgingStopsWhenTheBudgetRunsOut() throws Exception
+    {
+        Fake first = new Fake( "first" );
+        Fake second = new Fake( "second" );
+
+        // hedge at once rather than after the delay, so every query wants one
+
+        BalancedResolver resolver = new BalancedResolver( new Resolver[] { first, second } )
+        {
+            @Override
+            ScheduledFuture<?> schedule( Runnable task, long delay )
+            {
+                task.run();
+
+                return null;
+            }
+        };
+
+        resolver.setHedging( true );
+
+        // enough answers to work out a hedge delay, and none hedged before it
+
+        for ( int i = 0; i < 64; i++ )
+        {
+            resolver.send( query() );
+        }
+
+        assertTrue( resolver.getHedgeDelay() > 0 );
+
+        List<String> statistics = resolver.getStatistics();
+        assertTrue( statistics.get( 2 ), statistics.get( 2 ).contains( " hedged=0 " ) );
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            resolver.send( query() );
+        }
+
+        // the burst of ten, and one more for every twenty queries
+
+        String hedged = resolver.getStatistics().get( 2 ).replaceAll( ".* hedged=(\\d+) .*", "$1" );
+
+        assertTrue( hedged, Integer.parseInt( hedged ) >= 19 && Integer.parseInt( hedged ) <= 20 );
+
+        resolver.close();
+    }
+}
@@ -0,0 +1,163 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+
+import com.thelincolnshome.CommandTool.ListSink;
+
+/**
+ * Unit test for BulkRunner.
+ */
+public class BulkRunnerTest
+    extends TestCase
+{
+    private File directory;
+
+    public BulkRunnerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BulkRunnerTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory( "BulkRunnerTest" ).toFile();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        for ( File file : directory.listFiles() )
+        {
+            file.delete();
+        }
+
+        directory.delete();
+    }
+
+    /**
+     * Fails to send anything for names starting with "broken", and says no
+     * other name exists.
+     */
+    private static class Broken implements Resolver
+    {
+        public void setPort( int port )
+        {
+        }
+
+        public void setTCP( boolean flag )
+        {
+        }
+
+        public void setIgnoreTruncation( boolean flag )
+        {
+        }
+
+        public void setEDNS( int level )
+        {
+        }
+
+        @SuppressWarnings( "rawtypes" )
+        public void setEDNS( int level, int payloadSize, int flags, List options )
+        {
+        }
+
+        public void setTSIGKey( TSIG key )
+        {
+        }
+
+        public void setTimeout( int secs, int msecs )
+        {
+        }
+
+        public void setTimeout( int secs )
+        {
+        }
+
+        public Message send( Message query )
+        {
+            Message response = new Message( query.getHeader().getID() );
+
+            response.getHeader().setFlag( Flags.QR );
+            response.getHeader().setRcode( Rcode.NXDOMAIN );
+            response.addRecord( query.getQuestion(), Section.QUESTION );
+
+            return response;
+        }
+
+        public Object sendAsync( Message query, ResolverListener listener )
+        {
+            if ( query.getQuestion().getName().toString().startsWith( "broken" ) )
+            {
+                throw new IllegalStateException( "no way to send" );
+            }
+
+            Object id = new Object();
+
+            listener.receiveMessage( id, send( query ) );
+
+            return id;
+        }
+    }
+
+    public void testLinesThatFailToStartGiveTheirSlotBack() throws Exception
+    {
+        File dnsfile = new File( directory, "domains" );
+        PrintWriter out = new PrintWriter( dnsfile, "US-ASCII" );
+
+        // many more failures than the window has slots
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            out.println( "broken" + i + ".example.com" );
+        }
+
+        out.println( "fine.example.com" );
+        out.close();
+
+        Resolver resolver = new Broken();
+        DNSCache cache = new DNSCache( DClass.IN );
+        final BulkRunner runner = new BulkRunner( dnsfile.getPath(), 2, new ListSink( new ArrayList<Object>() ), resolver, cache,
+            new NameServerCache( 10, resolver, cache ) );
+
+        Thread thread = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                runner.run();
+            }
+        } );
+
+        thread.setDaemon( true );
+        thread.start();
+        thread.join( 10000 );
+
+        assertFalse( "stuck waiting for a slot", thread.isAlive() );
+        assertTrue( runner.getStatus(), runner.getStatus().startsWith( "51 domains" ) );
+        assertTrue( runner.getStatus(), runner.getStatus().contains( " inflight=0 " ) );
+        assertEquals( 50, Files.readAllLines( new File( directory, "domains.err" ).toPath(), StandardCharsets.US_ASCII ).size() );
+        assertEquals( 2, Files.readAllLines( new File( directory, "domains.out" ).toPath(), StandardCharsets.US_ASCII ).size() );
+    }
+}
@@ -0,0 +1,94 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for Classifier.
+ */
+public class ClassifierTest
+    extends TestCase
+{
+    private File input;
+
+    public ClassifierTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ClassifierTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        input = File.createTempFile( "addresses", ".txt" );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        new File( input.getPath() + Classifier.OUTPUT ).delete();
+        input.delete();
+    }
+
+    public void testTagsEveryLineInOrder() throws IOException
+    {
+        NetworkTable table = new NetworkTable.Builder()
+            .add( "10.0.0.0/8", "outer" )
+            .add( "10.1.0.0/16", "inner" )
+            .build();
+        Writer writer = new FileWriter( input );
+
+        try
+        {
+            // enough lines that the file is cut into several chunks
+
+            for ( int i = 0; i < 400000; i++ )
+            {
+                writer.write( i % 3 == 0 ? "10.1." : i % 3 == 1 ? "10.2." : "11.0." );
+                writer.write( ( i / 256 ) % 256 + "." + i % 256 + "\r\n" );
+            }
+
+            writer.write( "\nnot an address\n10.1.2.3" );
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        Classifier classifier = new Classifier( input, table, 4 );
+
+        assertTrue( classifier.split().length > 2 );
+
+        classifier.run();
+
+        List<String> lines = Files.readAllLines( classifier.getOutput().toPath(), StandardCharsets.UTF_8 );
+
+        assertEquals( 400002, lines.size() );
+        assertEquals( "10.1.0.0\tinner", lines.get( 0 ) );
+        assertEquals( "10.2.0.1\touter", lines.get( 1 ) );
+        assertEquals( "11.0.0.2\t" + Classifier.UNKNOWN, lines.get( 2 ) );
+        assertEquals( "11.0.26.126\t" + Classifier.UNKNOWN, lines.get( 399998 ) );
+        assertEquals( "not an address\t" + Classifier.INVALID, lines.get( 400000 ) );
+        assertEquals( "10.1.2.3\tinner", lines.get( 400001 ) );
+
+        List<String> statistics = classifier.getStatistics();
+
+        assertTrue( statistics.contains( "inner\t133335" ) );
+        assertTrue( statistics.contains( "outer\t133333" ) );
+        assertTrue( statistics.contains( Classifier.UNKNOWN + "\t133333" ) );
+        assertTrue( statistics.contains( Classifier.INVALID + "\t1" ) );
+    }
+}
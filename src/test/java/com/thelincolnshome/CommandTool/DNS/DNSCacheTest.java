@@ -0,0 +1,207 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.net.InetAddress;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SetResponse;
+import org.xbill.DNS.Type;
+
+/**
+ * Unit test for DNSCache, filled the way AsyncLookup fills it, from whole
+ * responses.
+ */
+public class DNSCacheTest
+    extends TestCase
+{
+    private static final Name ZONE = name( "example.test." );
+
+    private DNSCache cache;
+
+    public DNSCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( DNSCacheTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        cache = new DNSCache( DClass.IN );
+    }
+
+    private static Name name( String name )
+    {
+        try
+        {
+            return Name.fromString( name );
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalArgumentException( e );
+        }
+    }
+
+    private static Message response( String name, int rcode ) throws Exception
+    {
+        Message response = Message.newQuery( Record.newRecord( name( name ), Type.A, DClass.IN ) );
+
+        response.getHeader().setFlag( Flags.QR );
+        response.getHeader().setFlag( Flags.AA );
+        response.getHeader().setRcode( rcode );
+
+        return response;
+    }
+
+    private static Message answer( String name, long ttl ) throws Exception
+    {
+        Message response = response( name, Rcode.NOERROR );
+
+        response.addRecord( new ARecord( name( name ), DClass.IN, ttl, InetAddress.getByName( "192.0.2.1" ) ), Section.ANSWER );
+
+        return response;
+    }
+
+    /**
+     * A negative answer for the name, with an SOA whose own TTL and minimum
+     * are given.
+     */
+    private static Message negative( String name, int rcode, long ttl, long minimum ) throws Exception
+    {
+        Message response = response( name, rcode );
+
+        response.addRecord( new SOARecord( ZONE, DClass.IN, ttl, name( "ns.example.test." ), name( "admin.example.test." ),
+            1, 3600, 600, 86400, minimum ), Section.AUTHORITY );
+
+        return response;
+    }
+
+    public void testAnswerIsFound() throws Exception
+    {
+        cache.addMessage( answer( "www.example.test.", 3600 ) );
+
+        SetResponse response = cache.find( name( "www.example.test." ), Type.A );
+
+        assertTrue( response.isSuccessful() );
+        assertEquals( 1, DNSCache.getRecords( response ).size() );
+        assertEquals( "192.0.2.1", ( (ARecord) DNSCache.getRecords( response ).get( 0 ) ).getAddress().getHostAddress() );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 0, cache.getMisses() );
+    }
+
+    public void testAnswerExpiresWithItsTTL() throws Exception
+    {
+        cache.addMessage( answer( "short.example.test.", 2 ) );
+        cache.addMessage( answer( "long.example.test.", 3600 ) );
+
+        assertTrue( cache.find( name( "short.example.test." ), Type.A ).isSuccessful() );
+
+        // the cache counts whole seconds
+
+        Thread.sleep( 2100 );
+
+        assertFalse( cache.find( name( "short.example.test." ), Type.A ).isSuccessful() );
+        assertTrue( cache.find( name( "long.example.test." ), Type.A ).isSuccessful() );
+        assertEquals( 2, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    public void testNegativeAnswersAreCached() throws Exception
+    {
+        cache.addMessage( negative( "gone.example.test.", Rcode.NXDOMAIN, 3600, 300 ) );
+        cache.addMessage( negative( "www.example.test.", Rcode.NOERROR, 3600, 300 ) );
+
+        assertTrue( cache.find( name( "gone.example.test." ), Type.A ).isNXDOMAIN() );
+        assertTrue( cache.find( name( "gone.example.test." ), Type.MX ).isNXDOMAIN() );
+        assertTrue( cache.find( name( "www.example.test." ), Type.A ).isNXRRSET() );
+        assertFalse( cache.find( name( "www.example.test." ), Type.MX ).isNXRRSET() );
+
+        assertEquals( 0, cache.getHits() );
+        assertEquals( 3, cache.getNegativeHits() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    public void testNegativeAnswerLastsTheLesserOfTheSOATTLAndMinimum() throws Exception
+    {
+        // RFC 2308 section 5: a zero either way means it is not kept at all
+
+        cache.addMessage( negative( "a.example.test.", Rcode.NXDOMAIN, 3600, 0 ) );
+        cache.addMessage( negative( "b.example.test.", Rcode.NXDOMAIN, 0, 3600 ) );
+        cache.addMessage( negative( "c.example.test.", Rcode.NXDOMAIN, 3600, 3600 ) );
+
+        assertFalse( cache.find( name( "a.example.test." ), Type.A ).isNXDOMAIN() );
+        assertFalse( cache.find( name( "b.example.test." ), Type.A ).isNXDOMAIN() );
+        assertTrue( cache.find( name( "c.example.test." ), Type.A ).isNXDOMAIN() );
+        assertEquals( 1, cache.getNegativeHits() );
+        assertEquals( 2, cache.getMisses() );
+    }
+
+    public void testLeastRecentlyUsedNameIsEvicted() throws Exception
+    {
+        cache.setMaxEntries( 2 );
+
+        cache.addMessage( answer( "a.example.test.", 3600 ) );
+        cache.addMessage( answer( "b.example.test.", 3600 ) );
+
+        // a is used again, so b is the one to go
+
+        assertTrue( cache.find( name( "a.example.test." ), Type.A ).isSuccessful() );
+
+        cache.addMessage( answer( "c.example.test.", 3600 ) );
+
+        assertEquals( 2, cache.getSize() );
+        assertTrue( cache.find( name( "a.example.test." ), Type.A ).isSuccessful() );
+        assertFalse( cache.find( name( "b.example.test." ), Type.A ).isSuccessful() );
+        assertTrue( cache.find( name( "c.example.test." ), Type.A ).isSuccessful() );
+    }
+
+    public void testCNAMEIsAMiss() throws Exception
+    {
+        Message response = response( "alias.example.test.", Rcode.NOERROR );
+
+        response.addRecord( new CNAMERecord( name( "alias.example.test." ), DClass.IN, 3600, name( "www.other.test." ) ), Section.ANSWER );
+        cache.addMessage( response );
+
+        SetResponse found = cache.find( name( "alias.example.test." ), Type.A );
+
+        assertTrue( found.isCNAME() );
+        assertTrue( DNSCache.getRecords( found ).isEmpty() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    public void testCounters() throws Exception
+    {
+        cache.addMessage( answer( "www.example.test.", 3600 ) );
+        cache.addMessage( negative( "gone.example.test.", Rcode.NXDOMAIN, 3600, 300 ) );
+
+        cache.find( name( "www.example.test." ), Type.A );
+        cache.find( name( "www.example.test." ), Type.A );
+        cache.find( name( "gone.example.test." ), Type.A );
+        cache.find( name( "unknown.example.test." ), Type.A );
+
+        assertEquals( 2, cache.getHits() );
+        assertEquals( 1, cache.getNegativeHits() );
+        assertEquals( 1, cache.getMisses() );
+        assertTrue( cache.getStatistics(), cache.getStatistics().endsWith( " hits=2 negative=1 misses=1 ratio=75%" ) );
+
+        cache.resetCounters();
+
+        assertTrue( cache.getStatistics(), cache.getStatistics().endsWith( " hits=0 negative=0 misses=0 ratio=0%" ) );
+    }
+}
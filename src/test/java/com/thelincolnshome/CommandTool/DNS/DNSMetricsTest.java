@@ -0,0 +1,123 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Type;
+
+/**
+ * Unit test for DNSMetrics, on a clock of its own.
+ */
+public class DNSMetricsTest
+    extends TestCase
+{
+    /** Read by the constructor too, before any field of the subclass is set. */
+    private static long clock = 0;
+
+    private DNSMetrics metrics;
+
+    public DNSMetricsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( DNSMetricsTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        clock = 0;
+
+        metrics = new DNSMetrics()
+        {
+            @Override
+            long now()
+            {
+                return clock;
+            }
+        };
+    }
+
+    private void start( int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            metrics.started();
+            metrics.answered( Type.A, Rcode.NOERROR, 1000000L );
+        }
+    }
+
+    private String summary()
+    {
+        return metrics.getStatistics().get( 0 );
+    }
+
+    public void testReadingTheRateChangesNothing()
+    {
+        start( 30 );
+        clock = 1000;
+        start( 50 );
+        clock = 2500;
+
+        assertEquals( 40, metrics.getRate() );
+        assertEquals( "queries=80 qps=40 inflight=0 failed=0 uptime=2s", summary() );
+        assertEquals( "queries=80 qps=40 inflight=0 failed=0 uptime=2s", summary() );
+        assertEquals( 40, metrics.getRate() );
+    }
+
+    public void testRateCoversOnlyTheLastWholeSeconds()
+    {
+        // the second still going is left out until it is over
+
+        start( 10 );
+        assertEquals( 0, metrics.getRate() );
+
+        for ( int second = 1; second < 30; second++ )
+        {
+            clock = second * 1000L;
+            start( second < 15 ? 100 : 20 );
+        }
+
+        clock = 30000;
+
+        assertEquals( 20, metrics.getRate() );
+
+        clock = 45000;
+
+        assertEquals( 0, metrics.getRate() );
+    }
+
+    public void testRateIsAveragedOverTheSecondsThereHaveBeen()
+    {
+        start( 60 );
+        clock = 3000;
+
+        assertEquals( 20, metrics.getRate() );
+    }
+
+    public void testResetStartsTheRateAgain()
+    {
+        start( 100 );
+        clock = 1000;
+        start( 100 );
+        clock = 1500;
+        metrics.reset();
+        start( 7 );
+        clock = 2000;
+
+        // nothing whole since the reset yet
+
+        assertEquals( 0, metrics.getRate() );
+
+        start( 30 );
+        clock = 3000;
+
+        assertEquals( 30, metrics.getRate() );
+        assertEquals( 37, metrics.getQueries() );
+    }
+}
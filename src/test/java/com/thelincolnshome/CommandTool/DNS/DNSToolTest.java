@@ -0,0 +1,199 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+
+/**
+ * Unit test for DNSTool.
+ */
+public class DNSToolTest
+    extends TestCase
+{
+    public DNSToolTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( DNSToolTest.class );
+    }
+
+    /**
+     * Says no name exists, without going near the network.
+     */
+    private static class Nothing implements Resolver
+    {
+        public void setPort( int port )
+        {
+        }
+
+        public void setTCP( boolean flag )
+        {
+        }
+
+        public void setIgnoreTruncation( boolean flag )
+        {
+        }
+
+        public void setEDNS( int level )
+        {
+        }
+
+        @SuppressWarnings( "rawtypes" )
+        public void setEDNS( int level, int payloadSize, int flags, List options )
+        {
+        }
+
+        public void setTSIGKey( TSIG key )
+        {
+        }
+
+        public void setTimeout( int secs, int msecs )
+        {
+        }
+
+        public void setTimeout( int secs )
+        {
+        }
+
+        public Message send( Message query )
+        {
+            Message response = new Message( query.getHeader().getID() );
+
+            response.getHeader().setFlag( Flags.QR );
+            response.getHeader().setRcode( Rcode.NXDOMAIN );
+            response.addRecord( query.getQuestion(), Section.QUESTION );
+
+            return response;
+        }
+
+        public Object sendAsync( Message query, ResolverListener listener )
+        {
+            Object id = new Object();
+
+            listener.receiveMessage( id, send( query ) );
+
+            return id;
+        }
+    }
+
+    /**
+     * The rows a run of that many domains leaves in a result list.
+     */
+    private static int runRows( File directory, int domains ) throws Exception
+    {
+        File dnsfile = new File( directory, "domains" + domains );
+        PrintWriter out = new PrintWriter( dnsfile, "US-ASCII" );
+
+        for ( int i = 0; i < domains; i++ )
+        {
+            out.println( "d" + i + ".example.com" );
+        }
+
+        out.close();
+
+        DNSTool tool = new DNSTool();
+        List<Object> result = new ArrayList<Object>();
+
+        tool.parseInput( "-dnsfile " + dnsfile.getPath() + " -threads 4", new ArrayList<Object>() );
+        tool.parseInput( "-run", result );
+
+        assertTrue( result.toString(), result.get( result.size() - 1 ).toString().startsWith( domains + " domains" ) );
+
+        return result.size();
+    }
+
+    public void testListResultDoesNotGrowWithTheDnsfile() throws Exception
+    {
+        Resolver shared = Lookup.getDefaultResolver();
+        File directory = Files.createTempDirectory( "DNSToolTest" ).toFile();
+
+        Lookup.setDefaultResolver( new Nothing() );
+
+        try
+        {
+            assertEquals( runRows( directory, 10 ), runRows( directory, 500 ) );
+        }
+        finally
+        {
+            Lookup.setDefaultResolver( shared );
+
+            for ( File file : directory.listFiles() )
+            {
+                file.delete();
+            }
+
+            directory.delete();
+        }
+    }
+
+    public void testNameserversArePerParser() throws Exception
+    {
+        Resolver shared = Lookup.getDefaultResolver();
+        DNSTool one = new DNSTool();
+        DNSTool two = new DNSTool();
+
+        try
+        {
+            one.setNameserver( "127.0.0.1" );
+            Resolver first = one.getResolver();
+
+            one.setNameserver( "127.0.0.2 127.0.0.3" );
+
+            assertNotSame( first, one.getResolver() );
+            assertEquals( "127.0.0.2 127.0.0.3", one.getNameserver() );
+
+            assertSame( shared, Lookup.getDefaultResolver() );
+            assertSame( shared, two.getResolver() );
+            assertEquals( DNSTool.DEFAULT_NAMESERVERS, two.getNameserver() );
+
+            // and the answers of those nameservers stay with them
+
+            assertNotSame( DNSCache.getDefault(), one.getCache() );
+            assertNotSame( NameServerCache.getDefault(), one.getNameServerCache() );
+            assertSame( DNSCache.getDefault(), two.getCache() );
+            assertSame( NameServerCache.getDefault(), two.getNameServerCache() );
+        }
+        finally
+        {
+            one.close();
+            two.close();
+        }
+    }
+
+    public void testHedgingIsPerParser() throws Exception
+    {
+        Resolver shared = Lookup.getDefaultResolver();
+        DNSTool one = new DNSTool();
+
+        try
+        {
+            one.parseInput( "-hedge on", new ArrayList<Object>() );
+
+            assertNotSame( shared, one.getResolver() );
+            assertTrue( ( (BalancedResolver) one.getResolver() ).isHedging() );
+            assertSame( shared, Lookup.getDefaultResolver() );
+        }
+        finally
+        {
+            one.close();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.NSRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+import org.xbill.DNS.Type;
+
+/**
+ * Unit test for how Domain fans its queries out and gathers them in,
+ * against a stub resolver.
+ */
+public class DomainTest
+    extends TestCase
+{
+    private Stub resolver;
+    private DNSCache cache;
+    private NameServerCache nameServerCache;
+
+    public DomainTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( DomainTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        resolver = new Stub();
+        cache = new DNSCache( DClass.IN );
+        nameServerCache = new NameServerCache( 10, resolver, cache );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        resolver.executor.shutdownNow();
+    }
+
+    /**
+     * Knows hosted.example.com, with two nameservers, bare.example.com, with
+     * none, and shared.example.net, with one of hosted.example.com's. Every
+     * name has an address. Answers from another thread after a short random
+     * wait when delayed, or else at once, and notes each question it answered.
+     */
+    private static class Stub implements Resolver
+    {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final List<String> answered = new ArrayList<String>();
+        final Random random = new Random( 7 );
+
+        volatile boolean delayed = false;
+
+        public void setPort( int port )
+        {
+        }
+
+        public void setTCP( boolean flag )
+        {
+        }
+
+        public void setIgnoreTruncation( boolean flag )
+        {
+        }
+
+        public void setEDNS( int level )
+        {
+        }
+
+        @SuppressWarnings( "rawtypes" )
+        public void setEDNS( int level, int payloadSize, int flags, List options )
+        {
+        }
+
+        public void setTSIGKey( TSIG key )
+        {
+        }
+
+        public void setTimeout( int secs, int msecs )
+        {
+        }
+
+        public void setTimeout( int secs )
+        {
+        }
+
+        public Message send( Message query )
+        {
+            Record question = query.getQuestion();
+            Name name = question.getName();
+            Message response = new Message( query.getHeader().getID() );
+
+            response.getHeader().setFlag( Flags.QR );
+            response.addRecord( question, Section.QUESTION );
+
+            try
+            {
+                if ( question.getType() == Type.A )
+                {
+                    response.addRecord( new ARecord( name, DClass.IN, 60, InetAddress.getByName( "192.0.2.1" ) ), Section.ANSWER );
+                }
+                else if ( "hosted.example.com.".equals( name.toString() ) )
+                {
+                    response.addRecord( new NSRecord( name, DClass.IN, 60, Name.fromString( "ns1.hosted.example.com." ) ), Section.ANSWER );
+                    response.addRecord( new NSRecord( name, DClass.IN, 60, Name.fromString( "ns2.hosted.example.com." ) ), Section.ANSWER );
+                }
+                else if ( "shared.example.net.".equals( name.toString() ) )
+                {
+                    response.addRecord( new NSRecord( name, DClass.IN, 60, Name.fromString( "ns1.hosted.example.com." ) ), Section.ANSWER );
+                }
+            }
+            catch ( Exception e )
+            {
+                throw new AssertionError( e );
+            }
+
+            synchronized ( answered )
+            {
+                answered.add( name + " " + Type.string( question.getType() ) );
+            }
+
+            return response;
+        }
+
+        public Object sendAsync( final Message query, final ResolverListener listener )
+        {
+            final Object id = new Object();
+
+            if ( !delayed )
+            {
+                listener.receiveMessage( id, send( query ) );
+
+                return id;
+            }
+
+            final int wait = random.nextInt( 20 );
+
+            executor.execute( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep( wait );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+
+                    listener.receiveMessage( id, send( query ) );
+                }
+            } );
+
+            return id;
+        }
+
+        List<String> getAnswered()
+        {
+            synchronized ( answered )
+            {
+                return new ArrayList<String>( answered );
+            }
+        }
+    }
+
+    /**
+     * Counts its calls and notes what had been answered by the first.
+     */
+    private static class Counting implements Domain.Listener
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final Stub resolver;
+
+        volatile List<String> answered;
+
+        Counting( Stub resolver )
+        {
+            this.resolver = resolver;
+        }
+
+        public void domainResolved( Domain domain )
+        {
+            if ( calls.incrementAndGet() == 1 )
+            {
+                answered = resolver.getAnswered();
+            }
+
+            done.countDown();
+        }
+    }
+
+    private Counting resolve( String hostname ) throws Exception
+    {
+        Counting listener = new Counting( resolver );
+
+        new Domain( hostname, resolver, cache, nameServerCache ).resolve( listener );
+
+        assertTrue( listener.done.await( 5, TimeUnit.SECONDS ) );
+
+        // long enough for a second call to show up
+
+        Thread.sleep( 100 );
+
+        assertEquals( 1, listener.calls.get() );
+
+        return listener;
+    }
+
+    private static void assertAnswered( List<String> answered, String... expected )
+    {
+        assertEquals( new HashSet<String>( Arrays.asList( expected ) ), new HashSet<String>( answered ) );
+        assertEquals( answered.toString(), expected.length, answered.size() );
+    }
+
+    public void testCompletesOnceEverythingHasAnswered() throws Exception
+    {
+        resolver.delayed = true;
+
+        Counting listener = resolve( "hosted.example.com" );
+
+        assertAnswered( listener.answered, "hosted.example.com. A", "hosted.example.com. NS", "ns1.hosted.example.com. A", "ns2.hosted.example.com. A" );
+    }
+
+    public void testCompletesWhenAnsweredAtOnce() throws Exception
+    {
+        Counting listener = resolve( "hosted.example.com" );
+
+        assertAnswered( listener.answered, "hosted.example.com. A", "hosted.example.com. NS", "ns1.hosted.example.com. A", "ns2.hosted.example.com. A" );
+    }
+
+    public void testCompletesWithoutNameServers() throws Exception
+    {
+        resolver.delayed = true;
+
+        Counting listener = resolve( "bare.example.com" );
+
+        assertAnswered( listener.answered, "bare.example.com. A", "bare.example.com. NS" );
+    }
+
+    public void testCompletesWithoutNameServersAnsweredAtOnce() throws Exception
+    {
+        Counting listener = resolve( "bare.example.com" );
+
+        assertAnswered( listener.answered, "bare.example.com. A", "bare.example.com. NS" );
+    }
+
+    public void testCachedNameServerCompletesAtOnce() throws Exception
+    {
+        resolver.delayed = true;
+
+        resolve( "hosted.example.com" );
+
+        Counting listener = resolve( "shared.example.net" );
+
+        // ns1 came from the nameserver cache, not another query
+
+        assertEquals( 6, listener.answered.size() );
+        assertTrue( listener.answered.containsAll( Arrays.asList( "shared.example.net. A", "shared.example.net. NS" ) ) );
+    }
+
+    public void testGettersDoNotQueryAgain() throws Exception
+    {
+        resolver.delayed = true;
+
+        Counting listener = new Counting( resolver );
+        Domain domain = new Domain( "hosted.example.com", resolver, cache, nameServerCache );
+
+        domain.resolve( listener );
+
+        assertTrue( listener.done.await( 5, TimeUnit.SECONDS ) );
+
+        int answered = resolver.getAnswered().size();
+
+        assertEquals( "192.0.2.1", domain.getARecords().get( 0 ).toString() );
+        assertEquals( new HashSet<String>( Arrays.asList( "ns1.hosted.example.com.", "ns2.hosted.example.com." ) ),
+            new HashSet<String>( domain.getNameServers() ) );
+        assertFalse( domain.isStoresOnlineNameServers() );
+        assertEquals( answered, resolver.getAnswered().size() );
+        assertEquals( 0, domain.getTimeouts() );
+        assertEquals( 0, domain.getServerFailures() );
+    }
+}
@@ -0,0 +1,191 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for IPv4RangeSet.
+ */
+public class IPv4RangeSetTest
+    extends TestCase
+{
+    public IPv4RangeSetTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( IPv4RangeSetTest.class );
+    }
+
+    private static IPv4RangeSet set( String... networks )
+    {
+        IPv4RangeSet.Builder builder = new IPv4RangeSet.Builder();
+
+        for ( String network : networks )
+        {
+            builder.add( network );
+        }
+
+        return builder.build();
+    }
+
+    public void testBuildMergesOverlappingAndTouching()
+    {
+        IPv4RangeSet set = set( "10.0.1.0/24", "10.0.0.0/24", "10.0.0.128/25", "192.168.0.1" );
+
+        assertEquals( 2, set.size() );
+        assertEquals( "[10.0.0.0-10.0.1.255, 192.168.0.1]", set.toString() );
+        assertEquals( 513, set.getAddressCount() );
+        assertTrue( set.contains( IPv4.quadToLong( "10.0.1.255" ) ) );
+        assertFalse( set.contains( IPv4.quadToLong( "10.0.2.0" ) ) );
+        assertTrue( set.contains( new IPv4( "10.0.0.0/23" ) ) );
+        assertFalse( set.contains( new IPv4( "10.0.0.0/22" ) ) );
+    }
+
+    public void testBadNetworkIsRejected()
+    {
+        for ( String network : new String[] { "foo", "256.0.0.1", "10.0.0.0/x" } )
+        {
+            try
+            {
+                new IPv4RangeSet.Builder().add( network );
+                fail( network );
+            }
+            catch ( IllegalArgumentException e )
+            {
+            }
+        }
+    }
+
+    public void testAlgebra()
+    {
+        IPv4RangeSet provider = set( "10.0.0.0/8", "172.16.0.0/12" );
+        IPv4RangeSet ours = set( "10.1.0.0/16", "10.3.0.0/16", "172.31.255.0/24", "192.168.0.0/16" );
+
+        assertEquals( set( "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16" ), provider.union( ours ) );
+        assertEquals( set( "10.1.0.0/16", "10.3.0.0/16", "172.31.255.0/24" ), provider.intersection( ours ) );
+        assertEquals( set( "192.168.0.0/16" ), ours.difference( provider ) );
+
+        IPv4RangeSet rest = provider.difference( ours );
+
+        assertFalse( rest.contains( IPv4.quadToLong( "10.1.2.3" ) ) );
+        assertTrue( rest.contains( IPv4.quadToLong( "10.2.2.3" ) ) );
+        assertTrue( rest.contains( IPv4.quadToLong( "172.31.254.255" ) ) );
+        assertEquals( provider.getAddressCount() - 2 * 65536 - 256, rest.getAddressCount() );
+        assertEquals( IPv4RangeSet.ALL, provider.union( provider.complement() ) );
+        assertTrue( provider.intersection( provider.complement() ).isEmpty() );
+    }
+
+    public void testMinimalCidrCover()
+    {
+        IPv4RangeSet set = new IPv4RangeSet.Builder()
+            .add( IPv4.quadToLong( "10.0.0.1" ), IPv4.quadToLong( "10.0.0.6" ) )
+            .build();
+
+        List<IPv4> cidrs = set.toCidrs();
+
+        assertEquals( "[10.0.0.1, 10.0.0.2/31, 10.0.0.4/31, 10.0.0.6]", cidrs.toString() );
+    }
+
+    public void testAllIsOneBlock()
+    {
+        List<IPv4> cidrs = IPv4RangeSet.ALL.toCidrs();
+
+        assertEquals( 1, cidrs.size() );
+        assertEquals( 0, cidrs.get( 0 ).getCIDR() );
+        assertEquals( 0, cidrs.get( 0 ).getNetworkAddr() );
+        assertEquals( IPv4.ADDRESS_MASK, cidrs.get( 0 ).getBroadcastAddr() );
+        assertEquals( "[0.0.0.0/0]", cidrs.toString() );
+        assertEquals( new IPv4( "0.0.0.0/0" ), cidrs.get( 0 ) );
+        assertTrue( cidrs.get( 0 ).includes( IPv4.quadToLong( "203.0.113.9" ) ) );
+
+        // the bottom half still splits from the top
+
+        IPv4RangeSet most = new IPv4RangeSet.Builder().add( 0, IPv4.ADDRESS_MASK - 1 ).build();
+
+        assertEquals( 32, most.toCidrs().size() );
+        assertEquals( "0.0.0.0/1", most.toCidrs().get( 0 ).toString() );
+    }
+
+    public void testMatchesBitmapAtRandom()
+    {
+        Random random = new Random( 7 );
+        boolean[] left = new boolean[4096];
+        boolean[] right = new boolean[4096];
+        IPv4RangeSet.Builder a = new IPv4RangeSet.Builder();
+        IPv4RangeSet.Builder b = new IPv4RangeSet.Builder();
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            int first = random.nextInt( 4000 );
+            int last = first + random.nextInt( 40 );
+            boolean[] bits = ( i % 2 == 0 ) ? left : right;
+
+            ( i % 2 == 0 ? a : b ).add( first, last );
+
+            for ( int k = first; k <= last; k++ )
+            {
+                bits[k] = true;
+            }
+        }
+
+        IPv4RangeSet x = a.build();
+        IPv4RangeSet y = b.build();
+        IPv4RangeSet union = x.union( y );
+        IPv4RangeSet intersection = x.intersection( y );
+        IPv4RangeSet difference = x.difference( y );
+
+        for ( int k = 0; k < 4096; k++ )
+        {
+            assertEquals( left[k] || right[k], union.contains( k ) );
+            assertEquals( left[k] && right[k], intersection.contains( k ) );
+            assertEquals( left[k] && !right[k], difference.contains( k ) );
+        }
+
+        IPv4RangeSet.Builder cover = new IPv4RangeSet.Builder();
+
+        for ( IPv4 block : difference.toCidrs() )
+        {
+            cover.add( block );
+        }
+
+        assertEquals( difference, cover.build() );
+    }
+
+    public void testAddressStreams()
+    {
+        IPv4 block = new IPv4( "10.0.0.0/8" );
+        long first = block.getNetworkAddr();
+        long last = block.getBroadcastAddr();
+
+        assertEquals( 1L << 24, block.addresses().parallel().count() );
+        assertEquals( ( first + last ) * ( 1L << 24 ) / 2, block.addresses().parallel().sum() );
+
+        IPv4RangeSet set = set( "10.0.0.0/24", "10.0.2.0/23", "192.168.1.7", "172.16.0.0/16" );
+        long[] sequential = set.addresses().toArray();
+        long[] parallel = set.addresses().parallel().toArray();
+
+        assertEquals( set.getAddressCount(), sequential.length );
+        assertTrue( Arrays.equals( sequential, parallel ) );
+        assertEquals( IPv4.quadToLong( "10.0.0.255" ), sequential[ 255 ] );
+        assertEquals( IPv4.quadToLong( "10.0.2.0" ), sequential[ 256 ] );
+        assertEquals( IPv4.quadToLong( "192.168.1.7" ), sequential[ sequential.length - 1 ] );
+        assertEquals( 0, IPv4RangeSet.EMPTY.addresses().count() );
+
+        // halves by address count, whatever the intervals
+
+        Spliterator.OfLong upper = set.spliterator();
+        Spliterator.OfLong lower = upper.trySplit();
+
+        assertEquals( set.getAddressCount() / 2, lower.estimateSize() );
+        assertEquals( set.getAddressCount() - set.getAddressCount() / 2, upper.estimateSize() );
+    }
+}
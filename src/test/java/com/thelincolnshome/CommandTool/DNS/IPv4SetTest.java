@@ -0,0 +1,95 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the primitive IPv4 collections.
+ */
+public class IPv4SetTest
+    extends TestCase
+{
+    public IPv4SetTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( IPv4SetTest.class );
+    }
+
+    public void testSetAgainstHashSet()
+    {
+        Random random = new Random( 7 );
+        IPv4Set set = new IPv4Set();
+        HashSet<Integer> expected = new HashSet<Integer>();
+
+        // a small range so adds and removes collide often
+
+        for ( int i = 0; i < 200000; i++ )
+        {
+            int address = random.nextInt( 5000 ) - 100;
+
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( address ), set.remove( address ) );
+            }
+            else
+            {
+                assertEquals( expected.add( address ), set.add( address ) );
+            }
+        }
+
+        assertEquals( expected.size(), set.size() );
+
+        for ( int address = -100; address < 4900; address++ )
+        {
+            assertEquals( expected.contains( address ), set.contains( address ) );
+        }
+
+        assertEquals( expected.size(), set.toArray().length );
+    }
+
+    public void testMap()
+    {
+        IPv4Map<String> map = new IPv4Map<String>();
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertNull( map.put( i, "v" + i ) );
+        }
+
+        assertEquals( "v0", map.get( 0 ) );
+        assertEquals( "v999", map.put( 999, "w" ) );
+        assertEquals( "v500", map.remove( 500 ) );
+        assertNull( map.get( 500 ) );
+        assertEquals( 999, map.size() );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( i != 500, map.containsKey( i ) );
+        }
+    }
+
+    public void testListAndValueEquality()
+    {
+        IPv4List list = new IPv4List();
+        list.add( new IPv4( "10.1.2.8" ) );
+        list.addInt( (int) IPv4.quadToLong( "255.255.255.255" ) );
+
+        assertEquals( 2, list.size() );
+        assertEquals( new IPv4( "10.1.2.8" ), list.get( 0 ) );
+        assertEquals( "255.255.255.255", list.get( 1 ).toString() );
+        assertEquals( new IPv4( "10.1.2.8" ).hashCode(), list.get( 0 ).hashCode() );
+
+        // a /32 and a /0 print the same, so they are equal as before
+
+        assertEquals( new IPv4( "10.1.2.8/32" ), new IPv4( "10.1.2.8" ) );
+        assertFalse( new IPv4( "10.1.2.0/24" ).equals( new IPv4( "10.1.2.0" ) ) );
+    }
+}
@@ -0,0 +1,123 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for IPv4.
+ */
+public class IPv4Test
+    extends TestCase
+{
+    public IPv4Test( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( IPv4Test.class );
+    }
+
+    public void testParseQuad()
+    {
+        assertEquals( 0x0A010208L, IPv4.parseQuad( "10.1.2.8" ) );
+        assertEquals( 0xFFFFFFFFL, IPv4.parseQuad( "255.255.255.255" ) );
+        assertEquals( 0x0A010208L, IPv4.parseQuad( "x 10.1.2.8 y", 2, 10 ) );
+
+        byte[] line = "host 208.187.218.5 ok".getBytes();
+        assertEquals( 0xD0BBDA05L, IPv4.parseQuad( line, 5, 18 ) );
+    }
+
+    public void testParseQuadErrors()
+    {
+        assertEquals( IPv4.INVALID_EMPTY, IPv4.parseQuad( "" ) );
+        assertEquals( IPv4.INVALID_CHARACTER, IPv4.parseQuad( "10.1.2.x" ) );
+        assertEquals( IPv4.INVALID_OCTET, IPv4.parseQuad( "10.1.256.8" ) );
+        assertEquals( IPv4.INVALID_PARTS, IPv4.parseQuad( "10.1.2" ) );
+        assertEquals( IPv4.INVALID_PARTS, IPv4.parseQuad( "10.1.2.3.4" ) );
+        assertEquals( IPv4.INVALID_EMPTY_OCTET, IPv4.parseQuad( "10..2.3" ) );
+        assertEquals( IPv4.INVALID_EMPTY_OCTET, IPv4.parseQuad( "10.1.2." ) );
+    }
+
+    public void testAppendQuad()
+    {
+        long[] addresses = { 0, 0x0A010208L, 0x6466C80AL, 0xFFFFFFFFL };
+
+        for ( long address : addresses )
+        {
+            String quad = IPv4.appendQuad( new StringBuilder(), address ).toString();
+
+            assertEquals( address, IPv4.parseQuad( quad ) );
+
+            ByteBuffer buffer = ByteBuffer.allocate( 15 );
+            IPv4.appendQuad( buffer, address );
+
+            assertEquals( quad, new String( buffer.array(), 0, buffer.position() ) );
+        }
+    }
+
+    public void testBlock()
+    {
+        IPv4 block = new IPv4( " 208.187.218.0 / 24 " );
+
+        assertEquals( 24, block.getCIDR() );
+        assertEquals( "208.187.218.0/24", block.toString() );
+        assertTrue( block.includes( IPv4.quadToLong( "208.187.218.77" ) ) );
+    }
+
+    public void testWholeSpace()
+    {
+        IPv4 all = new IPv4( "0.0.0.0/0" );
+
+        assertEquals( 0, all.getCIDR() );
+        assertEquals( 0, all.getNetworkAddr() );
+        assertEquals( 0xFFFFFFFFL, all.getBroadcastAddr() );
+        assertEquals( all, IPv4.valueOf( 0x0A000001L, 0 ) );
+        assertEquals( "0.0.0.0/0", IPv4.valueOf( 0x0A000001L, 0 ).toString() );
+    }
+
+    public void testBadPrefixIsRejected()
+    {
+        for ( String network : new String[] { "10.0.0.0/", "10.0.0.0/ ", "10.0.0.0/ 2 4", "10.0.0.0/2 4", "10.0.0.0/24x",
+            "10.0.0.0/33", "10.0.0.0/-1", "10.0.0.0/100000000000" } )
+        {
+            try
+            {
+                new IPv4( network );
+                fail( network );
+            }
+            catch ( NumberFormatException e )
+            {
+            }
+        }
+    }
+
+    public void testBadAddressIsRejected()
+    {
+        for ( String network : new String[] { "", "foo", "10.0.0.300", "10.0.0", "10.0.0.0.0", "10. 0.0.0/8", "/8" } )
+        {
+            try
+            {
+                new IPv4( network );
+                fail( network );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                assertFalse( network, e instanceof NumberFormatException );
+            }
+        }
+
+        try
+        {
+            IPv4.parse( null );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for LatencyHistogram.
+ */
+public class LatencyHistogramTest
+    extends TestCase
+{
+    public LatencyHistogramTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LatencyHistogramTest.class );
+    }
+
+    public void testBucketsCoverEveryValue()
+    {
+        for ( long micros = 0; micros < 100000; micros++ )
+        {
+            int bucket = LatencyHistogram.bucket( micros );
+
+            assertTrue( LatencyHistogram.lowest( bucket ) <= micros );
+            assertTrue( LatencyHistogram.highest( bucket ) >= micros );
+        }
+    }
+
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            histogram.record( i * 1000000L );
+        }
+
+        assertEquals( 1000, histogram.getCount() );
+        assertEquals( 1000000, histogram.getMax() );
+
+        long p50 = histogram.getPercentile( 0.50 );
+        long p99 = histogram.getPercentile( 0.99 );
+
+        assertTrue( p50 >= 500000 && p50 < 500000 * 1.07 );
+        assertTrue( p99 >= 990000 && p99 <= 1000000 );
+    }
+}
@@ -0,0 +1,172 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+
+/**
+ * Unit test for NameServerCache.
+ */
+public class NameServerCacheTest
+    extends TestCase
+{
+    private final Resolver resolver = new Answering();
+
+    private long now = 1000000L;
+
+    private NameServerCache cache = new NameServerCache( 10, resolver, new DNSCache( DClass.IN ) )
+    {
+        @Override
+        long now()
+        {
+            return now;
+        }
+    };
+
+    public NameServerCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( NameServerCacheTest.class );
+    }
+
+    /**
+     * Answers every A query with 192.0.2.1 and a TTL of a minute, except for
+     * names starting with "missing", which do not exist.
+     */
+    private static class Answering implements Resolver
+    {
+        public void setPort( int port )
+        {
+        }
+
+        public void setTCP( boolean flag )
+        {
+        }
+
+        public void setIgnoreTruncation( boolean flag )
+        {
+        }
+
+        public void setEDNS( int level )
+        {
+        }
+
+        @SuppressWarnings( "rawtypes" )
+        public void setEDNS( int level, int payloadSize, int flags, List options )
+        {
+        }
+
+        public void setTSIGKey( TSIG key )
+        {
+        }
+
+        public void setTimeout( int secs, int msecs )
+        {
+        }
+
+        public void setTimeout( int secs )
+        {
+        }
+
+        public Message send( Message query )
+        {
+            Record question = query.getQuestion();
+            Message response = new Message( query.getHeader().getID() );
+
+            response.getHeader().setFlag( Flags.QR );
+            response.addRecord( question, Section.QUESTION );
+
+            if ( question.getName().toString().startsWith( "missing" ) )
+            {
+                response.getHeader().setRcode( Rcode.NXDOMAIN );
+            }
+            else
+            {
+                try
+                {
+                    InetAddress address = InetAddress.getByAddress( new byte[] { (byte) 192, 0, 2, 1 } );
+
+                    response.addRecord( new ARecord( question.getName(), DClass.IN, 60, address ), Section.ANSWER );
+                }
+                catch ( UnknownHostException e )
+                {
+                    throw new AssertionError( e );
+                }
+            }
+
+            return response;
+        }
+
+        public Object sendAsync( Message query, ResolverListener listener )
+        {
+            Object id = new Object();
+
+            listener.receiveMessage( id, send( query ) );
+
+            return id;
+        }
+    }
+
+    public void testAddressExpiresWithItsRecord() throws Exception
+    {
+        assertEquals( "192.0.2.1", cache.getAddress( "ns1.ttl.test" ).toString() );
+
+        now += 59 * 1000;
+        cache.getAddress( "ns1.ttl.test" );
+
+        assertTrue( cache.getStatistics(), cache.getStatistics().endsWith( " hits=1 misses=1" ) );
+
+        now += 1000;
+        cache.getAddress( "ns1.ttl.test" );
+
+        assertTrue( cache.getStatistics(), cache.getStatistics().endsWith( " hits=1 misses=2" ) );
+    }
+
+    public void testNoSuchHostExpires() throws Exception
+    {
+        for ( int i = 0; i < 3; i++ )
+        {
+            try
+            {
+                cache.getAddress( "missing.ttl.test" );
+                fail();
+            }
+            catch ( UnknownHostException e )
+            {
+            }
+
+            now += i == 0 ? NameServerCache.NEGATIVE_TTL * 1000 - 1 : 1;
+        }
+
+        assertTrue( cache.getStatistics(), cache.getStatistics().endsWith( " hits=1 misses=2" ) );
+    }
+
+    public void testAddressesNeverExpire() throws Exception
+    {
+        cache.getAddress( "192.0.2.7" );
+
+        now = Long.MAX_VALUE - 1;
+
+        assertEquals( "192.0.2.7", cache.getAddress( "192.0.2.7" ).toString() );
+        assertTrue( cache.getStatistics(), cache.getStatistics().endsWith( " hits=1 misses=1" ) );
+    }
+}
@@ -0,0 +1,167 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for NetworkFile.
+ */
+public class NetworkFileTest
+    extends TestCase
+{
+    private File source;
+
+    public NetworkFileTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( NetworkFileTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        source = File.createTempFile( "providers", ".txt" );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        new File( source.getPath() + NetworkFile.COMPILED ).delete();
+        source.delete();
+    }
+
+    private void write( String text ) throws IOException
+    {
+        Writer writer = new FileWriter( source );
+
+        try
+        {
+            writer.write( text );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    public void testCompiledMatchesText() throws IOException
+    {
+        write( "# providers\n10.0.0.0/8\n\n[inner]\n10.1.0.0/16 # nested\n192.168.0.0/24 other\n" );
+
+        NetworkFile file = new NetworkFile( source );
+        NetworkTable table = file.load();
+        String name = source.getName().substring( 0, source.getName().length() - 4 );
+
+        assertTrue( file.getCompiled().isFile() );
+        assertEquals( name, table.lookup( IPv4.quadToLong( "10.0.0.1" ) ) );
+        assertEquals( "inner", table.lookup( IPv4.quadToLong( "10.1.2.3" ) ) );
+        assertEquals( "other", table.lookup( IPv4.quadToLong( "192.168.0.9" ) ) );
+        assertEquals( Domain.STORESONLINE, table.lookup( IPv4.quadToLong( "208.187.218.1" ) ) );
+        assertNull( table.lookup( IPv4.quadToLong( "11.0.0.0" ) ) );
+
+        // a second load maps what the first compiled
+
+        NetworkTable mapped = new NetworkFile( source ).load();
+
+        assertEquals( table.size(), mapped.size() );
+        assertEquals( table.getLabels(), mapped.getLabels() );
+        assertEquals( "inner", mapped.lookup( IPv4.quadToLong( "10.1.255.255" ) ) );
+    }
+
+    public void testReloadWhenChanged() throws IOException
+    {
+        write( "10.0.0.0/8 first\n" );
+
+        NetworkFile file = new NetworkFile( source );
+        file.load();
+
+        assertFalse( file.reloadIfChanged() );
+
+        write( "10.0.0.0/8 second\n[StoresOnline]\n" );
+        source.setLastModified( source.lastModified() + 2000 );
+
+        assertTrue( file.reloadIfChanged() );
+        assertEquals( "second", file.getTable().lookup( IPv4.quadToLong( "10.0.0.1" ) ) );
+        assertNull( file.getTable().lookup( IPv4.quadToLong( "208.187.218.1" ) ) );
+    }
+
+    public void testBadLineKeepsTable() throws IOException
+    {
+        write( "10.0.0.0/8 first\n" );
+
+        NetworkFile file = new NetworkFile( source );
+        file.load();
+
+        write( "10.0.0.0/33 second\n" );
+        source.setLastModified( source.lastModified() + 2000 );
+
+        assertFalse( file.reloadIfChanged() );
+        assertEquals( "first", file.getTable().lookup( IPv4.quadToLong( "10.0.0.1" ) ) );
+    }
+
+    public void testBadAddressIsRejected() throws IOException
+    {
+        write( "10.0.0.0/8\n10.0.0.300/24\n" );
+
+        try
+        {
+            new NetworkFile( source ).load();
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "line 2" ) );
+        }
+
+        write( "foo first\n" );
+
+        try
+        {
+            new NetworkFile( source ).load();
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "line 1" ) );
+        }
+    }
+
+    public void testDamagedLabelIndexIsNotMapped() throws IOException
+    {
+        write( "10.0.0.0/8 first\n" );
+
+        NetworkFile file = new NetworkFile( source );
+        int size = file.load().size();
+
+        assertNotNull( NetworkFile.map( file.getCompiled(), source.length(), source.lastModified() ) );
+
+        RandomAccessFile compiled = new RandomAccessFile( file.getCompiled(), "rw" );
+
+        try
+        {
+            compiled.seek( NetworkFile.HEADER + 8L * size );
+            compiled.writeInt( 99 );
+        }
+        finally
+        {
+            compiled.close();
+        }
+
+        assertNull( NetworkFile.map( file.getCompiled(), source.length(), source.lastModified() ) );
+
+        // and the next load compiles it again
+
+        assertEquals( "first", new NetworkFile( source ).load().lookup( IPv4.quadToLong( "10.0.0.1" ) ) );
+    }
+}
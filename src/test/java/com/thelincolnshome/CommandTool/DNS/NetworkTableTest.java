@@ -0,0 +1,190 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for NetworkTable.
+ */
+public class NetworkTableTest
+    extends TestCase
+{
+    public NetworkTableTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( NetworkTableTest.class );
+    }
+
+    public void testMostSpecificNetworkWins()
+    {
+        NetworkTable table = new NetworkTable.Builder()
+            .add( "10.0.0.0/8", "outer" )
+            .add( "10.1.0.0/16", "middle" )
+            .add( "10.1.2.0/24", "inner" )
+            .add( "192.168.0.0/24", "other" )
+            .build();
+
+        assertEquals( "outer", table.lookup( IPv4.quadToLong( "10.0.0.1" ) ) );
+        assertEquals( "middle", table.lookup( IPv4.quadToLong( "10.1.0.255" ) ) );
+        assertEquals( "inner", table.lookup( IPv4.quadToLong( "10.1.2.0" ) ) );
+        assertEquals( "inner", table.lookup( IPv4.quadToLong( "10.1.2.255" ) ) );
+        assertEquals( "middle", table.lookup( IPv4.quadToLong( "10.1.3.0" ) ) );
+        assertEquals( "outer", table.lookup( IPv4.quadToLong( "10.255.255.255" ) ) );
+        assertEquals( "other", table.lookup( IPv4.quadToLong( "192.168.0.7" ) ) );
+        assertNull( table.lookup( IPv4.quadToLong( "9.255.255.255" ) ) );
+        assertNull( table.lookup( IPv4.quadToLong( "11.0.0.0" ) ) );
+        assertNull( table.lookup( IPv4.quadToLong( "255.255.255.255" ) ) );
+    }
+
+    public void testAdjacentNetworksMerge()
+    {
+        NetworkTable table = new NetworkTable.Builder()
+            .add( "70.102.216.0/24", "a" )
+            .add( "70.102.217.0/24", "a" )
+            .add( "70.102.218.0/24", "b" )
+            .build();
+
+        assertEquals( 2, table.size() );
+        assertEquals( "a", table.lookup( IPv4.quadToLong( "70.102.217.9" ) ) );
+        assertEquals( "b", table.lookup( IPv4.quadToLong( "70.102.218.9" ) ) );
+    }
+
+    public void testPartlyOverlappingRangesAreSplit()
+    {
+        NetworkTable table = new NetworkTable.Builder()
+            .add( 0, 100, "a" )
+            .add( 10, 50, "b" )
+            .add( 20, 150, "c" )
+            .add( 200, 300, "d" )
+            .add( 250, 400, "e" )
+            .build();
+
+        assertEquals( "a", table.lookup( 9 ) );
+        assertEquals( "b", table.lookup( 10 ) );
+        assertEquals( "b", table.lookup( 19 ) );
+        assertEquals( "c", table.lookup( 20 ) );
+        assertEquals( "c", table.lookup( 51 ) );
+        assertEquals( "c", table.lookup( 101 ) );
+        assertEquals( "c", table.lookup( 150 ) );
+        assertNull( table.lookup( 151 ) );
+        assertEquals( "d", table.lookup( 249 ) );
+        assertEquals( "e", table.lookup( 250 ) );
+        assertEquals( "e", table.lookup( 301 ) );
+        assertEquals( "e", table.lookup( 400 ) );
+        assertNull( table.lookup( 401 ) );
+        assertEquals( 5, table.size() );
+    }
+
+    public void testThreeOverlappingRangesKeepTheirStarts()
+    {
+        NetworkTable table = new NetworkTable.Builder()
+            .add( 28, 52, "L2" )
+            .add( 31, 59, "L3" )
+            .add( 22, 45, "L1" )
+            .build();
+
+        assertNull( table.lookup( 21 ) );
+        assertEquals( "L1", table.lookup( 22 ) );
+        assertEquals( "L2", table.lookup( 28 ) );
+        assertEquals( "L3", table.lookup( 31 ) );
+        assertEquals( "L3", table.lookup( 46 ) );
+        assertEquals( "L3", table.lookup( 59 ) );
+        assertNull( table.lookup( 60 ) );
+    }
+
+    public void testMatchesLinearScanAtRandom()
+    {
+        Random random = new Random( 7 );
+
+        for ( int round = 0; round < 500; round++ )
+        {
+            int count = 1 + random.nextInt( 12 );
+            long[][] ranges = new long[count][];
+            NetworkTable.Builder builder = new NetworkTable.Builder();
+
+            for ( int i = 0; i < count; i++ )
+            {
+                long first = random.nextInt( 200 );
+                long last = first + random.nextInt( 60 );
+
+                ranges[i] = new long[] { first, last };
+                builder.add( first, last, "r" + i );
+            }
+
+            NetworkTable table = builder.build();
+
+            for ( long address = 0; address < 262; address++ )
+            {
+                assertEquals( "round " + round + " at " + address, scan( ranges, address ), table.lookup( address ) );
+            }
+        }
+    }
+
+    public void testWholeAddressSpace()
+    {
+        NetworkTable table = new NetworkTable.Builder()
+            .add( 0, IPv4.ADDRESS_MASK, "all" )
+            .add( "255.255.255.0/24", "top" )
+            .build();
+
+        assertEquals( "all", table.lookup( 0 ) );
+        assertEquals( "all", table.lookup( IPv4.quadToLong( "255.255.254.255" ) ) );
+        assertEquals( "top", table.lookup( IPv4.ADDRESS_MASK ) );
+        assertEquals( 2, table.size() );
+    }
+
+    /**
+     * Of the ranges holding the address, the one starting latest, then the
+     * shortest, then the last added.
+     */
+    private static String scan( long[][] inRanges, long inAddress )
+    {
+        int best = -1;
+
+        for ( int i = 0; i < inRanges.length; i++ )
+        {
+            long[] range = inRanges[i];
+
+            if ( range[0] > inAddress || range[1] < inAddress )
+            {
+                continue;
+            }
+
+            if ( best < 0 || range[0] > inRanges[best][0]
+                || ( range[0] == inRanges[best][0] && range[1] <= inRanges[best][1] ) )
+            {
+                best = i;
+            }
+        }
+
+        return best < 0 ? null : "r" + best;
+    }
+
+    public void testBadNetworkIsRejected()
+    {
+        for ( String network : new String[] { "foo", "10.0.0.300/24", "10.0.0/24", "10.0.0.0/33", "10.0.0.0/" } )
+        {
+            try
+            {
+                new NetworkTable.Builder().add( network, "bad" );
+                fail( network );
+            }
+            catch ( IllegalArgumentException e )
+            {
+            }
+        }
+    }
+
+    public void testEmpty()
+    {
+        assertNull( NetworkTable.EMPTY.lookup( 0 ) );
+        assertEquals( NetworkTable.NOT_FOUND, NetworkTable.EMPTY.labelOf( 0xFFFFFFFFL ) );
+    }
+}
@@ -0,0 +1,376 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+/**
+ * Unit test for NioDNSClient, against a stub server on loopback that
+ * behaves according to the first label of the question.
+ */
+public class NioDNSClientTest
+    extends TestCase
+{
+    private DatagramSocket udp;
+    private DatagramSocket spoofer;
+    private ServerSocket tcp;
+    private NioDNSClient client;
+    private NioResolver resolver;
+
+    public NioDNSClientTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( NioDNSClientTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        InetAddress loopback = InetAddress.getByName( "127.0.0.1" );
+
+        // TCP has to share the port, so take another pair if it is in use
+
+        for ( int attempt = 0; tcp == null; attempt++ )
+        {
+            udp = new DatagramSocket( 0, loopback );
+
+            try
+            {
+                tcp = new ServerSocket( udp.getLocalPort(), 50, loopback );
+            }
+            catch ( IOException e )
+            {
+                udp.close();
+
+                if ( attempt == 10 )
+                {
+                    throw e;
+                }
+            }
+        }
+
+        spoofer = new DatagramSocket( 0, loopback );
+
+        daemon( new Runnable()
+        {
+            public void run()
+            {
+                serveUDP();
+            }
+        } );
+
+        daemon( new Runnable()
+        {
+            public void run()
+            {
+                serveTCP();
+            }
+        } );
+
+        client = new NioDNSClient( 1 );
+        resolver = new NioResolver( "127.0.0.1", client );
+        resolver.setPort( udp.getLocalPort() );
+        resolver.setTimeout( 0, 2000 );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        client.close();
+        udp.close();
+        spoofer.close();
+        tcp.close();
+    }
+
+    private static void daemon( Runnable runnable )
+    {
+        Thread thread = new Thread( runnable );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    private static Message query( String name ) throws Exception
+    {
+        return Message.newQuery( Record.newRecord( Name.fromString( name ), Type.A, DClass.IN ) );
+    }
+
+    private static String address( Message response )
+    {
+        Record[] answers = response.getSectionArray( Section.ANSWER );
+
+        assertEquals( 1, answers.length );
+
+        return ( (ARecord) answers[ 0 ] ).getAddress().getHostAddress();
+    }
+
+    private static Message answer( Message query, int id, Record question, String address, boolean truncate ) throws Exception
+    {
+        Message response = new Message( id );
+
+        response.getHeader().setFlag( Flags.QR );
+        response.addRecord( question, Section.QUESTION );
+
+        if ( truncate )
+        {
+            response.getHeader().setFlag( Flags.TC );
+        }
+        else
+        {
+            response.addRecord( new ARecord( question.getName(), DClass.IN, 60, InetAddress.getByName( address ) ), Section.ANSWER );
+        }
+
+        return response;
+    }
+
+    /**
+     * "answer" gets 192.0.2.1; "spoofed" gets three wrong answers, from
+     * another port, with another ID and for another question, before the
+     * right one; "silent" gets nothing; "truncated" gets an empty answer
+     * with TC set.
+     */
+    private void serveUDP()
+    {
+        byte[] buffer = new byte[ Message.MAXLENGTH ];
+
+        while ( !udp.isClosed() )
+        {
+            try
+            {
+                DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+                udp.receive( packet );
+
+                Message query = new Message( packet.getData() );
+                Record question = query.getQuestion();
+                int id = query.getHeader().getID();
+                String label = question.getName().getLabelString( 0 );
+
+                if ( "silent".equals( label ) )
+                {
+                    continue;
+                }
+
+                if ( "spoofed".equals( label ) )
+                {
+                    Record other = Record.newRecord( Name.fromString( "other.test." ), Type.A, DClass.IN );
+
+                    reply( spoofer, packet, answer( query, id, question, "192.0.2.66", false ) );
+                    reply( udp, packet, answer( query, ( id + 1 ) & 0xFFFF, question, "192.0.2.67", false ) );
+                    reply( udp, packet, answer( query, id, other, "192.0.2.68", false ) );
+                }
+
+                reply( udp, packet, answer( query, id, question, "192.0.2.1", "truncated".equals( label ) ) );
+            }
+            catch ( Exception e )
+            {
+            }
+        }
+    }
+
+    private static void reply( DatagramSocket socket, DatagramPacket to, Message response ) throws IOException
+    {
+        byte[] wire = response.toWire();
+
+        socket.send( new DatagramPacket( wire, wire.length, to.getSocketAddress() ) );
+    }
+
+    /**
+     * Every TCP query gets 192.0.2.3.
+     */
+    private void serveTCP()
+    {
+        while ( !tcp.isClosed() )
+        {
+            try
+            {
+                Socket socket = tcp.accept();
+
+                try
+                {
+                    DataInputStream in = new DataInputStream( socket.getInputStream() );
+                    DataOutputStream out = new DataOutputStream( socket.getOutputStream() );
+
+                    byte[] data = new byte[ in.readUnsignedShort() ];
+                    in.readFully( data );
+
+                    Message query = new Message( data );
+                    byte[] wire = answer( query, query.getHeader().getID(), query.getQuestion(), "192.0.2.3", false ).toWire();
+
+                    out.writeShort( wire.length );
+                    out.write( wire );
+                    out.flush();
+                }
+                finally
+                {
+                    socket.close();
+                }
+            }
+            catch ( Exception e )
+            {
+            }
+        }
+    }
+
+    public void testAnswer() throws Exception
+    {
+        assertEquals( "192.0.2.1", address( resolver.send( query( "answer.test." ) ) ) );
+        assertEquals( 0, client.getInFlight() );
+    }
+
+    public void testOnlyTheMatchingResponseIsTaken() throws Exception
+    {
+        assertEquals( "192.0.2.1", address( resolver.send( query( "spoofed.test." ) ) ) );
+        assertTrue( client.getStatistics(), client.getStatistics().endsWith( " mismatched=3" ) );
+    }
+
+    public void testTimeout() throws Exception
+    {
+        resolver.setTimeout( 0, 200 );
+
+        long start = System.nanoTime();
+
+        try
+        {
+            resolver.send( query( "silent.test." ) );
+            fail();
+        }
+        catch ( SocketTimeoutException e )
+        {
+        }
+
+        long millis = ( System.nanoTime() - start ) / 1000000L;
+
+        assertTrue( Long.toString( millis ), millis >= 190 && millis < 2000 );
+        assertTrue( client.getStatistics(), client.getStatistics().contains( " timeouts=1 " ) );
+        assertEquals( 0, client.getInFlight() );
+    }
+
+    public void testAnsweredQueryDoesNotTimeOut() throws Exception
+    {
+        resolver.setTimeout( 0, 100 );
+
+        resolver.send( query( "answer.test." ) );
+
+        Thread.sleep( 300 );
+
+        assertTrue( client.getStatistics(), client.getStatistics().contains( " timeouts=0 " ) );
+    }
+
+    public void testTruncatedAnswerIsRetriedOverTCP() throws Exception
+    {
+        assertEquals( "192.0.2.3", address( resolver.send( query( "truncated.test." ) ) ) );
+    }
+
+    public void testCloseFailsQueriesStillWaiting() throws Exception
+    {
+        resolver.setTimeout( 60 );
+
+        final CountDownLatch failed = new CountDownLatch( 3 );
+        final Exception[] errors = new Exception[ 3 ];
+
+        for ( int i = 0; i < errors.length; i++ )
+        {
+            final int index = i;
+
+            resolver.sendAsync( query( "silent.test." ), new ResolverListener()
+            {
+                public void receiveMessage( Object id, Message response )
+                {
+                }
+
+                public void handleException( Object id, Exception exception )
+                {
+                    errors[ index ] = exception;
+                    failed.countDown();
+                }
+            } );
+        }
+
+        client.close();
+
+        assertTrue( failed.await( 5, TimeUnit.SECONDS ) );
+
+        for ( Exception error : errors )
+        {
+            assertFalse( error instanceof SocketTimeoutException );
+            assertTrue( error instanceof IOException );
+        }
+
+        assertEquals( 0, client.getInFlight() );
+    }
+
+    public void testSendAfterCloseFails() throws Exception
+    {
+        client.close();
+
+        long start = System.nanoTime();
+
+        try
+        {
+            resolver.send( query( "answer.test." ) );
+            fail();
+        }
+        catch ( SocketTimeoutException e )
+        {
+            fail( "timed out instead" );
+        }
+        catch ( IOException e )
+        {
+        }
+
+        assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos( 1 ) );
+    }
+
+    public void testWaitIsBoundedWhenAQueryIsLost() throws Exception
+    {
+        SimpleResolver lost = new SimpleResolver( "127.0.0.1" )
+        {
+            @Override
+            public Object sendAsync( Message query, ResolverListener listener )
+            {
+                return query;
+            }
+        };
+
+        long start = System.nanoTime();
+
+        try
+        {
+            ResponseWaiter.send( lost, query( "answer.test." ), 100 );
+            fail();
+        }
+        catch ( SocketTimeoutException e )
+        {
+        }
+
+        long millis = ( System.nanoTime() - start ) / 1000000L;
+
+        assertTrue( Long.toString( millis ), millis >= 100 + ResponseWaiter.GRACE - 10 && millis < 5000 );
+    }
+}
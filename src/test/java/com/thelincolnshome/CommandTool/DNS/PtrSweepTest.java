@@ -0,0 +1,101 @@
+package com.thelincolnshome.CommandTool.DNS;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for PtrSweep.
+ */
+public class PtrSweepTest
+    extends TestCase
+{
+    private File output;
+
+    public PtrSweepTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PtrSweepTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        output = File.createTempFile( "sweep", ".ptr" );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        output.delete();
+    }
+
+    private void write( String text ) throws IOException
+    {
+        Writer writer = new FileWriter( output );
+
+        try
+        {
+            writer.write( text );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    public void testNothingToResume() throws IOException
+    {
+        assertEquals( -1, PtrSweep.resumePoint( output ) );
+
+        write( "10.0.0.0\thost" );
+
+        assertEquals( -1, PtrSweep.resumePoint( output ) );
+        assertEquals( 0, output.length() );
+    }
+
+    public void testResumeAfterLastCompleteLine() throws IOException
+    {
+        write( "10.0.0.0\tNONE\n10.0.0.1\ta.example.com.\n10.0.0.2\tb.exa" );
+
+        assertEquals( IPv4.quadToLong( "10.0.0.1" ), PtrSweep.resumePoint( output ) );
+        assertEquals( "10.0.0.0\tNONE\n10.0.0.1\ta.example.com.\n".length(), output.length() );
+        assertEquals( IPv4.quadToLong( "10.0.0.1" ), PtrSweep.resumePoint( output ) );
+    }
+
+    public void testDefaultOutput()
+    {
+        assertEquals( "10.0.0.0_16.ptr", PtrSweep.defaultOutput( new IPv4( "10.0.0.0/16" ) ).getName() );
+    }
+
+    public void testBlockIsParsedStrictly()
+    {
+        IPv4 all = IPv4.parse( "0.0.0.0/0" );
+
+        assertEquals( 0, all.getNetworkAddr() );
+        assertEquals( 0xFFFFFFFFL, all.getBroadcastAddr() );
+        assertEquals( "0.0.0.0_0.ptr", PtrSweep.defaultOutput( all ).getName() );
+        assertEquals( 255, IPv4.parse( "10.0.0.0/24" ).getBroadcastAddr() - IPv4.parse( "10.0.0.0/24" ).getNetworkAddr() );
+
+        for ( String block : new String[] { "foo/24", "10.0.0.300/24", "10.0.0.0/33", "10.0.0.0/" } )
+        {
+            try
+            {
+                IPv4.parse( block );
+                fail( block );
+            }
+            catch ( IllegalArgumentException e )
+            {
+            }
+        }
+    }
+}
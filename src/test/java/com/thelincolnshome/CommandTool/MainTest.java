@@ -0,0 +1,153 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for how Main finds the registers of a jar, with and without
+ * the RegisterProcessor index.
+ */
+public class MainTest
+    extends TestCase
+{
+    private File directory;
+    private File indexed;
+    private File plain;
+
+    public MainTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MainTest.class );
+    }
+
+    /**
+     * Tells which classes it has loaded.
+     */
+    private static class Loader extends Main.MainClassLoader
+    {
+        boolean isLoaded( String name )
+        {
+            return findLoadedClass( name ) != null;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory( "MainTest" ).toFile();
+
+        File classes = new File( directory, "classes" );
+        classes.mkdir();
+
+        List<String> errors = RegisterProcessorTest.compile( classes,
+            new RegisterProcessorTest.Source( "p.Plugin",
+                "package p;\n"
+                + "import com.thelincolnshome.CommandTool.Register;\n"
+                + "public class Plugin { @Register public static void init() {} }\n" ),
+            new RegisterProcessorTest.Source( "p.Helper", "package p;\npublic class Helper {}\n" ) );
+
+        assertEquals( errors.toString(), 0, errors.size() );
+
+        indexed = new File( directory, "indexed.jar" );
+        plain = new File( directory, "plain.jar" );
+
+        jar( indexed, classes, "p/Plugin.class", "p/Helper.class", RegisterProcessor.INDEX );
+        jar( plain, classes, "p/Plugin.class", "p/Helper.class" );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        Main.registers.clear();
+        Main.classLoader = null;
+
+        RegisterProcessorTest.delete( directory );
+    }
+
+    private static void jar( File jar, File classes, String... entries ) throws IOException
+    {
+        JarOutputStream out = new JarOutputStream( new FileOutputStream( jar ) );
+
+        try
+        {
+            for ( String entry : entries )
+            {
+                out.putNextEntry( new JarEntry( entry ) );
+                out.write( Files.readAllBytes( new File( classes, entry ).toPath() ) );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private Loader loader( File jar ) throws IOException
+    {
+        Loader loader = new Loader();
+        loader.add( jar.toURI().toURL() );
+
+        Main.classLoader = loader;
+
+        return loader;
+    }
+
+    public void testIndexedJarLoadsOnlyItsRegisters() throws Exception
+    {
+        Loader loader = loader( indexed );
+
+        List<String> registers = Main.find( indexed );
+
+        assertEquals( Arrays.asList( "p.Plugin init" ), registers );
+        assertFalse( loader.isLoaded( "p.Plugin" ) );
+
+        Main.load( indexed, registers );
+
+        assertEquals( 1, Main.registers.size() );
+
+        Method method = Main.registers.iterator().next();
+
+        assertEquals( "p.Plugin", method.getDeclaringClass().getName() );
+        assertEquals( "init", method.getName() );
+        assertFalse( loader.isLoaded( "p.Helper" ) );
+    }
+
+    public void testJarWithoutIndexIsScanned() throws Exception
+    {
+        Loader loader = loader( plain );
+
+        List<String> registers = Main.find( plain );
+
+        assertEquals( Arrays.asList( "p.Plugin init" ), registers );
+
+        // every class had to be loaded to look for them
+
+        assertTrue( loader.isLoaded( "p.Helper" ) );
+    }
+
+    public void testStaleRegisterIsSkipped() throws Exception
+    {
+        loader( indexed );
+
+        Main.load( indexed, Arrays.asList( "p.Gone init", "p.Plugin gone", "p.Helper toString", "p.Plugin init" ) );
+
+        assertEquals( 1, Main.registers.size() );
+        assertEquals( "init", Main.registers.iterator().next().getName() );
+    }
+}
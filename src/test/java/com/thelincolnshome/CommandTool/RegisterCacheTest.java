@@ -0,0 +1,105 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for RegisterCache.
+ */
+public class RegisterCacheTest
+    extends TestCase
+{
+    private File jar;
+    private File file;
+
+    public RegisterCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( RegisterCacheTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        jar = File.createTempFile( "plugin", ".jar" );
+        file = File.createTempFile( "registers", ".cache" );
+        file.delete();
+
+        write( "first" );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        jar.delete();
+        file.delete();
+    }
+
+    private void write( String inContent ) throws IOException
+    {
+        OutputStream out = new FileOutputStream( jar );
+
+        try
+        {
+            out.write( inContent.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    public void testSurvivesRestart() throws IOException
+    {
+        List<String> registers = Arrays.asList( "a.B init", "a.C start" );
+        RegisterCache cache = new RegisterCache( file ).load();
+
+        assertNull( cache.get( jar ) );
+
+        cache.put( jar, registers );
+        cache.save();
+
+        assertEquals( registers, new RegisterCache( file ).load().get( jar ) );
+    }
+
+    public void testTouchedJarIsHashed() throws IOException
+    {
+        RegisterCache cache = new RegisterCache( file ).load();
+        long base = jar.lastModified();
+
+        cache.put( jar, Arrays.asList( "a.B init" ) );
+
+        // same bytes under a new time still match, different bytes of the same size do not;
+        // the times are set outright so neither lands on one the cache already holds
+
+        jar.setLastModified( base + 5000 );
+        assertEquals( Arrays.asList( "a.B init" ), cache.get( jar ) );
+
+        write( "other" );
+        jar.setLastModified( base + 10000 );
+        assertNull( cache.get( jar ) );
+    }
+
+    public void testGoneJarsAreDropped() throws IOException
+    {
+        RegisterCache cache = new RegisterCache( file ).load();
+
+        cache.put( jar, Arrays.asList( "a.B init" ) );
+        jar.delete();
+        cache.save();
+
+        assertEquals( 0, file.length() );
+    }
+}
@@ -0,0 +1,177 @@
+package com.thelincolnshome.CommandTool;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for RegisterProcessor, run through the system compiler on
+ * small sources.
+ */
+public class RegisterProcessorTest
+    extends TestCase
+{
+    private File classes;
+
+    public RegisterProcessorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( RegisterProcessorTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        classes = Files.createTempDirectory( "RegisterProcessorTest" ).toFile();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        delete( classes );
+    }
+
+    /**
+     * A source held in memory, named for its public class.
+     */
+    static class Source extends SimpleJavaFileObject
+    {
+        private final String code;
+
+        Source( String name, String code )
+        {
+            super( URI.create( "string:///" + name.replace( '.', '/' ) + Kind.SOURCE.extension ), Kind.SOURCE );
+
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent( boolean ignoreEncodingErrors )
+        {
+            return code;
+        }
+    }
+
+    /**
+     * Compile the sources into the directory with the processor, returning
+     * the error messages.
+     */
+    static List<String> compile( File classes, Source... sources ) throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager files = compiler.getStandardFileManager( diagnostics, Locale.ROOT, StandardCharsets.UTF_8 );
+
+        // Register, wherever surefire put it
+
+        String classpath = new File( Register.class.getProtectionDomain().getCodeSource().getLocation().toURI() ).getPath();
+
+        try
+        {
+            JavaCompiler.CompilationTask task = compiler.getTask( null, files, diagnostics,
+                Arrays.asList( "-d", classes.getPath(), "-classpath", classpath ), null, Arrays.asList( sources ) );
+
+            task.setProcessors( Arrays.asList( new RegisterProcessor() ) );
+            task.call();
+        }
+        finally
+        {
+            files.close();
+        }
+
+        List<String> errors = new ArrayList<String>();
+
+        for ( Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics() )
+        {
+            if ( diagnostic.getKind() == Diagnostic.Kind.ERROR )
+            {
+                errors.add( diagnostic.getMessage( Locale.ROOT ) );
+            }
+        }
+
+        return errors;
+    }
+
+    static void delete( File file )
+    {
+        File[] children = file.listFiles();
+
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+
+        file.delete();
+    }
+
+    public void testWritesTheIndex() throws Exception
+    {
+        List<String> errors = compile( classes, new Source( "p.Plugin",
+            "package p;\n"
+            + "import com.thelincolnshome.CommandTool.Register;\n"
+            + "public class Plugin {\n"
+            + "    @Register public static void init() {}\n"
+            + "    public static void notRegistered() {}\n"
+            + "    public static class Inner { @Register public static void start() {} }\n"
+            + "}\n" ) );
+
+        assertEquals( errors.toString(), 0, errors.size() );
+
+        File index = new File( classes, RegisterProcessor.INDEX );
+
+        assertEquals( Arrays.asList( "p.Plugin init", "p.Plugin$Inner start" ),
+            Files.readAllLines( index.toPath(), StandardCharsets.UTF_8 ) );
+    }
+
+    public void testNoIndexWithoutRegisters() throws Exception
+    {
+        List<String> errors = compile( classes, new Source( "p.Plain", "package p;\npublic class Plain {}\n" ) );
+
+        assertEquals( errors.toString(), 0, errors.size() );
+        assertFalse( new File( classes, RegisterProcessor.INDEX ).exists() );
+    }
+
+    public void testRejectsMethodsMainCannotCall() throws Exception
+    {
+        String[][] cases = {
+            { "public class Bad { @Register public void init() {} }", "must be static" },
+            { "public class Bad { @Register public static void init( String name ) {} }", "can not have parameters" },
+            { "public class Bad { @Register static void init() {} }", "must be public" },
+            { "class Bad { @Register public static void init() {} }", "must be public" } };
+
+        for ( String[] bad : cases )
+        {
+            List<String> errors = compile( classes, new Source( "p.Bad",
+                "package p;\nimport com.thelincolnshome.CommandTool.Register;\n" + bad[ 0 ] + "\n" ) );
+
+            assertEquals( bad[ 0 ] + " " + errors, 1, errors.size() );
+            assertTrue( errors.get( 0 ), errors.get( 0 ).contains( bad[ 1 ] ) );
+            assertFalse( new File( classes, RegisterProcessor.INDEX ).exists() );
+        }
+    }
+}